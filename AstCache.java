@@ -0,0 +1,76 @@
+import AST.TranNode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Parsed programs kept on disk, keyed by a SHA-256 of the source, Parser.VERSION and AstSerializer.VERSION, so an
+ * unchanged file is read back with AstSerializer instead of being lexed and parsed again, and a parser that builds
+ * different trees never gets the old ones. Programs that don't parse are never cached. A cache entry that can't be
+ * read (a half written file) is treated as a miss.
+ */
+public class AstCache {
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public TranNode parse(Path source) throws IOException, SyntaxErrorException {
+        //read once - the entry has to be for exactly the text that gets parsed, even if the file changes meanwhile
+        ByteBuffer text = ByteBuffer.wrap(Files.readAllBytes(source));
+        Path entry = directory.resolve(hash(text) + ".ast");
+        if (Files.isRegularFile(entry)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+                return AstSerializer.read(in);
+            } catch (IOException | RuntimeException e) {
+                //fall through and parse it again, the entry gets rewritten
+            }
+        }
+        TranNode tran = new TranNode();
+        new Parser(tran, new Lexer(text)).Tran();
+        store(entry, tran);
+        return tran;
+    }
+
+    //write to a temporary file and move it into place, so another run never reads half an entry
+    private void store(Path entry, TranNode tran) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "entry", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                AstSerializer.write(tran, out);
+            }
+            try {
+                Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static String hash(ByteBuffer text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(text.duplicate());
+        digest.update(ByteBuffer.allocate(8).putInt(Parser.VERSION).putInt(AstSerializer.VERSION).flip());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
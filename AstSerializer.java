@@ -0,0 +1,530 @@
+import AST.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes a TranNode tree to a compact binary form and reads it back. Every string is written once and referred to
+ * by number after that, counts are variable length, and each statement or expression is a one byte tag followed by
+ * its fields. Fields the parser left null come back null.
+ */
+public class AstSerializer {
+    //bump when the layout changes so old cache entries stop matching
+    public static final int VERSION = 1;
+
+    private static final int NULL = 0;
+    private static final int ASSIGNMENT = 1, IF = 2, LOOP = 3, METHOD_CALL_STATEMENT = 4;
+    private static final int BOOLEAN_LITERAL = 10, BOOLEAN_OP = 11, CHAR_LITERAL = 12, COMPARE = 13, MATH_OP = 14,
+            METHOD_CALL_EXPRESSION = 15, NEW = 16, NOT_OP = 17, NUMERIC_LITERAL = 18, STRING_LITERAL = 19,
+            VARIABLE_REFERENCE = 20;
+
+    //              Writing
+
+    public static void write(TranNode tran, DataOutputStream out) throws IOException {
+        Writer writer = new Writer(out);
+        out.writeInt(VERSION);
+        writer.count(tran.Interfaces.size());
+        for (InterfaceNode interfaceNode : tran.Interfaces) {
+            writer.writeInterface(interfaceNode);
+        }
+        writer.count(tran.Classes.size());
+        for (ClassNode classNode : tran.Classes) {
+            writer.writeClass(classNode);
+        }
+    }
+
+    private static class Writer {
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        private void writeInterface(InterfaceNode interfaceNode) throws IOException {
+            string(interfaceNode.name);
+            count(interfaceNode.methods.size());
+            for (MethodHeaderNode header : interfaceNode.methods) {
+                string(header.name);
+                declarations(header.parameters);
+                declarations(header.returns);
+            }
+        }
+
+        private void writeClass(ClassNode classNode) throws IOException {
+            string(classNode.name);
+            count(classNode.interfaces.size());
+            for (String name : classNode.interfaces) {
+                string(name);
+            }
+            count(classNode.members.size());
+            for (MemberNode member : classNode.members) {
+                declaration(member.declaration);
+                optionalStatements(member.accessor);
+                optionalStatements(member.mutator);
+            }
+            count(classNode.constructors.size());
+            for (ConstructorNode constructor : classNode.constructors) {
+                declarations(constructor.parameters);
+                declarations(constructor.locals);
+                statements(constructor.statements);
+            }
+            count(classNode.methods.size());
+            for (MethodDeclarationNode method : classNode.methods) {
+                if (method instanceof BuiltInMethodDeclarationNode) {
+                    throw new IOException("Built in method " + method.name + " can't be serialized");
+                }
+                out.writeBoolean(method.isShared);
+                out.writeBoolean(method.isPrivate);
+                string(method.name);
+                declarations(method.parameters);
+                declarations(method.returns);
+                declarations(method.locals);
+                statements(method.statements);
+            }
+        }
+
+        private void statements(List<StatementNode> statements) throws IOException {
+            if (nullableCount(statements)) {
+                for (StatementNode statement : statements) {
+                    statement(statement);
+                }
+            }
+        }
+
+        private void optionalStatements(Optional<List<StatementNode>> statements) throws IOException {
+            out.writeBoolean(statements != null && statements.isPresent());
+            if (statements != null && statements.isPresent()) {
+                statements(statements.get());
+            }
+        }
+
+        private void statement(StatementNode statement) throws IOException {
+            if (statement instanceof AssignmentNode assignment) {
+                out.writeByte(ASSIGNMENT);
+                expression(assignment.target);
+                expression(assignment.expression);
+            } else if (statement instanceof IfNode ifNode) {
+                out.writeByte(IF);
+                expression(ifNode.condition);
+                statements(ifNode.statements);
+                boolean hasElse = ifNode.elseStatement != null && ifNode.elseStatement.isPresent();
+                out.writeBoolean(hasElse);
+                if (hasElse) {
+                    statements(ifNode.elseStatement.get().statements);
+                }
+            } else if (statement instanceof LoopNode loop) {
+                out.writeByte(LOOP);
+                expression(loop.assignment == null ? null : loop.assignment.orElse(null));
+                expression(loop.expression);
+                statements(loop.statements);
+            } else if (statement instanceof MethodCallStatementNode call) {
+                out.writeByte(METHOD_CALL_STATEMENT);
+                optionalString(call.objectName);
+                string(call.methodName);
+                if (nullableCount(call.returnValues)) {
+                    for (VariableReferenceNode returnValue : call.returnValues) {
+                        expression(returnValue);
+                    }
+                }
+                expressions(call.parameters);
+            } else if (statement == null) {
+                out.writeByte(NULL);
+            } else {
+                throw new IOException("Can't serialize " + statement.getClass().getSimpleName());
+            }
+        }
+
+        private void expressions(List<ExpressionNode> expressions) throws IOException {
+            if (nullableCount(expressions)) {
+                for (ExpressionNode expression : expressions) {
+                    expression(expression);
+                }
+            }
+        }
+
+        //VariableReferenceNode is written through here too, it is an ExpressionNode
+        private void expression(Node expression) throws IOException {
+            if (expression == null) {
+                out.writeByte(NULL);
+            } else if (expression instanceof VariableReferenceNode reference) {
+                out.writeByte(VARIABLE_REFERENCE);
+                string(reference.name);
+            } else if (expression instanceof NumericLiteralNode number) {
+                out.writeByte(NUMERIC_LITERAL);
+                out.writeFloat(number.value);
+            } else if (expression instanceof StringLiteralNode string) {
+                out.writeByte(STRING_LITERAL);
+                string(string.value);
+            } else if (expression instanceof CharLiteralNode character) {
+                out.writeByte(CHAR_LITERAL);
+                out.writeChar(character.value);
+            } else if (expression instanceof BooleanLiteralNode bool) {
+                out.writeByte(BOOLEAN_LITERAL);
+                out.writeBoolean(bool.value);
+            } else if (expression instanceof MathOpNode math) {
+                out.writeByte(MATH_OP);
+                out.writeByte(math.op == null ? -1 : math.op.ordinal());
+                expression(math.left);
+                expression(math.right);
+            } else if (expression instanceof CompareNode compare) {
+                out.writeByte(COMPARE);
+                out.writeByte(compare.op == null ? -1 : compare.op.ordinal());
+                expression(compare.left);
+                expression(compare.right);
+            } else if (expression instanceof BooleanOpNode bool) {
+                out.writeByte(BOOLEAN_OP);
+                out.writeByte(bool.op == null ? -1 : bool.op.ordinal());
+                expression(bool.left);
+                expression(bool.right);
+            } else if (expression instanceof NotOpNode not) {
+                out.writeByte(NOT_OP);
+                expression(not.left);
+            } else if (expression instanceof MethodCallExpressionNode call) {
+                out.writeByte(METHOD_CALL_EXPRESSION);
+                optionalString(call.objectName);
+                string(call.methodName);
+                expressions(call.parameters);
+            } else if (expression instanceof NewNode newNode) {
+                out.writeByte(NEW);
+                string(newNode.className);
+                expressions(newNode.parameters);
+            } else {
+                throw new IOException("Can't serialize " + expression.getClass().getSimpleName());
+            }
+        }
+
+        private void declarations(List<VariableDeclarationNode> declarations) throws IOException {
+            if (nullableCount(declarations)) {
+                for (VariableDeclarationNode declaration : declarations) {
+                    declaration(declaration);
+                }
+            }
+        }
+
+        private void declaration(VariableDeclarationNode declaration) throws IOException {
+            out.writeBoolean(declaration != null);
+            if (declaration != null) {
+                string(declaration.type);
+                string(declaration.name);
+            }
+        }
+
+        private void optionalString(Optional<String> value) throws IOException {
+            out.writeByte(value == null ? 0 : value.isEmpty() ? 1 : 2);
+            if (value != null && value.isPresent()) {
+                string(value.get());
+            }
+        }
+
+        //0 for null; the first time a string is seen its number is followed by the text
+        private void string(String value) throws IOException {
+            if (value == null) {
+                count(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                count(index);
+                return;
+            }
+            strings.put(value, strings.size() + 1);
+            count(strings.size());
+            out.writeUTF(value);
+        }
+
+        //false for a null list - otherwise the size is written and the caller writes the elements
+        private boolean nullableCount(List<?> list) throws IOException {
+            count(list == null ? 0 : list.size() + 1);
+            return list != null;
+        }
+
+        private void count(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+    }
+
+    //              Reading
+
+    public static TranNode read(DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            throw new IOException("AST was written by a different version");
+        }
+        Reader reader = new Reader(in);
+        TranNode tran = new TranNode();
+        for (int i = reader.count(); i > 0; i--) {
+            tran.Interfaces.add(reader.readInterface());
+        }
+        for (int i = reader.count(); i > 0; i--) {
+            tran.Classes.add(reader.readClass());
+        }
+        return tran;
+    }
+
+    private static class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<>();
+
+        private Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        private InterfaceNode readInterface() throws IOException {
+            InterfaceNode interfaceNode = new InterfaceNode();
+            interfaceNode.name = string();
+            for (int i = count(); i > 0; i--) {
+                MethodHeaderNode header = new MethodHeaderNode();
+                header.name = string();
+                header.parameters = declarations();
+                header.returns = declarations();
+                interfaceNode.methods.add(header);
+            }
+            return interfaceNode;
+        }
+
+        private ClassNode readClass() throws IOException {
+            ClassNode classNode = new ClassNode();
+            classNode.name = string();
+            for (int i = count(); i > 0; i--) {
+                classNode.interfaces.add(string());
+            }
+            for (int i = count(); i > 0; i--) {
+                MemberNode member = new MemberNode();
+                member.declaration = declaration();
+                member.accessor = optionalStatements();
+                member.mutator = optionalStatements();
+                classNode.members.add(member);
+            }
+            for (int i = count(); i > 0; i--) {
+                ConstructorNode constructor = new ConstructorNode();
+                constructor.parameters = declarations();
+                constructor.locals = declarations();
+                constructor.statements = statements();
+                classNode.constructors.add(constructor);
+            }
+            for (int i = count(); i > 0; i--) {
+                MethodDeclarationNode method = new MethodDeclarationNode();
+                method.isShared = in.readBoolean();
+                method.isPrivate = in.readBoolean();
+                method.name = string();
+                method.parameters = declarations();
+                method.returns = declarations();
+                method.locals = declarations();
+                method.statements = statements();
+                classNode.methods.add(method);
+            }
+            return classNode;
+        }
+
+        private List<StatementNode> statements() throws IOException {
+            int size = count() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<StatementNode> statements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                statements.add(statement());
+            }
+            return statements;
+        }
+
+        private Optional<List<StatementNode>> optionalStatements() throws IOException {
+            return in.readBoolean() ? Optional.ofNullable(statements()) : Optional.empty();
+        }
+
+        private StatementNode statement() throws IOException {
+            int tag = in.readByte();
+            switch (tag) {
+                case NULL -> {
+                    return null;
+                }
+                case ASSIGNMENT -> {
+                    AssignmentNode assignment = new AssignmentNode();
+                    assignment.target = (VariableReferenceNode) expression();
+                    assignment.expression = expression();
+                    return assignment;
+                }
+                case IF -> {
+                    IfNode ifNode = new IfNode();
+                    ifNode.condition = expression();
+                    ifNode.statements = statements();
+                    if (in.readBoolean()) {
+                        ElseNode elseNode = new ElseNode();
+                        elseNode.statements = statements();
+                        ifNode.elseStatement = Optional.of(elseNode);
+                    } else {
+                        ifNode.elseStatement = Optional.empty();
+                    }
+                    return ifNode;
+                }
+                case LOOP -> {
+                    LoopNode loop = new LoopNode();
+                    loop.assignment = Optional.ofNullable((VariableReferenceNode) expression());
+                    loop.expression = expression();
+                    loop.statements = statements();
+                    return loop;
+                }
+                case METHOD_CALL_STATEMENT -> {
+                    MethodCallStatementNode call = new MethodCallStatementNode();
+                    call.objectName = optionalString();
+                    call.methodName = string();
+                    int size = count() - 1;
+                    if (size < 0) {
+                        call.returnValues = null;
+                    }
+                    for (int i = 0; i < size; i++) {
+                        call.returnValues.add((VariableReferenceNode) expression());
+                    }
+                    call.parameters = expressions();
+                    return call;
+                }
+            }
+            throw new IOException("Bad statement tag " + tag);
+        }
+
+        private List<ExpressionNode> expressions() throws IOException {
+            int size = count() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<ExpressionNode> expressions = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                expressions.add(expression());
+            }
+            return expressions;
+        }
+
+        private ExpressionNode expression() throws IOException {
+            int tag = in.readByte();
+            switch (tag) {
+                case NULL -> {
+                    return null;
+                }
+                case VARIABLE_REFERENCE -> {
+                    VariableReferenceNode reference = new VariableReferenceNode();
+                    reference.name = string();
+                    return reference;
+                }
+                case NUMERIC_LITERAL -> {
+                    NumericLiteralNode number = new NumericLiteralNode();
+                    number.value = in.readFloat();
+                    return number;
+                }
+                case STRING_LITERAL -> {
+                    StringLiteralNode string = new StringLiteralNode();
+                    string.value = string();
+                    return string;
+                }
+                case CHAR_LITERAL -> {
+                    CharLiteralNode character = new CharLiteralNode();
+                    character.value = in.readChar();
+                    return character;
+                }
+                case BOOLEAN_LITERAL -> {
+                    return new BooleanLiteralNode(in.readBoolean());
+                }
+                case MATH_OP -> {
+                    MathOpNode math = new MathOpNode();
+                    int op = in.readByte();
+                    math.op = op < 0 ? null : MathOpNode.MathOperations.values()[op];
+                    math.left = expression();
+                    math.right = expression();
+                    return math;
+                }
+                case COMPARE -> {
+                    CompareNode compare = new CompareNode();
+                    int op = in.readByte();
+                    compare.op = op < 0 ? null : CompareNode.CompareOperations.values()[op];
+                    compare.left = expression();
+                    compare.right = expression();
+                    return compare;
+                }
+                case BOOLEAN_OP -> {
+                    BooleanOpNode bool = new BooleanOpNode();
+                    int op = in.readByte();
+                    bool.op = op < 0 ? null : BooleanOpNode.BooleanOperations.values()[op];
+                    bool.left = expression();
+                    bool.right = expression();
+                    return bool;
+                }
+                case NOT_OP -> {
+                    NotOpNode not = new NotOpNode();
+                    not.left = expression();
+                    return not;
+                }
+                case METHOD_CALL_EXPRESSION -> {
+                    MethodCallExpressionNode call = new MethodCallExpressionNode();
+                    call.objectName = optionalString();
+                    call.methodName = string();
+                    call.parameters = expressions();
+                    return call;
+                }
+                case NEW -> {
+                    NewNode newNode = new NewNode();
+                    newNode.className = string();
+                    newNode.parameters = expressions();
+                    return newNode;
+                }
+            }
+            throw new IOException("Bad expression tag " + tag);
+        }
+
+        private List<VariableDeclarationNode> declarations() throws IOException {
+            int size = count() - 1;
+            if (size < 0) {
+                return null;
+            }
+            List<VariableDeclarationNode> declarations = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                declarations.add(declaration());
+            }
+            return declarations;
+        }
+
+        private VariableDeclarationNode declaration() throws IOException {
+            if (!in.readBoolean()) {
+                return null;
+            }
+            VariableDeclarationNode declaration = new VariableDeclarationNode();
+            declaration.type = string();
+            declaration.name = string();
+            return declaration;
+        }
+
+        private Optional<String> optionalString() throws IOException {
+            int kind = in.readByte();
+            return kind == 0 ? null : kind == 1 ? Optional.empty() : Optional.of(string());
+        }
+
+        private String string() throws IOException {
+            int index = count();
+            if (index == 0) {
+                return null;
+            }
+            if (index == strings.size() + 1) {//first time
+                strings.add(in.readUTF());
+            }
+            return strings.get(index - 1);
+        }
+
+        private int count() throws IOException {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
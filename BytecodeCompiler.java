@@ -0,0 +1,731 @@
+package Interpreter;
+
+import AST.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bytecode backend for the BYTECODE execution mode.
+ * Each Tran class becomes a hidden JVM class (MethodHandles.Lookup.defineHiddenClass) with one static method for every
+ * Tran method that can be compiled. Inside those methods number, boolean, string and character variables are plain
+ * float, int, String and char JVM locals, so numeric loops run at HotSpot speed; values are only boxed into IDTs at the
+ * edges - the parameters coming in, the return values going out, and whatever goes to or comes back from the rest of
+ * the program.
+ * <p>
+ * Members and calls go through the class's Links, the first argument of every compiled method. A member is read and
+ * written through its FieldSite in the object the method runs on, the same as in the interpreter. console.write() goes
+ * straight to ConsoleWrite.Execute(); any other call goes through Interpreter.dispatch(), so the method it finds runs
+ * compiled if it was compiled and interpreted if not. A member or call result used as a number or a condition is checked
+ * first, and fails with the interpreter's error if it isn't one.
+ * <p>
+ * A method is compiled only when all of it can be: every local is a typed parameter, return or local and is assigned
+ * before it is read, assignments to locals keep their declared type, calls are made on a member, a class or the object
+ * itself, and the statements are assignments, calls, ifs and boolean loops over literals, variables, members, calls,
+ * math, comparisons and and/or/not. Conditions become plain JVM branches, and and/or skip their right side once the left
+ * side decides, like the interpreter. Anything else (object locals, "new", assigning a name that is both a local and a
+ * member) leaves that method to the interpreter. Constructors always run interpreted.
+ */
+public class BytecodeCompiler {
+    private static final String IDT = "Interpreter/InterpreterDataType";
+    private static final String CONSOLE = "Interpreter/ConsoleWrite";
+    private static final String OBJECT = "Interpreter/ObjectIDT";
+    private static final String LINKS = "Interpreter/BytecodeCompiler$Links";
+    private static final String DESCRIPTOR = "(L" + LINKS + ";L" + OBJECT + ";[L" + IDT + ";)[L" + IDT + ";";
+    private static final int FIRST_VARIABLE = 3;//local 0 is the links, 1 the object (null in a shared method), 2 the parameter array
+
+    //what a Tran variable turns into on the JVM
+    private enum Kind {
+        NUMBER("Interpreter/NumberIDT", "F", 0x17, 0x38, NumberIDT.class),
+        BOOLEAN("Interpreter/BooleanIDT", "Z", 0x15, 0x36, BooleanIDT.class),
+        STRING("Interpreter/StringIDT", "Ljava/lang/String;", 0x19, 0x3a, StringIDT.class),
+        CHARACTER("Interpreter/CharIDT", "C", 0x15, 0x36, CharIDT.class);
+
+        final String idt;
+        final String descriptor;
+        final int load;
+        final int store;
+        final Class<?> idtClass;
+
+        Kind(String idt, String descriptor, int load, int store, Class<?> idtClass) {
+            this.idt = idt;
+            this.descriptor = descriptor;
+            this.load = load;
+            this.store = store;
+            this.idtClass = idtClass;
+        }
+    }
+
+    //thrown (and caught) when a method uses something we can't compile
+    private static class NotCompilable extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        NotCompilable(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /**
+     * What the compiled methods of one class call back into: the console, and the FieldSite of every member and the
+     * node of every call they use, by index. Bound as the first argument of each of them.
+     */
+    static final class Links {
+        private static final Kind[] KINDS = Kind.values();
+        private static final Frame NO_LOCALS = new Frame(FrameLayout.EMPTY);//compiled code keeps its locals on the JVM
+
+        private final Interpreter interpreter;
+        final ConsoleWrite console;
+        private final List<FieldSite> fields = new ArrayList<>();
+        private final List<String> fieldNames = new ArrayList<>();
+        private final List<Call> calls = new ArrayList<>();
+
+        private record Call(Node site, Optional<String> objectName, String methodName) {
+        }
+
+        Links(Interpreter interpreter, ConsoleWrite console) {
+            this.interpreter = interpreter;
+            this.console = console;
+        }
+
+        int addField(FieldSite field, String name) {
+            fields.add(field);
+            fieldNames.add(name);
+            return fields.size() - 1;
+        }
+
+        int addCall(Node site, Optional<String> objectName, String methodName) {
+            calls.add(new Call(site, objectName, methodName));
+            return calls.size() - 1;
+        }
+
+        //              Called from the compiled code
+
+        InterpreterDataType member(int field, ObjectIDT object) {
+            return object.get(slot(field, object));
+        }
+
+        void setMember(int field, ObjectIDT object, InterpreterDataType value) {
+            object.set(slot(field, object), value);
+        }
+
+        private int slot(int field, ObjectIDT object) {
+            int slot = object == null ? -1 : fields.get(field).slotIn(object);
+            if (slot < 0) {
+                throw new RuntimeException("Variable not found: " + fieldNames.get(field));
+            }
+            return slot;
+        }
+
+        //a call statement - every return value, and at least as many as it assigns
+        InterpreterDataType[] call(int site, ObjectIDT object, InterpreterDataType[] arguments, int returns) {
+            Call call = calls.get(site);
+            List<InterpreterDataType> results = interpreter.dispatch(call.site(), call.objectName(), call.methodName(),
+                    Arrays.asList(arguments), Optional.ofNullable(object), NO_LOCALS);
+            if (returns > results.size()) {
+                throw new RuntimeException("Method " + call.methodName() + " returns " + results.size()
+                        + " values but " + returns + " were expected");
+            }
+            return results.toArray(new InterpreterDataType[0]);
+        }
+
+        //a call in an expression - its first return value
+        InterpreterDataType value(int site, ObjectIDT object, InterpreterDataType[] arguments) {
+            InterpreterDataType[] results = call(site, object, arguments, 0);
+            return results.length == 0 ? null : results[0];
+        }
+
+        //a member or call result about to be unboxed - fails with the interpreter's error when it is some other type
+        static InterpreterDataType expect(InterpreterDataType value, int kind, String error) {
+            if (!KINDS[kind].idtClass.isInstance(value)) {
+                throw new RuntimeException(error);
+            }
+            return value;
+        }
+
+        static StringIDT string(String value) {
+            return new StringIDT(value);
+        }
+    }
+
+    private final ClassFileWriter.Code code;
+    private final FrameLayout layout;
+    private final Kind[] kinds;
+    private final HashSet<String> members;
+    private final Links links;
+    private final int results;//the JVM local a call statement keeps its return values in
+
+    private BytecodeCompiler(ClassFileWriter.Code code, FrameLayout layout, Kind[] kinds, HashSet<String> members, Links links) {
+        this.code = code;
+        this.layout = layout;
+        this.kinds = kinds;
+        this.members = members;
+        this.links = links;
+        this.results = FIRST_VARIABLE + layout.size();
+    }
+
+    /**
+     * Compile every method that can be compiled.
+     *
+     * @param top         - the program
+     * @param layouts     - the SlotResolver layouts for each method (a method's variables keep the same slots on the JVM)
+     * @param console     - where console.write() output goes
+     * @param interpreter - runs every other call the compiled code makes
+     * @return the compiled methods; anything missing stays with the interpreter
+     */
+    public static IdentityHashMap<MethodDeclarationNode, CompiledMethod> compile(TranNode top, IdentityHashMap<Node, FrameLayout> layouts,
+                                                                                ConsoleWrite console, Interpreter interpreter) {
+        IdentityHashMap<MethodDeclarationNode, CompiledMethod> compiled = new IdentityHashMap<>();
+        for (ClassNode classNode : top.Classes) {
+            HashSet<String> members = new HashSet<>();
+            for (MemberNode member : classNode.members) {
+                members.add(member.declaration.name);
+            }
+            Links links = new Links(interpreter, console);
+
+            ClassFileWriter writer = new ClassFileWriter("Interpreter/Tran$" + classNode.name);
+            List<MethodDeclarationNode> methods = new ArrayList<>();
+            List<Class<?>[]> parameterTypes = new ArrayList<>();
+            for (MethodDeclarationNode m : classNode.methods) {
+                FrameLayout layout = layouts.get(m);
+                if (m instanceof BuiltInMethodDeclarationNode || layout == null) {
+                    continue;
+                }
+                try {
+                    Kind[] kinds = kinds(m, layout);
+                    ClassFileWriter.Code code = writer.newMethod("m" + methods.size(), DESCRIPTOR);
+                    new BytecodeCompiler(code, layout, kinds, members, links).method(m);
+                    code.finish();
+                    Class<?>[] types = new Class<?>[m.parameters.size()];
+                    for (int i = 0; i < types.length; i++) {
+                        types[i] = kinds[layout.parameterSlot(i)].idtClass;
+                    }
+                    methods.add(m);
+                    parameterTypes.add(types);
+                } catch (NotCompilable | IllegalStateException e) {
+                    //the interpreter runs this one
+                }
+            }
+            if (methods.isEmpty()) {
+                continue;
+            }
+
+            try {
+                MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(writer.toByteArray(), true);
+                MethodType type = MethodType.methodType(InterpreterDataType[].class, Links.class, ObjectIDT.class, InterpreterDataType[].class);
+                for (int i = 0; i < methods.size(); i++) {
+                    MethodHandle handle = hidden.findStatic(hidden.lookupClass(), "m" + i, type).bindTo(links);
+                    compiled.put(methods.get(i), new CompiledMethod(handle, parameterTypes.get(i)));
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Unable to load compiled class " + classNode.name, e);
+            }
+        }
+        return compiled;
+    }
+
+    //the JVM type of every slot, from the declarations
+    private static Kind[] kinds(MethodDeclarationNode m, FrameLayout layout) {
+        if (FIRST_VARIABLE + layout.size() + 1 > 255) {
+            throw new NotCompilable("too many variables");
+        }
+        Kind[] kinds = new Kind[layout.size()];
+        //a parameter has its own slot even when a local shadows it; a slot nothing can name is left without a kind
+        for (int i = 0; i < m.parameters.size(); i++) {
+            kinds[layout.parameterSlot(i)] = kindOf(m.parameters.get(i).type);
+        }
+        List<VariableDeclarationNode> declarations = new ArrayList<>(m.returns);
+        declarations.addAll(m.locals);
+        for (VariableDeclarationNode declaration : declarations) {
+            Kind kind = kindOf(declaration.type);
+            int slot = layout.slotOf(declaration.name);
+            if (kinds[slot] != null && kinds[slot] != kind) {
+                throw new NotCompilable(declaration.name + " is declared twice");
+            }
+            kinds[slot] = kind;
+        }
+        return kinds;
+    }
+
+    private static Kind kindOf(String type) {
+        if (type == null) {
+            throw new NotCompilable("no type");
+        }
+        switch (type.toLowerCase()) {
+            case "number":
+                return Kind.NUMBER;
+            case "boolean":
+                return Kind.BOOLEAN;
+            case "string":
+                return Kind.STRING;
+            case "char":
+            case "character":
+                return Kind.CHARACTER;
+            default:
+                throw new NotCompilable("objects are not compiled");
+        }
+    }
+
+    //              Methods
+
+    private void method(MethodDeclarationNode m) {
+        code.setMaxLocals(results + 1);
+        BitSet assigned = new BitSet();
+
+        // unbox the parameters
+        for (int i = 0; i < m.parameters.size(); i++) {
+            int slot = layout.parameterSlot(i);
+            Kind kind = kinds[slot];
+            code.op(0x2c, 1);//aload_2
+            code.iconst(i);
+            code.op(0x32, -1);//aaload
+            code.type(0xc0, kind.idt, 0);//checkcast
+            code.field(0xb4, kind.idt, "Value", kind.descriptor, 0);//getfield
+            code.local(kind.store, FIRST_VARIABLE + slot, -1);
+            assigned.set(slot);
+        }
+        // everything else starts out zero - the verifier wants it, even though nothing reads it before it is assigned
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (!assigned.get(slot) && kinds[slot] != null) {
+                if (kinds[slot] == Kind.NUMBER) {
+                    code.fconst(0);
+                } else if (kinds[slot] == Kind.STRING) {
+                    code.op(0x01, 1);//aconst_null
+                } else {
+                    code.iconst(0);
+                }
+                code.local(kinds[slot].store, FIRST_VARIABLE + slot, -1);
+            }
+        }
+
+        statements(m.statements, assigned);
+
+        // box the return values
+        code.iconst(m.returns.size());
+        code.type(0xbd, IDT, 0);//anewarray
+        for (int i = 0; i < m.returns.size(); i++) {
+            int slot = layout.returnSlot(i);
+            if (!assigned.get(slot)) {
+                throw new NotCompilable(m.returns.get(i).name + " might not be set");
+            }
+            code.op(0x59, 1);//dup
+            code.iconst(i);
+            box(slot);
+            code.op(0x53, -3);//aastore
+        }
+        code.op(0xb0, -1);//areturn
+    }
+
+    private void box(int slot) {
+        code.local(kinds[slot].load, FIRST_VARIABLE + slot, 1);
+        boxTop(kinds[slot]);
+    }
+
+    //box the value on top of the stack - floats, ints and chars through ValueCache, so small values are shared
+    private void boxTop(Kind kind) {
+        switch (kind) {
+            case NUMBER -> code.invoke(0xb8, "Interpreter/ValueCache", "number", "(F)L" + kind.idt + ";", 0);
+            case BOOLEAN -> code.invoke(0xb8, "Interpreter/ValueCache", "bool", "(Z)L" + kind.idt + ";", 0);
+            case CHARACTER -> code.invoke(0xb8, "Interpreter/ValueCache", "character", "(C)L" + kind.idt + ";", 0);
+            case STRING -> code.invoke(0xb8, LINKS, "string", "(" + kind.descriptor + ")L" + kind.idt + ";", 0);
+        }
+    }
+
+    //unbox the member or call result on top of the stack, after checking it is one of these
+    private void unbox(Kind kind, String error) {
+        code.iconst(kind.ordinal());
+        code.ldcString(error);
+        code.invoke(0xb8, LINKS, "expect", "(L" + IDT + ";ILjava/lang/String;)L" + IDT + ";", -2);
+        code.type(0xc0, kind.idt, 0);//checkcast
+        code.field(0xb4, kind.idt, "Value", kind.descriptor, 0);//getfield
+    }
+
+    //              Statements
+
+    private void statements(List<StatementNode> statements, BitSet assigned) {
+        for (StatementNode statement : statements) {
+            if (statement instanceof AssignmentNode assignmentNode) {
+                VariableReferenceNode target = assignmentNode.target;
+                FrameLayout.Reference resolved = reference(target);
+                if (resolved.slot() < 0) {//a member keeps whatever it is given, like in the interpreter
+                    memberBefore(resolved.member(), target.name);
+                    boxed(assignmentNode.expression, assigned);
+                    memberStore();
+                } else {
+                    int slot = assignable(target);
+                    unboxed(assignmentNode.expression, kinds[slot], target.name + " can only hold a " + kinds[slot].name().toLowerCase(), assigned);
+                    code.local(kinds[slot].store, FIRST_VARIABLE + slot, -1);
+                    assigned.set(slot);
+                }
+            } else if (statement instanceof MethodCallStatementNode methodCall) {
+                if (isConsoleWrite(methodCall)) {
+                    write(methodCall, assigned);
+                } else {
+                    call(methodCall, assigned);
+                }
+            } else if (statement instanceof LoopNode loopNode) {
+                loop(loopNode, assigned);
+            } else if (statement instanceof IfNode ifNode) {
+                ifStatement(ifNode, assigned);
+            } else {
+                throw new NotCompilable("unsupported statement " + statement.getClass().getSimpleName());
+            }
+        }
+    }
+
+    //the built-in console.write(), and not a "console" of our own
+    private boolean isConsoleWrite(MethodCallStatementNode methodCall) {
+        return methodCall.objectName != null && methodCall.objectName.isPresent() && methodCall.objectName.get().equals("console")
+                && "write".equals(methodCall.methodName)
+                && layout.slotOf("console") < 0 && !members.contains("console")
+                && (methodCall.returnValues == null || methodCall.returnValues.isEmpty());
+    }
+
+    //console.write(a, b, c) - box everything into a list and hand it to ConsoleWrite
+    private void write(MethodCallStatementNode methodCall, BitSet assigned) {
+        code.op(0x2a, 1);//aload_0
+        code.field(0xb4, LINKS, "console", "L" + CONSOLE + ";", 0);//getfield
+        code.type(0xbb, "java/util/ArrayList", 1);
+        code.op(0x59, 1);//dup
+        code.invoke(0xb7, "java/util/ArrayList", "<init>", "()V", -1);
+        for (ExpressionNode parameter : arguments(methodCall.parameters)) {
+            code.op(0x59, 1);//dup
+            boxed(parameter, assigned);
+            code.invoke(0xb6, "java/util/ArrayList", "add", "(Ljava/lang/Object;)Z", -1);
+            code.op(0x57, -1);//pop
+        }
+        code.invoke(0xb6, CONSOLE, "Execute", "(Ljava/util/List;)Ljava/util/List;", -1);
+        code.op(0x57, -1);//pop
+    }
+
+    //same rule as getParameters() - the parser leaves a nameless reference behind for an empty "()"
+    private static List<ExpressionNode> arguments(List<ExpressionNode> parameters) {
+        List<ExpressionNode> arguments = new ArrayList<>();
+        for (ExpressionNode parameter : parameters) {
+            if (parameter == null || (parameter instanceof VariableReferenceNode reference && reference.name == null)) {
+                break;
+            }
+            arguments.add(parameter);
+        }
+        return arguments;
+    }
+
+    //any other call statement - through the interpreter, then the return values into their variables
+    private void call(MethodCallStatementNode methodCall, BitSet assigned) {
+        List<VariableReferenceNode> targets = methodCall.returnValues == null ? List.of() : methodCall.returnValues;
+        callSite(methodCall, methodCall.objectName, methodCall.methodName, arguments(methodCall.parameters), assigned);
+        code.iconst(targets.size());
+        code.invoke(0xb6, LINKS, "call", "(IL" + OBJECT + ";[L" + IDT + ";I)[L" + IDT + ";", -4);
+        code.local(0x3a, results, -1);//astore
+        for (int i = 0; i < targets.size(); i++) {
+            VariableReferenceNode target = targets.get(i);
+            FrameLayout.Reference resolved = reference(target);
+            if (resolved.slot() < 0) {
+                memberBefore(resolved.member(), target.name);
+                result(i);
+                memberStore();
+            } else {
+                int slot = assignable(target);
+                result(i);
+                unbox(kinds[slot], target.name + " can only hold a " + kinds[slot].name().toLowerCase());
+                code.local(kinds[slot].store, FIRST_VARIABLE + slot, -1);
+                assigned.set(slot);
+            }
+        }
+    }
+
+    private void result(int i) {
+        code.local(0x19, results, 1);//aload
+        code.iconst(i);
+        code.op(0x32, -1);//aaload
+    }
+
+    //the links, the call's index, the object and the boxed arguments - what Links.call() and value() start with
+    private void callSite(Node site, Optional<String> objectName, String methodName, List<ExpressionNode> arguments, BitSet assigned) {
+        if (objectName != null && objectName.isPresent() && layout.slotOf(objectName.get()) >= 0) {
+            throw new NotCompilable("calls on locals are not compiled");
+        }
+        code.op(0x2a, 1);//aload_0
+        code.iconst(links.addCall(site, objectName, methodName));
+        code.op(0x2b, 1);//aload_1
+        code.iconst(arguments.size());
+        code.type(0xbd, IDT, 0);//anewarray
+        for (int i = 0; i < arguments.size(); i++) {
+            code.op(0x59, 1);//dup
+            code.iconst(i);
+            boxed(arguments.get(i), assigned);
+            code.op(0x53, -3);//aastore
+        }
+    }
+
+    //the first half of a member store - then the value, then memberStore()
+    private void memberBefore(FieldSite field, String name) {
+        code.op(0x2a, 1);//aload_0
+        code.iconst(links.addField(field, name));
+        code.op(0x2b, 1);//aload_1
+    }
+
+    private void memberStore() {
+        code.invoke(0xb6, LINKS, "setMember", "(IL" + OBJECT + ";L" + IDT + ";)V", -4);
+    }
+
+    //a variable only counts as assigned after the if when both branches assign it
+    private void ifStatement(IfNode ifNode, BitSet assigned) {
+        ClassFileWriter.Label otherwise = new ClassFileWriter.Label();
+        condition(ifNode.condition, false, otherwise, assigned);
+        BitSet inThen = (BitSet) assigned.clone();
+        statements(ifNode.statements, inThen);
+        if (ifNode.elseStatement.isEmpty()) {
+            code.mark(otherwise);
+            return;
+        }
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        code.jump(0xa7, end, 0);//goto
+        code.mark(otherwise);
+        BitSet inElse = (BitSet) assigned.clone();
+        statements(ifNode.elseStatement.get().statements, inElse);
+        code.mark(end);
+        inThen.and(inElse);
+        assigned.or(inThen);
+    }
+
+    /*
+     * The interpreter runs a boolean loop as: while (condition) { variable = true; body }
+     */
+    private void loop(LoopNode loopNode, BitSet assigned) {
+        if (loopNode.expression == null) {
+            throw new NotCompilable("loop without a condition");
+        }
+        //a member or call might be an iterator - the interpreter has to look at it first
+        if (!Interpreter.isCondition(loopNode.expression) && isDynamic(loopNode.expression)) {
+            throw new NotCompilable("loop over a value that might be an iterator");
+        }
+        int variable = -1;
+        if (loopNode.assignment != null && loopNode.assignment.isPresent()) {
+            variable = local(loopNode.assignment.get());
+            if (kinds[variable] != Kind.BOOLEAN) {
+                throw new NotCompilable("loop variable is not a boolean");
+            }
+        }
+        ClassFileWriter.Label top = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        code.mark(top);
+        condition(loopNode.expression, false, end, assigned);
+
+        // whatever the body assigns might not happen at all, so it only counts inside the body
+        BitSet inBody = (BitSet) assigned.clone();
+        if (variable >= 0) {
+            code.iconst(1);
+            code.local(Kind.BOOLEAN.store, FIRST_VARIABLE + variable, -1);
+            inBody.set(variable);
+        }
+        statements(loopNode.statements, inBody);
+        code.jump(0xa7, top, 0);//goto
+        code.mark(end);
+    }
+
+    //              Conditions
+
+    //jump to target when the condition comes out as "when", fall through when it doesn't
+    private void condition(ExpressionNode expression, boolean when, ClassFileWriter.Label target, BitSet assigned) {
+        if (expression instanceof BooleanLiteralNode literal) {
+            if (literal.value == when) {
+                code.jump(0xa7, target, 0);//goto
+            }
+        } else if (expression instanceof NotOpNode notOpNode) {
+            condition(notOpNode.left, !when, target, assigned);
+        } else if (expression instanceof BooleanOpNode booleanOpNode) {
+            if (booleanOpNode.op == null) {
+                throw new NotCompilable("unsupported boolean operator");
+            }
+            //"and" is decided by a false left side, "or" by a true one
+            boolean decidedBy = booleanOpNode.op == BooleanOpNode.BooleanOperations.or;
+            if (decidedBy == when) {
+                condition(booleanOpNode.left, when, target, assigned);
+                condition(booleanOpNode.right, when, target, assigned);
+            } else {
+                ClassFileWriter.Label decided = new ClassFileWriter.Label();
+                condition(booleanOpNode.left, decidedBy, decided, assigned);
+                condition(booleanOpNode.right, when, target, assigned);
+                code.mark(decided);
+            }
+        } else if (expression instanceof CompareNode compareNode) {
+            numbers(compareNode.left, compareNode.right, "Comparison on non-comparable types", assigned);
+            //fcmpg makes NaN look bigger, fcmpl smaller - pick the one that makes NaN compare false, like the interpreter
+            int jumpIfFalse;
+            switch (compareNode.op) {
+                case eq -> { code.op(0x95, -1); jumpIfFalse = 0x9a; }//fcmpl, ifne
+                case ne -> { code.op(0x95, -1); jumpIfFalse = 0x99; }//fcmpl, ifeq
+                case lt -> { code.op(0x96, -1); jumpIfFalse = 0x9c; }//fcmpg, ifge
+                case le -> { code.op(0x96, -1); jumpIfFalse = 0x9d; }//fcmpg, ifgt
+                case gt -> { code.op(0x95, -1); jumpIfFalse = 0x9e; }//fcmpl, ifle
+                case ge -> { code.op(0x95, -1); jumpIfFalse = 0x9b; }//fcmpl, iflt
+                default -> throw new NotCompilable("unsupported comparison");
+            }
+            code.jump(when ? opposite(jumpIfFalse) : jumpIfFalse, target, -1);
+        } else {
+            unboxed(expression, Kind.BOOLEAN, "Boolean operation on non-boolean types", assigned);
+            code.jump(when ? 0x9a : 0x99, target, -1);//ifne, ifeq
+        }
+    }
+
+    //ifeq <-> ifne, iflt <-> ifge, ifgt <-> ifle
+    private static int opposite(int jump) {
+        return switch (jump) {
+            case 0x99 -> 0x9a;
+            case 0x9a -> 0x99;
+            case 0x9b -> 0x9c;
+            case 0x9c -> 0x9b;
+            case 0x9d -> 0x9e;
+            case 0x9e -> 0x9d;
+            default -> throw new IllegalStateException("not a comparison jump");
+        };
+    }
+
+    //              Expressions
+
+    //what SlotResolver made of a name: a local's slot, a member's FieldSite, or both
+    private FrameLayout.Reference reference(VariableReferenceNode reference) {
+        FrameLayout.Reference resolved = reference == null || reference.name == null ? null : layout.reference(reference);
+        if (resolved == null) {
+            throw new NotCompilable("not a variable");
+        }
+        if (resolved.slot() < 0 && resolved.member() == null) {
+            throw new NotCompilable(reference.name + " is not declared");
+        }
+        return resolved;
+    }
+
+    //a local to read - one that is also a member is read as the local, like in the interpreter
+    private int local(VariableReferenceNode reference) {
+        int slot = reference(reference).slot();
+        if (slot < 0 || kinds[slot] == null) {
+            throw new NotCompilable(reference.name + " is not a local");
+        }
+        return slot;
+    }
+
+    //a local to write - the interpreter writes a name that is also a member to both
+    private int assignable(VariableReferenceNode reference) {
+        if (reference(reference).member() != null) {
+            throw new NotCompilable(reference.name + " is a local and a member");
+        }
+        return local(reference);
+    }
+
+    //members and call results - IDTs of whatever type they turn out to be, only known while running
+    private boolean isDynamic(ExpressionNode expression) {
+        return expression instanceof MethodCallExpressionNode
+                || (expression instanceof VariableReferenceNode reference && reference(reference).slot() < 0);
+    }
+
+    //leaves the IDT of a member or a call's first return value on the stack, as it is
+    private void dynamic(ExpressionNode expression, BitSet assigned) {
+        if (expression instanceof MethodCallExpressionNode methodCall) {
+            //evaluate() passes every parameter, a nameless one as null
+            if (arguments(methodCall.parameters).size() != methodCall.parameters.size()) {
+                throw new NotCompilable("empty parameter");
+            }
+            callSite(methodCall, methodCall.objectName, methodCall.methodName, methodCall.parameters, assigned);
+            code.invoke(0xb6, LINKS, "value", "(IL" + OBJECT + ";[L" + IDT + ";)L" + IDT + ";", -3);
+        } else {
+            VariableReferenceNode reference = (VariableReferenceNode) expression;
+            memberBefore(reference(reference).member(), reference.name);
+            code.invoke(0xb6, LINKS, "member", "(IL" + OBJECT + ";)L" + IDT + ";", -2);
+        }
+    }
+
+    //leaves an IDT on the stack - a member or call result as it is, anything else boxed
+    private void boxed(ExpressionNode expression, BitSet assigned) {
+        if (isDynamic(expression)) {
+            dynamic(expression, assigned);
+        } else {
+            boxTop(expression(expression, assigned));
+        }
+    }
+
+    //leaves a primitive of this kind on the stack - a member or call result fails with error when it isn't one
+    private void unboxed(ExpressionNode expression, Kind kind, String error, BitSet assigned) {
+        if (isDynamic(expression)) {
+            dynamic(expression, assigned);
+            unbox(kind, error);
+        } else if (expression(expression, assigned) != kind) {
+            throw new NotCompilable("expected a " + kind);
+        }
+    }
+
+    //leaves the value on the stack (float, int, String or char) and says which kind it is
+    private Kind expression(ExpressionNode expression, BitSet assigned) {
+        if (expression instanceof BooleanLiteralNode literal) {
+            code.iconst(literal.value ? 1 : 0);
+            return Kind.BOOLEAN;
+        }
+        if (expression instanceof NumericLiteralNode literal) {
+            code.fconst(literal.value);
+            return Kind.NUMBER;
+        }
+        if (expression instanceof StringLiteralNode literal) {
+            if (literal.value == null) {
+                throw new NotCompilable("null string");
+            }
+            code.ldcString(literal.value);
+            return Kind.STRING;
+        }
+        if (expression instanceof VariableReferenceNode reference) {
+            int slot = local(reference);
+            if (!assigned.get(slot)) {
+                throw new NotCompilable(reference.name + " might not be set");
+            }
+            code.local(kinds[slot].load, FIRST_VARIABLE + slot, 1);
+            return kinds[slot];
+        }
+        if (expression instanceof MathOpNode mathOpNode) {
+            numbers(mathOpNode.left, mathOpNode.right, "Math operation on non-number types", assigned);
+            switch (mathOpNode.op) {
+                case add -> code.op(0x62, -1);
+                case subtract -> code.op(0x66, -1);
+                case multiply -> code.op(0x6a, -1);
+                case divide -> code.op(0x6e, -1);
+                case modulo -> code.op(0x72, -1);//frem
+                default -> throw new NotCompilable("unsupported math operator");
+            }
+            return Kind.NUMBER;
+        }
+        if (expression instanceof CompareNode || expression instanceof BooleanOpNode || expression instanceof NotOpNode) {
+            ClassFileWriter.Label isFalse = new ClassFileWriter.Label();
+            ClassFileWriter.Label done = new ClassFileWriter.Label();
+            condition(expression, false, isFalse, assigned);
+            code.iconst(1);
+            code.jump(0xa7, done, 0);//goto
+            code.mark(isFalse);
+            code.setStack(code.getStack() - 1);//the other branch already pushed its answer
+            code.iconst(0);
+            code.mark(done);
+            return Kind.BOOLEAN;
+        }
+        throw new NotCompilable("unsupported expression");
+    }
+
+    //both sides as floats - like the interpreter, a member or call result is only checked once both sides have run
+    private void numbers(ExpressionNode left, ExpressionNode right, String error, BitSet assigned) {
+        boolean leftDynamic = isDynamic(left);
+        if (leftDynamic) {
+            dynamic(left, assigned);
+        } else if (expression(left, assigned) != Kind.NUMBER) {
+            throw new NotCompilable("math on something that is not a number");
+        }
+        unboxed(right, Kind.NUMBER, error, assigned);
+        if (leftDynamic) {
+            code.op(0x5f, 0);//swap
+            unbox(Kind.NUMBER, error);
+            code.op(0x5f, 0);//swap
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Interpreter;
+
+import AST.ClassNode;
+import AST.MethodDeclarationNode;
+
+/**
+ * Inline cache for one method call site (a MethodCallStatementNode or MethodCallExpressionNode).
+ * Remembers which method a receiver class dispatched to the last few times, so the next call from the
+ * same site with the same receiver class skips the search through the classes and their methods.
+ * Starts monomorphic, grows to POLYMORPHIC_LIMIT receiver classes, then gives up (megamorphic) and
+ * the site always takes the slow path.
+ * Every entry is tagged with the class table version it was filled under; a new version empties it.
+ */
+public class CallSiteCache {
+    public static final int POLYMORPHIC_LIMIT = 4;
+
+    private final ClassNode[] receivers = new ClassNode[POLYMORPHIC_LIMIT];
+    private final MethodDeclarationNode[] targets = new MethodDeclarationNode[POLYMORPHIC_LIMIT];
+    private int size = 0;
+    private int version = -1;
+    private boolean megamorphic = false;
+
+    /**
+     * @param receiver - the class we are dispatching on (null for a call with no receiver at all)
+     * @param classTableVersion - the interpreter's current class table version
+     * @return the cached method, or null on a miss
+     */
+    public MethodDeclarationNode lookup(ClassNode receiver, int classTableVersion) {
+        if (version != classTableVersion) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            if (receivers[i] == receiver) {//identity - there is one ClassNode per class
+                return targets[i];
+            }
+        }
+        return null;
+    }
+
+    public void fill(ClassNode receiver, MethodDeclarationNode target, int classTableVersion) {
+        if (version != classTableVersion) {//class table changed - everything we knew is stale
+            invalidate();
+            version = classTableVersion;
+        }
+        if (megamorphic) {
+            return;
+        }
+        if (size == POLYMORPHIC_LIMIT) {
+            megamorphic = true;
+            return;
+        }
+        receivers[size] = receiver;
+        targets[size] = target;
+        size++;
+    }
+
+    public void invalidate() {
+        for (int i = 0; i < size; i++) {
+            receivers[i] = null;
+            targets[i] = null;
+        }
+        size = 0;
+        megamorphic = false;
+    }
+
+    public boolean isMegamorphic() {
+        return megamorphic;
+    }
+}
@@ -0,0 +1,337 @@
+package Interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Just enough of a JVM class file writer for BytecodeCompiler: a constant pool and some public static methods.
+ * Writes version 49 class files - the verifier works the types out itself, so we never have to build a StackMapTable.
+ */
+public final class ClassFileWriter {
+    private static final int VERSION = 49;
+
+    private final DataOutputStream pool;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolCount = 1;
+    private final int thisClass;
+    private final int superClass;
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * @param internalName - the class name with slashes (Interpreter/Something)
+     */
+    public ClassFileWriter(String internalName) {
+        pool = new DataOutputStream(poolBytes);
+        thisClass = classRef(internalName);
+        superClass = classRef("java/lang/Object");
+    }
+
+    //              Constant pool
+
+    public int utf8(String s) {
+        Integer index = poolIndex.get("U" + s);
+        if (index != null) {
+            return index;
+        }
+        write(() -> {
+            pool.writeByte(1);
+            pool.writeUTF(s);
+        });
+        return remember("U" + s, 1);
+    }
+
+    public int classRef(String internalName) {
+        return entry("C" + internalName, 7, utf8(internalName), -1);
+    }
+
+    public int string(String s) {
+        return entry("S" + s, 8, utf8(s), -1);
+    }
+
+    public int floatConstant(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        Integer index = poolIndex.get("F" + bits);
+        if (index != null) {
+            return index;
+        }
+        write(() -> {
+            pool.writeByte(4);
+            pool.writeInt(bits);
+        });
+        return remember("F" + bits, 1);
+    }
+
+    public int integerConstant(int i) {
+        Integer index = poolIndex.get("I" + i);
+        if (index != null) {
+            return index;
+        }
+        write(() -> {
+            pool.writeByte(3);
+            pool.writeInt(i);
+        });
+        return remember("I" + i, 1);
+    }
+
+    public int methodRef(String owner, String name, String descriptor) {
+        return entry("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    public int fieldRef(String owner, String name, String descriptor) {
+        return entry("D" + owner + "." + name + ":" + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return entry("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+    }
+
+    //an entry made of one or two pool indexes
+    private int entry(String key, int tag, int first, int second) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        write(() -> {
+            pool.writeByte(tag);
+            pool.writeShort(first);
+            if (second >= 0) {
+                pool.writeShort(second);
+            }
+        });
+        return remember(key, 1);
+    }
+
+    private int remember(String key, int slots) {
+        int index = poolCount;
+        poolCount += slots;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    //              Methods
+
+    /**
+     * Start a new public static method. It is added to the class when Code.finish() is called - a method that is
+     * abandoned half way (BytecodeCompiler gave up on it) just never gets finished.
+     */
+    public Code newMethod(String name, String descriptor) {
+        return new Code(name, descriptor);
+    }
+
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.flush();
+            poolBytes.writeTo(out);
+            out.writeShort(0x0031);//public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);//interfaces
+            out.writeShort(0);//fields
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);//attributes
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(PoolWrite w) {
+        try {
+            w.run();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface PoolWrite {
+        void run() throws IOException;
+    }
+
+    //              Code
+
+    /**
+     * A branch target. Jumps to a label that is not marked yet are patched when it is.
+     */
+    public static class Label {
+        private int position = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    /**
+     * The code of one method. Keeps track of the operand stack depth as instructions are added so max_stack
+     * comes out right; after an unconditional jump the caller says what the depth is at the next label.
+     */
+    public class Code {
+        private final String name;
+        private final String descriptor;
+        private byte[] code = new byte[64];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals = 0;
+
+        private Code(String name, String descriptor) {
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public void setMaxLocals(int maxLocals) {
+            this.maxLocals = maxLocals;
+        }
+
+        public int getStack() {
+            return stack;
+        }
+
+        public void setStack(int depth) {
+            stack = depth;
+        }
+
+        //an instruction with no operands
+        public void op(int opcode, int stackChange) {
+            u1(opcode);
+            adjust(stackChange);
+        }
+
+        public void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(0x03 + value, 1);//iconst_m1 .. iconst_5
+            } else {
+                ldc(integerConstant(value));
+            }
+        }
+
+        public void fconst(float value) {
+            if (Float.floatToRawIntBits(value) == 0 || value == 1f || value == 2f) {
+                op(0x0b + (int) value, 1);//fconst_0 .. fconst_2
+            } else {
+                ldc(floatConstant(value));
+            }
+        }
+
+        public void ldcString(String value) {
+            ldc(string(value));
+        }
+
+        private void ldc(int index) {
+            if (index < 256) {
+                u1(0x12);
+                u1(index);
+            } else {
+                u1(0x13);//ldc_w
+                u2(index);
+            }
+            adjust(1);
+        }
+
+        //iload/fload/aload/istore/fstore/astore - locals are kept under 256
+        public void local(int opcode, int index, int stackChange) {
+            u1(opcode);
+            u1(index);
+            adjust(stackChange);
+        }
+
+        //new, checkcast, anewarray
+        public void type(int opcode, String internalName, int stackChange) {
+            u1(opcode);
+            u2(classRef(internalName));
+            adjust(stackChange);
+        }
+
+        public void field(int opcode, String owner, String name, String descriptor, int stackChange) {
+            u1(opcode);
+            u2(fieldRef(owner, name, descriptor));
+            adjust(stackChange);
+        }
+
+        public void invoke(int opcode, String owner, String name, String descriptor, int stackChange) {
+            u1(opcode);
+            u2(methodRef(owner, name, descriptor));
+            adjust(stackChange);
+        }
+
+        public void jump(int opcode, Label target, int stackChange) {
+            int at = length;
+            u1(opcode);
+            if (target.position >= 0) {
+                u2(target.position - at);
+            } else {
+                target.fixups.add(at);
+                u2(0);
+            }
+            adjust(stackChange);
+        }
+
+        //the label is here - patch every jump that was waiting for it
+        public void mark(Label label) {
+            label.position = length;
+            for (int at : label.fixups) {
+                int offset = label.position - at;
+                code[at + 1] = (byte) (offset >> 8);
+                code[at + 2] = (byte) offset;
+            }
+            label.fixups.clear();
+        }
+
+        public void finish() {
+            if (length >= 32768) {
+                throw new IllegalStateException("Method " + name + " is too big to compile");
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeShort(0x0009);//public static
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(1);
+                out.writeShort(utf8("Code"));
+                out.writeInt(12 + length);
+                out.writeShort(maxStack);
+                out.writeShort(maxLocals);
+                out.writeInt(length);
+                out.write(code, 0, length);
+                out.writeShort(0);//exception table
+                out.writeShort(0);//attributes
+                out.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            methods.add(bytes.toByteArray());
+        }
+
+        private void u1(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private void adjust(int change) {
+            stack += change;
+            if (stack > maxStack) {
+                maxStack = stack;
+            }
+        }
+    }
+}
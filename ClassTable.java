@@ -0,0 +1,238 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Symbol table for a loaded program, built once when the Interpreter is constructed.
+ * Indexes classes by name, each class's methods by (name, parameter count), constructors by parameter count,
+ * and the shared built-ins (console.write); also holds the Shape every object of a class shares. Duplicate classes, methods and constructors are reported here,
+ * all at once, instead of being silently shadowed at run time.
+ */
+public class ClassTable {
+    private final HashMap<String, ClassNode> classesByName = new HashMap<>();
+    private final IdentityHashMap<ClassNode, HashMap<String, MethodGroup>> methodsByClass = new IdentityHashMap<>();
+    private final HashMap<String, MethodGroup> methodsByName = new HashMap<>();//every class - for calls with no receiver
+    private final IdentityHashMap<ClassNode, List<List<ConstructorNode>>> constructorsByClass = new IdentityHashMap<>();
+    private final HashMap<String, BuiltInMethodDeclarationNode> builtIns = new HashMap<>();
+    private final IdentityHashMap<ClassNode, Shape> shapes = new IdentityHashMap<>();
+    private MethodDeclarationNode start;
+
+    public ClassTable(TranNode top) {
+        DuplicateCheck duplicates = new DuplicateCheck();
+        for (ClassNode classNode : top.Classes) {
+            if (!duplicates.newClass(classNode.name)) {
+                continue;
+            }
+            classesByName.put(classNode.name, classNode);
+            shapes.put(classNode, new Shape(classNode));
+
+            HashMap<String, MethodGroup> methods = new HashMap<>();
+            methodsByClass.put(classNode, methods);
+            for (MethodDeclarationNode m : classNode.methods) {
+                if (m.name == null) {//nothing can call it
+                    continue;
+                }
+                duplicates.method(m.name, types(m.parameters));
+                methods.computeIfAbsent(m.name, n -> new MethodGroup()).add(m);
+                methodsByName.computeIfAbsent(m.name, n -> new MethodGroup()).add(m);
+                if (m instanceof BuiltInMethodDeclarationNode builtIn && m.isShared) {
+                    builtIns.put(m.name, builtIn);
+                }
+                if (start == null && m.name.equals("start") && m.isShared && !m.isPrivate && m.parameters.isEmpty()) {
+                    start = m;
+                }
+            }
+
+            List<List<ConstructorNode>> constructors = new ArrayList<>();
+            constructorsByClass.put(classNode, constructors);
+            for (ConstructorNode c : classNode.constructors) {
+                duplicates.constructor(types(c.parameters));
+                listAt(constructors, c.parameters.size()).add(c);
+            }
+        }
+        if (!duplicates.diagnostics.isEmpty()) {
+            throw new RuntimeException("Unable to load program:\n    " + String.join("\n    ", duplicates.diagnostics));
+        }
+    }
+
+    public Optional<ClassNode> getClass(String name) {
+        return Optional.ofNullable(classesByName.get(name));
+    }
+
+    public Shape shapeOf(ClassNode classNode) {
+        Shape shape = shapes.get(classNode);
+        return shape == null ? new Shape(classNode) : shape;
+    }
+
+    /**
+     * @param classNode - the class to look in, or null to look in every class
+     * @return the methods with this name that could take this many parameters (variadic built-ins always can)
+     */
+    public List<MethodDeclarationNode> methods(ClassNode classNode, String name, int parameterCount) {
+        MethodGroup group;
+        if (classNode == null) {
+            group = methodsByName.get(name);
+        } else {
+            HashMap<String, MethodGroup> methods = methodsByClass.get(classNode);
+            group = methods == null ? null : methods.get(name);
+        }
+        return group == null ? List.of() : group.candidates(parameterCount);
+    }
+
+    public boolean hasMethod(ClassNode classNode, String name) {
+        HashMap<String, MethodGroup> methods = methodsByClass.get(classNode);
+        return methods != null && methods.containsKey(name);
+    }
+
+    public List<ConstructorNode> constructors(ClassNode classNode, int parameterCount) {
+        List<List<ConstructorNode>> constructors = constructorsByClass.get(classNode);
+        if (constructors == null || parameterCount >= constructors.size()) {
+            return List.of();
+        }
+        return constructors.get(parameterCount);
+    }
+
+    //a shared built-in that can be called without naming its class
+    public Optional<BuiltInMethodDeclarationNode> builtIn(String name) {
+        return Optional.ofNullable(builtIns.get(name));
+    }
+
+    //the shared, public, no parameter "start" method - found once, in class order
+    public Optional<MethodDeclarationNode> getStart() {
+        return Optional.ofNullable(start);
+    }
+
+    /**
+     * The same duplicate class, method and constructor diagnostics as loading the program would report, read straight
+     * off a FlatAst - for checking a program that was never built as objects (FrontEnd.parseAllFlat()).
+     */
+    public static List<String> check(FlatAst program) {
+        DuplicateCheck duplicates = new DuplicateCheck();
+        for (int i = 0; i < program.childCount(program.root()); i++) {
+            int classNode = program.child(program.root(), i);
+            if (program.kind(classNode) != FlatAst.Kind.CLASS || !duplicates.newClass(program.name(classNode))) {
+                continue;
+            }
+            for (int j = 0; j < program.childCount(classNode); j++) {
+                int part = program.child(classNode, j);
+                if (program.kind(part) == FlatAst.Kind.METHOD && program.name(part) != null) {
+                    duplicates.method(program.name(part), types(program, part));
+                } else if (program.kind(part) == FlatAst.Kind.CONSTRUCTOR) {
+                    duplicates.constructor(types(program, part));
+                }
+            }
+        }
+        return duplicates.diagnostics;
+    }
+
+    private static List<String> types(List<VariableDeclarationNode> parameters) {
+        List<String> types = new ArrayList<>(parameters.size());
+        for (VariableDeclarationNode parameter : parameters) {
+            types.add(parameter.type);
+        }
+        return types;
+    }
+
+    //the parameter types of a flat METHOD or CONSTRUCTOR
+    private static List<String> types(FlatAst program, int body) {
+        List<String> types = new ArrayList<>();
+        for (int i = 0; i < program.childCount(body); i++) {
+            int parameter = program.child(body, i);
+            if (program.kind(parameter) == FlatAst.Kind.PARAMETER) {
+                types.add(program.extraName(parameter));
+            }
+        }
+        return types;
+    }
+
+    private static <T> List<T> listAt(List<List<T>> lists, int index) {
+        while (lists.size() <= index) {
+            lists.add(new ArrayList<>());
+        }
+        return lists.get(index);
+    }
+
+    /*
+     * The duplicate rules, fed one class at a time (newClass() first, then its methods and constructors) - by the
+     * constructor from the object tree and by check() from a FlatAst. Two methods or constructors clash when they have
+     * the same name and the same parameter types.
+     */
+    private static class DuplicateCheck {
+        private final List<String> diagnostics = new ArrayList<>();
+        private final HashSet<String> classes = new HashSet<>();
+        private final HashSet<String> methods = new HashSet<>();
+        private final HashSet<String> constructors = new HashSet<>();
+        private String className;
+
+        //false for a class that was already declared - its contents are not looked at
+        boolean newClass(String name) {
+            if (!classes.add(name)) {
+                diagnostics.add("Duplicate class '" + name + "'");
+                return false;
+            }
+            className = name;
+            methods.clear();
+            constructors.clear();
+            return true;
+        }
+
+        void method(String name, List<String> parameterTypes) {
+            String signature = name + "(" + typeList(parameterTypes) + ")";
+            if (!methods.add(signature)) {
+                diagnostics.add("Duplicate method '" + signature + "' in class " + className);
+            }
+        }
+
+        void constructor(List<String> parameterTypes) {
+            String signature = "construct(" + typeList(parameterTypes) + ")";
+            if (!constructors.add(signature)) {
+                diagnostics.add("Duplicate constructor '" + signature + "' in class " + className);
+            }
+        }
+
+        private static String typeList(List<String> types) {
+            StringBuilder sb = new StringBuilder();
+            for (String type : types) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(type);
+            }
+            return sb.toString();
+        }
+    }
+
+    //all the methods sharing one name, split up by parameter count
+    private static class MethodGroup {
+        private final List<List<MethodDeclarationNode>> byArity = new ArrayList<>();
+        private final List<MethodDeclarationNode> variadic = new ArrayList<>();
+
+        void add(MethodDeclarationNode m) {
+            if (m instanceof BuiltInMethodDeclarationNode builtIn && builtIn.isVariadic) {
+                variadic.add(m);
+            } else {
+                listAt(byArity, m.parameters.size()).add(m);
+            }
+        }
+
+        List<MethodDeclarationNode> candidates(int parameterCount) {
+            List<MethodDeclarationNode> exact = parameterCount < byArity.size() ? byArity.get(parameterCount) : List.of();
+            if (variadic.isEmpty()) {
+                return exact;
+            }
+            if (exact.isEmpty()) {
+                return variadic;
+            }
+            List<MethodDeclarationNode> both = new ArrayList<>(exact);
+            both.addAll(variadic);
+            return both;
+        }
+    }
+}
@@ -0,0 +1,552 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Closure compiler for the CLOSURE_COMPILED execution mode.
+ * Turns a method or constructor body into a tree of CompiledStatement/CompiledExpression objects, once, the first time
+ * the body runs. Every decision the tree walker makes on each execution (which kind of node is this, which operator,
+ * which slot does this variable live in, which class does "new" make) is made here instead, so each executor only
+ * does its own work and the JIT can inline it.
+ * <p>
+ * Conditions (if, loop, and/or/not) compile to CompiledConditions that answer with a plain boolean and stop as soon
+ * as the answer is known, like evaluateCondition().
+ * <p>
+ * The executors behave exactly like interpretStatementBlock()/evaluate() - same order of evaluation, same errors,
+ * and the same quirks (an iterator loop runs its body once, and when it has run out stops the rest of its block).
+ * Anything the tree walker would only fail on when it reaches it is compiled to an executor that throws.
+ */
+public class ClosureCompiler {
+    private final Interpreter interpreter;
+
+    public ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Compile a method or constructor body.
+     *
+     * @param statements - the body
+     * @param layout     - the body's frame layout (slots are baked into the executors)
+     * @return the body, ready to run
+     */
+    public CompiledStatement compileBody(List<StatementNode> statements, FrameLayout layout) {
+        return compileBlock(statements, layout);
+    }
+
+    //              Statements
+
+    private CompiledStatement compileBlock(List<StatementNode> statements, FrameLayout layout) {
+        List<CompiledStatement> compiled = new ArrayList<>();
+        for (StatementNode statement : statements) {
+            CompiledStatement c = compileStatement(statement, layout);
+            if (c != null) {
+                compiled.add(c);
+            }
+        }
+        CompiledStatement[] block = compiled.toArray(new CompiledStatement[0]);
+        if (block.length == 1) {
+            CompiledStatement only = block[0];
+            return (object, locals) -> {
+                only.execute(object, locals);
+                return true;
+            };
+        }
+        return (object, locals) -> {
+            for (CompiledStatement statement : block) {
+                if (!statement.execute(object, locals)) {
+                    break;
+                }
+            }
+            return true;
+        };
+    }
+
+    //null for statements the tree walker skips
+    private CompiledStatement compileStatement(StatementNode statement, FrameLayout layout) {
+        if (statement instanceof AssignmentNode assignmentNode) {
+            return compileAssignment(assignmentNode, layout);
+        }
+        if (statement instanceof MethodCallStatementNode methodCall) {
+            return compileMethodCall(methodCall, layout);
+        }
+        if (statement instanceof LoopNode loopNode) {
+            return compileLoop(loopNode, layout);
+        }
+        if (statement instanceof IfNode ifNode) {
+            return compileIf(ifNode, layout);
+        }
+        return null;
+    }
+
+    private CompiledStatement compileAssignment(AssignmentNode assignmentNode, FrameLayout layout) {
+        VariableReferenceNode target = assignmentNode.target;
+        String name = String.valueOf(target);
+        CompiledExpression value = compileExpression(assignmentNode.expression, layout);
+        FrameLayout.Reference resolved = layout.reference(target);
+        if (resolved == null) {
+            //a node SlotResolver never saw - by name, like the tree walker
+            FieldSite field = new FieldSite(name);
+            return (object, locals) -> {
+                InterpreterDataType v = value.evaluate(object, locals);
+                int member = object.isPresent() ? field.slotIn(object.get()) : -1;
+                if (member >= 0) {
+                    object.get().set(member, v);
+                } else if (locals.containsKey(target)) {
+                    locals.put(target, v);
+                } else {
+                    throw new RuntimeException("Variable not found: " + name);
+                }
+                return true;
+            };
+        }
+        int slot = resolved.slot();
+        FieldSite field = resolved.member();
+        if (field == null) {
+            if (slot < 0) {
+                return (object, locals) -> {
+                    value.evaluate(object, locals);
+                    throw new RuntimeException("Variable not found: " + name);
+                };
+            }
+            //a declared local - always there, no need to check
+            return (object, locals) -> {
+                locals.set(slot, value.evaluate(object, locals));
+                return true;
+            };
+        }
+        if (slot >= 0) {
+            //a local with a member's name - the tree walker sets both
+            return (object, locals) -> {
+                InterpreterDataType v = value.evaluate(object, locals);
+                if (object.isPresent()) {
+                    ObjectIDT self = object.get();
+                    int member = field.slotIn(self);
+                    if (member >= 0) {
+                        self.set(member, v);
+                    }
+                }
+                locals.set(slot, v);
+                return true;
+            };
+        }
+        //a member - only ever the object, never the frame
+        return (object, locals) -> {
+            InterpreterDataType v = value.evaluate(object, locals);
+            int member = object.isPresent() ? field.slotIn(object.get()) : -1;
+            if (member < 0) {
+                throw new RuntimeException("Variable not found: " + name);
+            }
+            object.get().set(member, v);
+            return true;
+        };
+    }
+
+    private CompiledStatement compileMethodCall(MethodCallStatementNode methodCall, FrameLayout layout) {
+        //same rule as getParameters() - the parser leaves a nameless reference behind for an empty "()"
+        List<ExpressionNode> parameters = new ArrayList<>();
+        for (ExpressionNode parameter : methodCall.parameters) {
+            if (parameter == null || (parameter instanceof VariableReferenceNode reference && reference.name == null)) {
+                break;
+            }
+            parameters.add(parameter);
+        }
+        CompiledExpression[] arguments = compileExpressions(parameters, layout);
+        VariableReferenceNode[] returnValues = methodCall.returnValues == null ? null
+                : methodCall.returnValues.toArray(new VariableReferenceNode[0]);
+
+        return (object, locals) -> {
+            List<InterpreterDataType> values = evaluateAll(arguments, object, locals);
+            List<InterpreterDataType> results = interpreter.dispatch(methodCall, methodCall.objectName, methodCall.methodName, values, object, locals);
+            if (returnValues != null) {
+                if (returnValues.length > results.size()) {
+                    throw new RuntimeException("Method " + methodCall.methodName + " returns " + results.size()
+                            + " values but " + returnValues.length + " were expected");
+                }
+                for (int i = 0; i < returnValues.length; i++) {
+                    interpreter.assignVariable(returnValues[i], results.get(i), locals, object);
+                }
+            }
+            return true;
+        };
+    }
+
+    private CompiledStatement compileIf(IfNode ifNode, FrameLayout layout) {
+        CompiledCondition condition = compileCondition(ifNode.condition, layout);
+        CompiledStatement then = compileBlock(ifNode.statements, layout);
+        if (ifNode.elseStatement.isEmpty()) {
+            return (object, locals) -> {
+                if (condition.test(object, locals)) {
+                    then.execute(object, locals);
+                }
+                return true;
+            };
+        }
+        CompiledStatement otherwise = compileBlock(ifNode.elseStatement.get().statements, layout);
+        return (object, locals) -> {
+            if (condition.test(object, locals)) {
+                then.execute(object, locals);
+            } else {
+                otherwise.execute(object, locals);
+            }
+            return true;
+        };
+    }
+
+    private CompiledStatement compileLoop(LoopNode loopNode, FrameLayout layout) {
+        if (loopNode.expression == null) {
+            return (object, locals) -> {
+                throw new RuntimeException("Loop without a condition");
+            };
+        }
+        VariableReferenceNode variable = loopNode.assignment == null ? null : loopNode.assignment.orElse(null);
+        CompiledCondition condition = compileCondition(loopNode.expression, layout);
+        CompiledStatement body = compileBlock(loopNode.statements, layout);
+        BooleanIDT running = ValueCache.bool(true);
+
+        //a condition is a boolean loop from the start; anything else might be an iterator
+        CompiledStatement booleanLoop = (object, locals) -> {
+            while (condition.test(object, locals)) {
+                if (variable != null) {
+                    locals.put(variable, running);
+                }
+                body.execute(object, locals);
+            }
+            return true;
+        };
+        if (Interpreter.isCondition(loopNode.expression)) {
+            return booleanLoop;
+        }
+        CompiledExpression first = compileExpression(loopNode.expression, layout);
+        return (object, locals) -> {
+            InterpreterDataType value = first.evaluate(object, locals);
+            if (value instanceof ObjectIDT iterator && interpreter.isIterator(iterator)) {
+                List<InterpreterDataType> result = interpreter.callGetNext(loopNode, iterator);
+                if (!((BooleanIDT) result.get(0)).Value) {
+                    return false;
+                }
+                if (variable != null) {
+                    locals.put(variable, result.get(1));
+                }
+                body.execute(object, locals);
+                return true;
+            }
+            if (!Interpreter.truth(value)) {
+                return true;
+            }
+            if (variable != null) {
+                locals.put(variable, running);
+            }
+            body.execute(object, locals);
+            return booleanLoop.execute(object, locals);
+        };
+    }
+
+    //              Conditions
+
+    private CompiledCondition compileCondition(ExpressionNode expression, FrameLayout layout) {
+        if (expression instanceof BooleanLiteralNode literal) {
+            boolean value = literal.value;
+            return (object, locals) -> value;
+        }
+        if (expression instanceof NotOpNode notOpNode) {
+            CompiledCondition operand = compileCondition(notOpNode.left, layout);
+            return (object, locals) -> !operand.test(object, locals);
+        }
+        if (expression instanceof BooleanOpNode booleanOpNode) {
+            CompiledCondition left = compileCondition(booleanOpNode.left, layout);
+            CompiledCondition right = compileCondition(booleanOpNode.right, layout);
+            if (booleanOpNode.op == BooleanOpNode.BooleanOperations.and) {
+                return (object, locals) -> left.test(object, locals) && right.test(object, locals);
+            }
+            if (booleanOpNode.op == BooleanOpNode.BooleanOperations.or) {
+                return (object, locals) -> left.test(object, locals) || right.test(object, locals);
+            }
+        }
+        //comparisons, variables, calls - evaluate the value and check it's a boolean
+        CompiledExpression value = compileExpression(expression, layout);
+        return (object, locals) -> Interpreter.truth(value.evaluate(object, locals));
+    }
+
+    //              Expressions
+
+    private CompiledExpression[] compileExpressions(List<ExpressionNode> expressions, FrameLayout layout) {
+        CompiledExpression[] compiled = new CompiledExpression[expressions.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compileExpression(expressions.get(i), layout);
+        }
+        return compiled;
+    }
+
+    private static List<InterpreterDataType> evaluateAll(CompiledExpression[] expressions, Optional<ObjectIDT> object, Frame locals) {
+        List<InterpreterDataType> values = new ArrayList<>(expressions.length);
+        for (CompiledExpression expression : expressions) {
+            values.add(expression.evaluate(object, locals));
+        }
+        return values;
+    }
+
+    private CompiledExpression compileExpression(ExpressionNode expression, FrameLayout layout) {
+        if (expression == null) {
+            return (object, locals) -> {
+                throw new NullPointerException("Missing expression");
+            };
+        }
+        //literals are shared values, made once right here
+        if (expression instanceof BooleanLiteralNode literal) {
+            BooleanIDT value = ValueCache.bool(literal.value);
+            return (object, locals) -> value;
+        }
+        if (expression instanceof NumericLiteralNode literal) {
+            NumberIDT value = interpreter.literal(literal);
+            return (object, locals) -> value;
+        }
+        if (expression instanceof StringLiteralNode literal) {
+            StringIDT value = interpreter.literal(literal);
+            return (object, locals) -> value;
+        }
+        if (expression instanceof BooleanOpNode booleanOpNode) {
+            return compileBooleanOp(booleanOpNode, layout);
+        }
+        if (expression instanceof NotOpNode notOpNode) {
+            CompiledCondition operand = compileCondition(notOpNode.left, layout);
+            return (object, locals) -> ValueCache.bool(!operand.test(object, locals));
+        }
+        if (expression instanceof CompareNode compareNode) {
+            return compileCompare(compareNode, layout);
+        }
+        if (expression instanceof MathOpNode mathOpNode) {
+            return compileMath(mathOpNode, layout);
+        }
+        if (expression instanceof MethodCallExpressionNode methodCall) {
+            CompiledExpression[] arguments = compileExpressions(methodCall.parameters, layout);
+            return (object, locals) -> {
+                List<InterpreterDataType> values = evaluateAll(arguments, object, locals);
+                List<InterpreterDataType> results = interpreter.dispatch(methodCall, methodCall.objectName, methodCall.methodName, values, object, locals);
+                return results.isEmpty() ? null : results.get(0);
+            };
+        }
+        if (expression instanceof VariableReferenceNode reference) {
+            return compileVariable(reference, layout);
+        }
+        if (expression instanceof NewNode newNode) {
+            return compileNew(newNode, layout);
+        }
+        String type = expression.getClass().getSimpleName();
+        return (object, locals) -> {
+            throw new IllegalArgumentException("Unsupported ExpressionNode type: " + type);
+        };
+    }
+
+    private CompiledExpression compileVariable(VariableReferenceNode reference, FrameLayout layout) {
+        String name = reference.name;
+        if (name == null) {
+            return (object, locals) -> null;
+        }
+        FrameLayout.Reference resolved = layout.reference(reference);
+        if (resolved == null) {
+            //a node SlotResolver never saw - by name, like the tree walker
+            FieldSite field = new FieldSite(name);
+            return (object, locals) -> {
+                if (locals.containsKey(reference)) {
+                    return locals.get(reference);
+                }
+                int member = object.isPresent() ? field.slotIn(object.get()) : -1;
+                if (member >= 0) {
+                    return object.get().get(member);
+                }
+                throw new RuntimeException("Variable not found: " + name);
+            };
+        }
+        int slot = resolved.slot();
+        if (slot >= 0) {
+            return (object, locals) -> locals.get(slot);
+        }
+        FieldSite field = resolved.member();
+        if (field == null) {
+            return (object, locals) -> {
+                throw new RuntimeException("Variable not found: " + name);
+            };
+        }
+        //a member - a shape check and the object's slot, the frame is never looked at
+        return (object, locals) -> {
+            int member = object.isPresent() ? field.slotIn(object.get()) : -1;
+            if (member >= 0) {
+                return object.get().get(member);
+            }
+            throw new RuntimeException("Variable not found: " + name);
+        };
+    }
+
+    private CompiledExpression compileNew(NewNode newNode, FrameLayout layout) {
+        Optional<ClassNode> classNodeOpt = interpreter.getClassByName(newNode.className);
+        if (classNodeOpt.isEmpty()) {
+            return (object, locals) -> {
+                throw new RuntimeException("Class not found: " + newNode.className);
+            };
+        }
+        ClassNode classNode = classNodeOpt.get();
+        if (!interpreter.hasConstructor(classNode, newNode.parameters.size())) {
+            return (object, locals) -> interpreter.newObject(classNode, locals, object);
+        }
+        CompiledExpression[] arguments = compileExpressions(newNode.parameters, layout);
+        return (object, locals) -> {
+            ObjectIDT newObject = interpreter.newObject(classNode, locals, object);
+            List<InterpreterDataType> values = evaluateAll(arguments, object, locals);
+            ConstructorNode c = interpreter.constructorFor(newNode, classNode, values)//overloads depend on the values
+                    .orElseThrow(() -> new RuntimeException("No matching constructor found for class: " + classNode.name));
+            interpreter.interpretConstructorCall(newObject, c, values);
+            return newObject;
+        };
+    }
+
+    //and/or in a value (an assignment, an argument) - worked out as a condition, boxed once at the top
+    private CompiledExpression compileBooleanOp(BooleanOpNode booleanOpNode, FrameLayout layout) {
+        if (booleanOpNode.op == null) {
+            CompiledExpression left = compileExpression(booleanOpNode.left, layout);
+            CompiledExpression right = compileExpression(booleanOpNode.right, layout);
+            return (object, locals) -> {
+                left.evaluate(object, locals);
+                right.evaluate(object, locals);
+                throw new RuntimeException("Boolean operation on non-boolean types");
+            };
+        }
+        CompiledCondition condition = compileCondition(booleanOpNode, layout);
+        return (object, locals) -> ValueCache.bool(condition.test(object, locals));
+    }
+
+    private CompiledExpression compileCompare(CompareNode compareNode, FrameLayout layout) {
+        CompiledExpression left = compileExpression(compareNode.left, layout);
+        CompiledExpression right = compileExpression(compareNode.right, layout);
+        switch (compareNode.op) {
+            case eq:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value == rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            case ne:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value != rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            case lt:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value < rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            case gt:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value > rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            case le:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value <= rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            case ge:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.bool(ln.Value >= rn.Value);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+            default:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT && r instanceof NumberIDT) {
+                        throw new RuntimeException("Unsupported comparison operator: " + compareNode.op);
+                    }
+                    throw new RuntimeException("Comparison on non-comparable types");
+                };
+        }
+    }
+
+    private CompiledExpression compileMath(MathOpNode mathOpNode, FrameLayout layout) {
+        CompiledExpression left = compileExpression(mathOpNode.left, layout);
+        CompiledExpression right = compileExpression(mathOpNode.right, layout);
+        switch (mathOpNode.op) {
+            case add:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.number(ln.Value + rn.Value);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+            case subtract:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.number(ln.Value - rn.Value);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+            case multiply:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.number(ln.Value * rn.Value);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+            case divide:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.number(ln.Value / rn.Value);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+            case modulo:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT ln && r instanceof NumberIDT rn) {
+                        return ValueCache.number(ln.Value % rn.Value);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+            default:
+                return (object, locals) -> {
+                    InterpreterDataType l = left.evaluate(object, locals);
+                    InterpreterDataType r = right.evaluate(object, locals);
+                    if (l instanceof NumberIDT && r instanceof NumberIDT) {
+                        throw new RuntimeException("Unsupported math operator: " + mathOpNode.op);
+                    }
+                    throw new RuntimeException("Math operation on non-number types");
+                };
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package Interpreter;
+
+import java.util.Optional;
+
+/**
+ * A condition (if, loop, and/or/not) that ClosureCompiler has already turned into code. It answers with a plain
+ * boolean, and and/or only run their right side when the left side didn't decide it.
+ */
+public interface CompiledCondition {
+    boolean test(Optional<ObjectIDT> object, Frame locals);
+}
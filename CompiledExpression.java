@@ -0,0 +1,11 @@
+package Interpreter;
+
+import java.util.Optional;
+
+/**
+ * An expression that ClosureCompiler has already turned into code - the operator, literal value or variable slot
+ * was picked once, at compile time.
+ */
+public interface CompiledExpression {
+    InterpreterDataType evaluate(Optional<ObjectIDT> object, Frame locals);
+}
@@ -0,0 +1,51 @@
+package Interpreter;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Tran method that BytecodeCompiler turned into a static method on a hidden class.
+ * The method takes the object it runs on and the parameter values as an array, and hands back the return values as an
+ * array; its body works on primitive locals in between.
+ */
+public class CompiledMethod {
+    private final MethodHandle handle;//(ObjectIDT, InterpreterDataType[])InterpreterDataType[], the class's links already bound
+    private final Class<?>[] parameterTypes;
+
+    public CompiledMethod(MethodHandle handle, Class<?>[] parameterTypes) {
+        this.handle = handle;
+        this.parameterTypes = parameterTypes;
+    }
+
+    /**
+     * The compiled code unboxes its parameters straight into primitives, so a value of some other type (a type checked
+     * call site never matches the values against the declaration) has to go to the interpreter instead.
+     */
+    public boolean accepts(List<InterpreterDataType> values) {
+        if (values.size() != parameterTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!parameterTypes[i].isInstance(values.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param object - the object the method runs on, null for a shared method
+     * @param values - the parameter values
+     */
+    public List<InterpreterDataType> invoke(ObjectIDT object, List<InterpreterDataType> values) {
+        try {
+            InterpreterDataType[] results = (InterpreterDataType[]) handle.invokeExact(object, values.toArray(new InterpreterDataType[0]));
+            return Arrays.asList(results);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+}
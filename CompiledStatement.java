@@ -0,0 +1,15 @@
+package Interpreter;
+
+import java.util.Optional;
+
+/**
+ * A statement that ClosureCompiler has already turned into code - no instanceof checks left when it runs.
+ */
+public interface CompiledStatement {
+    /**
+     * @param object - the object we are inside (might be empty for shared)
+     * @param locals - the current local variables
+     * @return false to stop the rest of the enclosing block (an iterator loop that ran out), true otherwise
+     */
+    boolean execute(Optional<ObjectIDT> object, Frame locals);
+}
@@ -0,0 +1,186 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Optimization pass - runs once over a parsed program, before it is handed to the Interpreter.
+ * Folds math, comparisons, boolean operators and "not" whose operands are all literals into a single literal, using
+ * the same float arithmetic the interpreter would, so nothing is recomputed every time the code runs. Then it prunes
+ * what the folded conditions make dead:
+ * an if with a constant condition loses the branch that can never run (an if false with no else goes away);
+ * a loop whose condition is false never runs its body, so it goes away;
+ * a loop whose condition is true never finishes, so the statements after it in its block can never run.
+ * "false and x" and "true or x" fold too, since and/or never evaluate x there. Anything else that could fail or call a
+ * method is not moved or dropped - "x and true" still evaluates x.
+ */
+public class ConstantFolder {
+    private int changes;
+
+    private ConstantFolder() {
+    }
+
+    /**
+     * Fold every method, constructor, accessor and mutator body in the program, in place.
+     *
+     * @return how many expressions were folded and statements pruned
+     */
+    public static int fold(TranNode top) {
+        ConstantFolder folder = new ConstantFolder();
+        for (ClassNode classNode : top.Classes) {
+            for (MethodDeclarationNode m : classNode.methods) {
+                if (!(m instanceof BuiltInMethodDeclarationNode)) {
+                    m.statements = folder.block(m.statements);
+                }
+            }
+            for (ConstructorNode c : classNode.constructors) {
+                c.statements = folder.block(c.statements);
+            }
+            for (MemberNode member : classNode.members) {
+                member.accessor = member.accessor.map(folder::block);
+                member.mutator = member.mutator.map(folder::block);
+            }
+        }
+        return folder.changes;
+    }
+
+    //              Statements
+
+    private List<StatementNode> block(List<StatementNode> statements) {
+        List<StatementNode> result = new ArrayList<>(statements.size());
+        for (int i = 0; i < statements.size(); i++) {
+            StatementNode statement = statements.get(i);
+            if (statement instanceof IfNode ifNode) {
+                ifNode.condition = expression(ifNode.condition);
+                ifNode.statements = block(ifNode.statements);
+                ifNode.elseStatement.ifPresent(elseNode -> elseNode.statements = block(elseNode.statements));
+                if (ifNode.condition instanceof BooleanLiteralNode condition) {
+                    statement = prune(ifNode, condition.value);
+                }
+            } else if (statement instanceof LoopNode loopNode) {
+                loopNode.expression = expression(loopNode.expression);
+                loopNode.statements = block(loopNode.statements);
+                if (loopNode.expression instanceof BooleanLiteralNode condition) {
+                    if (!condition.value) {
+                        changes++;
+                        continue;
+                    }
+                    result.add(loopNode);
+                    changes += statements.size() - i - 1;//nothing after a loop that never ends can run
+                    break;
+                }
+            } else if (statement instanceof AssignmentNode assignmentNode) {
+                assignmentNode.expression = expression(assignmentNode.expression);
+            } else if (statement instanceof MethodCallStatementNode methodCall) {
+                expressions(methodCall.parameters);
+            }
+            if (statement != null) {
+                result.add(statement);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Keep only the branch a constant condition picks. It stays an if (on a true literal) rather than being spliced
+     * into the block, so it runs exactly as it would have.
+     *
+     * @return the pruned if, or null when no branch is left
+     */
+    private StatementNode prune(IfNode ifNode, boolean condition) {
+        if (condition) {
+            if (ifNode.elseStatement.isPresent()) {
+                changes++;
+                ifNode.elseStatement = Optional.empty();
+            }
+            return ifNode;
+        }
+        changes++;
+        if (ifNode.elseStatement.isEmpty()) {
+            return null;
+        }
+        IfNode taken = new IfNode();
+        taken.condition = new BooleanLiteralNode(true);
+        taken.statements = ifNode.elseStatement.get().statements;
+        taken.elseStatement = Optional.empty();
+        return taken;
+    }
+
+    //              Expressions
+
+    private void expressions(List<ExpressionNode> expressions) {
+        if (expressions != null) {
+            expressions.replaceAll(this::expression);
+        }
+    }
+
+    //the expression with its literal-only parts folded - the same node if there was nothing to fold
+    private ExpressionNode expression(ExpressionNode expression) {
+        if (expression instanceof MathOpNode mathOpNode) {
+            mathOpNode.left = expression(mathOpNode.left);
+            mathOpNode.right = expression(mathOpNode.right);
+            if (mathOpNode.op != null && mathOpNode.left instanceof NumericLiteralNode l
+                    && mathOpNode.right instanceof NumericLiteralNode r) {
+                return number(switch (mathOpNode.op) {
+                    case add -> l.value + r.value;
+                    case subtract -> l.value - r.value;
+                    case multiply -> l.value * r.value;
+                    case divide -> l.value / r.value;
+                    case modulo -> l.value % r.value;
+                });
+            }
+        } else if (expression instanceof CompareNode compareNode) {
+            compareNode.left = expression(compareNode.left);
+            compareNode.right = expression(compareNode.right);
+            if (compareNode.op != null && compareNode.left instanceof NumericLiteralNode l
+                    && compareNode.right instanceof NumericLiteralNode r) {
+                return bool(switch (compareNode.op) {
+                    case eq -> l.value == r.value;
+                    case ne -> l.value != r.value;
+                    case lt -> l.value < r.value;
+                    case le -> l.value <= r.value;
+                    case gt -> l.value > r.value;
+                    case ge -> l.value >= r.value;
+                });
+            }
+        } else if (expression instanceof BooleanOpNode booleanOpNode) {
+            booleanOpNode.left = expression(booleanOpNode.left);
+            booleanOpNode.right = expression(booleanOpNode.right);
+            if (booleanOpNode.op != null && booleanOpNode.left instanceof BooleanLiteralNode l) {
+                //the left side alone decides it - the right side would never be evaluated
+                boolean decidedBy = booleanOpNode.op == BooleanOpNode.BooleanOperations.or;
+                if (l.value == decidedBy) {
+                    return bool(decidedBy);
+                }
+                if (booleanOpNode.right instanceof BooleanLiteralNode r) {
+                    return bool(r.value);
+                }
+            }
+        } else if (expression instanceof NotOpNode notOpNode) {
+            notOpNode.left = expression(notOpNode.left);
+            if (notOpNode.left instanceof BooleanLiteralNode operand) {
+                return bool(!operand.value);
+            }
+        } else if (expression instanceof MethodCallExpressionNode methodCall) {
+            expressions(methodCall.parameters);
+        } else if (expression instanceof NewNode newNode) {
+            expressions(newNode.parameters);
+        }
+        return expression;
+    }
+
+    private NumericLiteralNode number(float value) {
+        changes++;
+        NumericLiteralNode literal = new NumericLiteralNode();
+        literal.value = value;
+        return literal;
+    }
+
+    private BooleanLiteralNode bool(boolean value) {
+        changes++;
+        return new BooleanLiteralNode(value);
+    }
+}
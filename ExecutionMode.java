@@ -0,0 +1,24 @@
+package Interpreter;
+
+/**
+ * How the interpreter stores and runs a method's variables.
+ * NAMED_LOCALS keeps every local in a name keyed map (the original behavior, handy for debugging).
+ * SLOT_FRAMES gives every parameter, return and local a fixed slot in an array backed frame.
+ * CLOSURE_COMPILED uses slot frames too, but compiles each method body once (ClosureCompiler) into a tree of
+ * small executor objects instead of walking the AST with instanceof chains every time it runs.
+ * BYTECODE runs like SLOT_FRAMES, except that every method BytecodeCompiler can handle runs as JVM bytecode on primitive
+ * locals (one hidden class per Tran class); members and calls to other methods go back through the interpreter.
+ * REGISTER_VM uses slot frames too, but lowers each method body once (RegisterCompiler) to a flat array of register
+ * instructions with explicit jumps, and runs that in a single dispatch loop (RegisterMachine).
+ */
+public enum ExecutionMode {
+    NAMED_LOCALS,
+    SLOT_FRAMES,
+    CLOSURE_COMPILED,
+    BYTECODE,
+    REGISTER_VM;
+
+    public boolean usesSlots() {
+        return this != NAMED_LOCALS;
+    }
+}
@@ -0,0 +1,24 @@
+package Interpreter;
+
+/**
+ * Inline cache for one member access in compiled code: remembers which slot the member was in for the last shape
+ * seen there, so the next access to an object of the same class skips the name lookup.
+ */
+public class FieldSite {
+    private final String name;
+    private Shape shape;
+    private int slot = -1;
+
+    public FieldSite(String name) {
+        this.name = name;
+    }
+
+    //the member's slot in this object, -1 if it has no member by that name
+    public int slotIn(ObjectIDT object) {
+        if (object.shape != shape) {
+            shape = object.shape;
+            slot = shape.slotOf(name);
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,604 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A whole program with no object per node. Every node is an index into parallel arrays - its kind, one value
+ * (a name, a literal or an operator), one extra int, and where its children start in a shared index array.
+ * Children of one node sit next to each other, so walking a method body reads memory in order.
+ * <p>
+ * Node 0 is the program. Classes can be added one at a time, so a big program never has to be a full object tree
+ * all at once - FrontEnd.parseAllFlat() adds each file's classes as it goes, and ClassTable.check() reads the result
+ * as it is. toTran() builds the object tree again for code that wants one.
+ * <p>
+ * What each kind keeps (value / extra / children):
+ * <pre>
+ * PROGRAM          -              / -                 / interfaces and classes
+ * INTERFACE        name           / -                 / HEADERs
+ * HEADER           name           / -                 / PARAMETERs, RETURNs
+ * CLASS            name           / -                 / IMPLEMENTS, MEMBERs, CONSTRUCTORs, METHODs
+ * IMPLEMENTS       interface name / -                 / -
+ * MEMBER           name           / type              / ACCESSOR block?, MUTATOR block?
+ * CONSTRUCTOR      -              / -                 / PARAMETERs, LOCALs, statements
+ * METHOD           name           / SHARED|PRIVATE    / PARAMETERs, RETURNs, LOCALs, statements
+ * PARAMETER, RETURN, LOCAL  name  / type              / -
+ * ACCESSOR, MUTATOR, BLOCK, ELSE, ARGUMENTS, TARGETS  - / - / what they hold
+ * ASSIGNMENT       -              / -                 / target, expression
+ * IF               -              / -                 / condition, BLOCK, ELSE?
+ * LOOP             -              / 1 if it assigns   / variable?, expression, BLOCK
+ * CALL_STATEMENT   method name    / object name or -1 / TARGETS, ARGUMENTS
+ * CALL             method name    / object name or -1 / ARGUMENTS
+ * NEW              class name     / -                 / ARGUMENTS
+ * VARIABLE         name           / -                 / -
+ * NUMBER           float bits     / -                 / -
+ * STRING           string         / -                 / -
+ * CHARACTER        the char       / -                 / -
+ * BOOLEAN          1 or 0         / -                 / -
+ * MATH, COMPARE, BOOLEAN_OP  operator ordinal / -     / left, right
+ * NOT              -              / -                 / operand
+ * </pre>
+ * Strings are stored once each; value and extra hold their number.
+ */
+public class FlatAst {
+    public enum Kind {
+        PROGRAM, INTERFACE, HEADER, CLASS, IMPLEMENTS, MEMBER, CONSTRUCTOR, METHOD,
+        PARAMETER, RETURN, LOCAL,
+        ACCESSOR, MUTATOR, BLOCK, ELSE, ARGUMENTS, TARGETS,
+        ASSIGNMENT, IF, LOOP, CALL_STATEMENT,
+        CALL, NEW, VARIABLE, NUMBER, STRING, CHARACTER, BOOLEAN, MATH, COMPARE, BOOLEAN_OP, NOT
+    }
+
+    public static final int SHARED = 1, PRIVATE = 2;
+    private static final Kind[] KINDS = Kind.values();
+
+    private byte[] kinds = new byte[64];
+    private int[] values = new int[64];
+    private int[] extras = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] childCounts = new int[64];
+    private int size;
+    private int[] children = new int[64];
+    private int childrenSize;
+    private final List<String> strings = new ArrayList<>();
+    private final HashMap<String, Integer> stringIndex = new HashMap<>();
+    private final IntList programChildren = new IntList();//node 0's children are only known once every class is in
+
+    public FlatAst() {
+        node(Kind.PROGRAM, 0, 0);
+    }
+
+    public static FlatAst of(TranNode tran) {
+        FlatAst ast = new FlatAst();
+        for (InterfaceNode interfaceNode : tran.Interfaces) {
+            ast.add(interfaceNode);
+        }
+        for (ClassNode classNode : tran.Classes) {
+            ast.add(classNode);
+        }
+        return ast;
+    }
+
+    //              Reading
+
+    public int root() {
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    public int extra(int node) {
+        return extras[node];
+    }
+
+    //the string in value - a name, a type or a string literal
+    public String name(int node) {
+        return string(values[node]);
+    }
+
+    //the string in extra - a type, or the object a call is made on (null if none)
+    public String extraName(int node) {
+        return extras[node] < 0 ? null : string(extras[node]);
+    }
+
+    public float number(int node) {
+        return Float.intBitsToFloat(values[node]);
+    }
+
+    public int childCount(int node) {
+        return node == 0 ? programChildren.size : childCounts[node];
+    }
+
+    public int child(int node, int i) {
+        return node == 0 ? programChildren.items[i] : children[firstChild[node] + i];
+    }
+
+    //the first child of this kind, -1 if there isn't one
+    public int childOfKind(int node, Kind kind) {
+        for (int i = 0; i < childCount(node); i++) {
+            if (kind(child(node, i)) == kind) {
+                return child(node, i);
+            }
+        }
+        return -1;
+    }
+
+    public String string(int index) {
+        return strings.get(index);
+    }
+
+    /**
+     * Walks the nodes depth first. enter returns false to skip a node's children.
+     */
+    public interface Visitor {
+        boolean enter(FlatAst ast, int node);
+
+        default void leave(FlatAst ast, int node) {
+        }
+    }
+
+    public void walk(int node, Visitor visitor) {
+        if (visitor.enter(this, node)) {
+            for (int i = 0; i < childCount(node); i++) {
+                walk(child(node, i), visitor);
+            }
+        }
+        visitor.leave(this, node);
+    }
+
+    //              Building
+
+    public void add(InterfaceNode interfaceNode) {
+        IntList headers = new IntList();
+        for (MethodHeaderNode header : interfaceNode.methods) {
+            IntList parts = new IntList();
+            declarations(parts, Kind.PARAMETER, header.parameters);
+            declarations(parts, Kind.RETURN, header.returns);
+            headers.add(parent(Kind.HEADER, string(header.name), 0, parts));
+        }
+        programChildren.add(parent(Kind.INTERFACE, string(interfaceNode.name), 0, headers));
+    }
+
+    public void add(ClassNode classNode) {
+        IntList parts = new IntList();
+        for (String name : classNode.interfaces) {
+            parts.add(node(Kind.IMPLEMENTS, string(name), 0));
+        }
+        for (MemberNode member : classNode.members) {
+            IntList blocks = new IntList();
+            if (member.accessor != null && member.accessor.isPresent()) {
+                blocks.add(block(Kind.ACCESSOR, member.accessor.get()));
+            }
+            if (member.mutator != null && member.mutator.isPresent()) {
+                blocks.add(block(Kind.MUTATOR, member.mutator.get()));
+            }
+            parts.add(parent(Kind.MEMBER, string(member.declaration.name), string(member.declaration.type), blocks));
+        }
+        for (ConstructorNode constructor : classNode.constructors) {
+            IntList body = new IntList();
+            declarations(body, Kind.PARAMETER, constructor.parameters);
+            declarations(body, Kind.LOCAL, constructor.locals);
+            statements(body, constructor.statements);
+            parts.add(parent(Kind.CONSTRUCTOR, 0, 0, body));
+        }
+        for (MethodDeclarationNode method : classNode.methods) {
+            IntList body = new IntList();
+            declarations(body, Kind.PARAMETER, method.parameters);
+            declarations(body, Kind.RETURN, method.returns);
+            declarations(body, Kind.LOCAL, method.locals);
+            statements(body, method.statements);
+            int flags = (method.isShared ? SHARED : 0) | (method.isPrivate ? PRIVATE : 0);
+            parts.add(parent(Kind.METHOD, string(method.name), flags, body));
+        }
+        programChildren.add(parent(Kind.CLASS, string(classNode.name), 0, parts));
+    }
+
+    private void declarations(IntList into, Kind kind, List<VariableDeclarationNode> declarations) {
+        if (declarations != null) {
+            for (VariableDeclarationNode declaration : declarations) {
+                into.add(node(kind, string(declaration.name), string(declaration.type)));
+            }
+        }
+    }
+
+    private int block(Kind kind, List<StatementNode> statements) {
+        IntList body = new IntList();
+        statements(body, statements);
+        return parent(kind, 0, 0, body);
+    }
+
+    private void statements(IntList into, List<StatementNode> statements) {
+        if (statements != null) {
+            for (StatementNode statement : statements) {
+                into.add(statement(statement));
+            }
+        }
+    }
+
+    private int statement(StatementNode statement) {
+        IntList parts = new IntList();
+        if (statement instanceof AssignmentNode assignment) {
+            parts.add(expression(assignment.target));
+            parts.add(expression(assignment.expression));
+            return parent(Kind.ASSIGNMENT, 0, 0, parts);
+        }
+        if (statement instanceof IfNode ifNode) {
+            parts.add(expression(ifNode.condition));
+            parts.add(block(Kind.BLOCK, ifNode.statements));
+            if (ifNode.elseStatement != null && ifNode.elseStatement.isPresent()) {
+                parts.add(block(Kind.ELSE, ifNode.elseStatement.get().statements));
+            }
+            return parent(Kind.IF, 0, 0, parts);
+        }
+        if (statement instanceof LoopNode loop) {
+            boolean assigns = loop.assignment != null && loop.assignment.isPresent();
+            if (assigns) {
+                parts.add(expression(loop.assignment.get()));
+            }
+            parts.add(expression(loop.expression));
+            parts.add(block(Kind.BLOCK, loop.statements));
+            return parent(Kind.LOOP, 0, assigns ? 1 : 0, parts);
+        }
+        if (statement instanceof MethodCallStatementNode call) {
+            IntList targets = new IntList();
+            if (call.returnValues != null) {
+                for (VariableReferenceNode target : call.returnValues) {
+                    targets.add(expression(target));
+                }
+            }
+            parts.add(parent(Kind.TARGETS, 0, 0, targets));
+            parts.add(arguments(call.parameters));
+            return parent(Kind.CALL_STATEMENT, string(call.methodName), objectName(call.objectName), parts);
+        }
+        throw new IllegalArgumentException("Can't flatten " + statement);
+    }
+
+    private int arguments(List<ExpressionNode> arguments) {
+        IntList parts = new IntList();
+        if (arguments != null) {
+            for (ExpressionNode argument : arguments) {
+                parts.add(expression(argument));
+            }
+        }
+        return parent(Kind.ARGUMENTS, 0, 0, parts);
+    }
+
+    private int expression(Node expression) {
+        if (expression instanceof VariableReferenceNode reference) {
+            return node(Kind.VARIABLE, string(reference.name), 0);
+        }
+        if (expression instanceof NumericLiteralNode number) {
+            return node(Kind.NUMBER, Float.floatToRawIntBits(number.value), 0);
+        }
+        if (expression instanceof StringLiteralNode string) {
+            return node(Kind.STRING, string(string.value), 0);
+        }
+        if (expression instanceof CharLiteralNode character) {
+            return node(Kind.CHARACTER, character.value, 0);
+        }
+        if (expression instanceof BooleanLiteralNode bool) {
+            return node(Kind.BOOLEAN, bool.value ? 1 : 0, 0);
+        }
+        if (expression instanceof MathOpNode math) {
+            return binary(Kind.MATH, math.op == null ? -1 : math.op.ordinal(), math.left, math.right);
+        }
+        if (expression instanceof CompareNode compare) {
+            return binary(Kind.COMPARE, compare.op == null ? -1 : compare.op.ordinal(), compare.left, compare.right);
+        }
+        if (expression instanceof BooleanOpNode bool) {
+            return binary(Kind.BOOLEAN_OP, bool.op == null ? -1 : bool.op.ordinal(), bool.left, bool.right);
+        }
+        if (expression instanceof NotOpNode not) {
+            IntList operand = new IntList();
+            operand.add(expression(not.left));
+            return parent(Kind.NOT, 0, 0, operand);
+        }
+        if (expression instanceof MethodCallExpressionNode call) {
+            IntList parts = new IntList();
+            parts.add(arguments(call.parameters));
+            return parent(Kind.CALL, string(call.methodName), objectName(call.objectName), parts);
+        }
+        if (expression instanceof NewNode newNode) {
+            IntList parts = new IntList();
+            parts.add(arguments(newNode.parameters));
+            return parent(Kind.NEW, string(newNode.className), 0, parts);
+        }
+        throw new IllegalArgumentException("Can't flatten " + expression);
+    }
+
+    private int binary(Kind kind, int op, ExpressionNode left, ExpressionNode right) {
+        IntList parts = new IntList();
+        parts.add(expression(left));
+        parts.add(expression(right));
+        return parent(kind, op, 0, parts);
+    }
+
+    private int objectName(Optional<String> objectName) {
+        return objectName != null && objectName.isPresent() ? string(objectName.get()) : -1;
+    }
+
+    private int string(String value) {
+        return stringIndex.computeIfAbsent(value, v -> {
+            strings.add(v);
+            return strings.size() - 1;
+        });
+    }
+
+    //a node whose children have all been made already - they are copied next to each other
+    private int parent(Kind kind, int value, int extra, IntList nodeChildren) {
+        int node = node(kind, value, extra);
+        if (childrenSize + nodeChildren.size > children.length) {
+            children = Arrays.copyOf(children, Math.max(children.length * 2, childrenSize + nodeChildren.size));
+        }
+        System.arraycopy(nodeChildren.items, 0, children, childrenSize, nodeChildren.size);
+        firstChild[node] = childrenSize;
+        childCounts[node] = nodeChildren.size;
+        childrenSize += nodeChildren.size;
+        return node;
+    }
+
+    private int node(Kind kind, int value, int extra) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            extras = Arrays.copyOf(extras, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCounts = Arrays.copyOf(childCounts, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        values[size] = value;
+        extras[size] = extra;
+        return size++;
+    }
+
+    private static class IntList {
+        private int[] items = new int[4];
+        private int size;
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+    }
+
+    //              Back to objects
+
+    public TranNode toTran() {
+        TranNode tran = new TranNode();
+        for (int i = 0; i < childCount(0); i++) {
+            int node = child(0, i);
+            if (kind(node) == Kind.INTERFACE) {
+                tran.Interfaces.add(toInterface(node));
+            } else {
+                tran.Classes.add(toClass(node));
+            }
+        }
+        return tran;
+    }
+
+    private InterfaceNode toInterface(int node) {
+        InterfaceNode interfaceNode = new InterfaceNode();
+        interfaceNode.name = name(node);
+        for (int i = 0; i < childCount(node); i++) {
+            int header = child(node, i);
+            MethodHeaderNode headerNode = new MethodHeaderNode();
+            headerNode.name = name(header);
+            headerNode.parameters = toDeclarations(header, Kind.PARAMETER);
+            headerNode.returns = toDeclarations(header, Kind.RETURN);
+            interfaceNode.methods.add(headerNode);
+        }
+        return interfaceNode;
+    }
+
+    private ClassNode toClass(int node) {
+        ClassNode classNode = new ClassNode();
+        classNode.name = name(node);
+        for (int i = 0; i < childCount(node); i++) {
+            int part = child(node, i);
+            switch (kind(part)) {
+                case IMPLEMENTS -> classNode.interfaces.add(name(part));
+                case MEMBER -> {
+                    MemberNode member = new MemberNode();
+                    member.declaration = toDeclaration(part);
+                    int accessor = childOfKind(part, Kind.ACCESSOR);
+                    int mutator = childOfKind(part, Kind.MUTATOR);
+                    member.accessor = accessor < 0 ? Optional.empty() : Optional.of(toStatements(accessor, 0));
+                    member.mutator = mutator < 0 ? Optional.empty() : Optional.of(toStatements(mutator, 0));
+                    classNode.members.add(member);
+                }
+                case CONSTRUCTOR -> {
+                    ConstructorNode constructor = new ConstructorNode();
+                    constructor.parameters = toDeclarations(part, Kind.PARAMETER);
+                    constructor.locals = toDeclarations(part, Kind.LOCAL);
+                    constructor.statements = toStatements(part, 0);
+                    classNode.constructors.add(constructor);
+                }
+                case METHOD -> {
+                    MethodDeclarationNode method = new MethodDeclarationNode();
+                    method.name = name(part);
+                    method.isShared = (extra(part) & SHARED) != 0;
+                    method.isPrivate = (extra(part) & PRIVATE) != 0;
+                    method.parameters = toDeclarations(part, Kind.PARAMETER);
+                    method.returns = toDeclarations(part, Kind.RETURN);
+                    method.locals = toDeclarations(part, Kind.LOCAL);
+                    method.statements = toStatements(part, 0);
+                    classNode.methods.add(method);
+                }
+                default -> throw new IllegalStateException("Unexpected " + kind(part) + " in a class");
+            }
+        }
+        return classNode;
+    }
+
+    private List<VariableDeclarationNode> toDeclarations(int node, Kind kind) {
+        List<VariableDeclarationNode> declarations = new ArrayList<>();
+        for (int i = 0; i < childCount(node); i++) {
+            if (kind(child(node, i)) == kind) {
+                declarations.add(toDeclaration(child(node, i)));
+            }
+        }
+        return declarations;
+    }
+
+    private VariableDeclarationNode toDeclaration(int node) {
+        VariableDeclarationNode declaration = new VariableDeclarationNode();
+        declaration.name = name(node);
+        declaration.type = extraName(node);
+        return declaration;
+    }
+
+    //the children that are statements (skipping declarations), starting at child from
+    private List<StatementNode> toStatements(int node, int from) {
+        List<StatementNode> statements = new ArrayList<>();
+        for (int i = from; i < childCount(node); i++) {
+            int child = child(node, i);
+            switch (kind(child)) {
+                case ASSIGNMENT, IF, LOOP, CALL_STATEMENT -> statements.add(toStatement(child));
+                default -> {
+                }
+            }
+        }
+        return statements;
+    }
+
+    private StatementNode toStatement(int node) {
+        switch (kind(node)) {
+            case ASSIGNMENT -> {
+                AssignmentNode assignment = new AssignmentNode();
+                assignment.target = (VariableReferenceNode) toExpression(child(node, 0));
+                assignment.expression = toExpression(child(node, 1));
+                return assignment;
+            }
+            case IF -> {
+                IfNode ifNode = new IfNode();
+                ifNode.condition = toExpression(child(node, 0));
+                ifNode.statements = toStatements(child(node, 1), 0);
+                int elseNode = childOfKind(node, Kind.ELSE);
+                if (elseNode < 0) {
+                    ifNode.elseStatement = Optional.empty();
+                } else {
+                    ElseNode otherwise = new ElseNode();
+                    otherwise.statements = toStatements(elseNode, 0);
+                    ifNode.elseStatement = Optional.of(otherwise);
+                }
+                return ifNode;
+            }
+            case LOOP -> {
+                LoopNode loop = new LoopNode();
+                int next = 0;
+                loop.assignment = extra(node) == 1
+                        ? Optional.of((VariableReferenceNode) toExpression(child(node, next++)))
+                        : Optional.empty();
+                loop.expression = toExpression(child(node, next++));
+                loop.statements = toStatements(child(node, next), 0);
+                return loop;
+            }
+            case CALL_STATEMENT -> {
+                MethodCallStatementNode call = new MethodCallStatementNode();
+                call.methodName = name(node);
+                call.objectName = Optional.ofNullable(extraName(node));
+                int targets = child(node, 0);
+                for (int i = 0; i < childCount(targets); i++) {
+                    call.returnValues.add((VariableReferenceNode) toExpression(child(targets, i)));
+                }
+                call.parameters = toArguments(child(node, 1));
+                return call;
+            }
+        }
+        throw new IllegalStateException(kind(node) + " is not a statement");
+    }
+
+    private List<ExpressionNode> toArguments(int node) {
+        List<ExpressionNode> arguments = new ArrayList<>();
+        for (int i = 0; i < childCount(node); i++) {
+            arguments.add(toExpression(child(node, i)));
+        }
+        return arguments;
+    }
+
+    private ExpressionNode toExpression(int node) {
+        switch (kind(node)) {
+            case VARIABLE -> {
+                VariableReferenceNode reference = new VariableReferenceNode();
+                reference.name = name(node);
+                return reference;
+            }
+            case NUMBER -> {
+                NumericLiteralNode number = new NumericLiteralNode();
+                number.value = number(node);
+                return number;
+            }
+            case STRING -> {
+                StringLiteralNode string = new StringLiteralNode();
+                string.value = name(node);
+                return string;
+            }
+            case CHARACTER -> {
+                CharLiteralNode character = new CharLiteralNode();
+                character.value = (char) value(node);
+                return character;
+            }
+            case BOOLEAN -> {
+                return new BooleanLiteralNode(value(node) == 1);
+            }
+            case MATH -> {
+                MathOpNode math = new MathOpNode();
+                math.op = value(node) < 0 ? null : MathOpNode.MathOperations.values()[value(node)];
+                math.left = toExpression(child(node, 0));
+                math.right = toExpression(child(node, 1));
+                return math;
+            }
+            case COMPARE -> {
+                CompareNode compare = new CompareNode();
+                compare.op = value(node) < 0 ? null : CompareNode.CompareOperations.values()[value(node)];
+                compare.left = toExpression(child(node, 0));
+                compare.right = toExpression(child(node, 1));
+                return compare;
+            }
+            case BOOLEAN_OP -> {
+                BooleanOpNode bool = new BooleanOpNode();
+                bool.op = value(node) < 0 ? null : BooleanOpNode.BooleanOperations.values()[value(node)];
+                bool.left = toExpression(child(node, 0));
+                bool.right = toExpression(child(node, 1));
+                return bool;
+            }
+            case NOT -> {
+                NotOpNode not = new NotOpNode();
+                not.left = toExpression(child(node, 0));
+                return not;
+            }
+            case CALL -> {
+                MethodCallExpressionNode call = new MethodCallExpressionNode();
+                call.methodName = name(node);
+                call.objectName = Optional.ofNullable(extraName(node));
+                call.parameters = toArguments(child(node, 0));
+                return call;
+            }
+            case NEW -> {
+                NewNode newNode = new NewNode();
+                newNode.className = name(node);
+                newNode.parameters = toArguments(child(node, 0));
+                return newNode;
+            }
+        }
+        throw new IllegalStateException(kind(node) + " is not an expression");
+    }
+}
@@ -0,0 +1,113 @@
+package Interpreter;
+
+import AST.VariableReferenceNode;
+
+import java.util.HashMap;
+
+/**
+ * The local variables for one running method or constructor.
+ * Declared variables live in an array, indexed by the slots from the method's FrameLayout.
+ * Anything that was never declared (or everything, in NAMED_LOCALS mode) goes in a name keyed overflow map
+ * that is only allocated when something actually needs it.
+ */
+public class Frame {
+    private final FrameLayout layout;
+    private final InterpreterDataType[] slots;
+    private HashMap<String, InterpreterDataType> overflow;
+
+    public Frame(FrameLayout layout) {
+        this(layout, layout.size());
+    }
+
+    /**
+     * A frame with room for registers values - the layout's slots first, then scratch space (REGISTER_VM temporaries).
+     */
+    public Frame(FrameLayout layout, int registers) {
+        this.layout = layout;
+        this.slots = new InterpreterDataType[Math.max(registers, layout.size())];
+    }
+
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    public InterpreterDataType get(int slot) {
+        return slots[slot];
+    }
+
+    public void set(int slot, InterpreterDataType value) {
+        slots[slot] = value;
+    }
+
+    //the slots themselves, for RegisterMachine's dispatch loop
+    InterpreterDataType[] registers() {
+        return slots;
+    }
+
+    public void putParameter(int index, String name, InterpreterDataType value) {
+        int slot = layout.parameterSlot(index);
+        if (slot >= 0) {
+            slots[slot] = value;
+        } else {
+            put(name, value);
+        }
+    }
+
+    public boolean containsReturn(int index, String name) {
+        return layout.returnSlot(index) >= 0 || containsKey(name);
+    }
+
+    public InterpreterDataType getReturn(int index, String name) {
+        int slot = layout.returnSlot(index);
+        return slot >= 0 ? slots[slot] : get(name);
+    }
+
+    //              by reference - the slot was resolved ahead of time
+
+    public boolean containsKey(VariableReferenceNode reference) {
+        return layout.slotOf(reference) >= 0 || containsKey(reference.name);
+    }
+
+    public InterpreterDataType get(VariableReferenceNode reference) {
+        int slot = layout.slotOf(reference);
+        return slot >= 0 ? slots[slot] : get(reference.name);
+    }
+
+    public void put(VariableReferenceNode reference, InterpreterDataType value) {
+        int slot = layout.slotOf(reference);
+        if (slot >= 0) {
+            slots[slot] = value;
+        } else {
+            put(reference.name, value);
+        }
+    }
+
+    //              by name - same contract as the HashMap this replaces
+
+    public boolean containsKey(String name) {
+        if (layout.slotOf(name) >= 0) {
+            return true;
+        }
+        return overflow != null && overflow.containsKey(name);
+    }
+
+    public InterpreterDataType get(String name) {
+        int slot = layout.slotOf(name);
+        if (slot >= 0) {
+            return slots[slot];
+        }
+        return overflow == null ? null : overflow.get(name);
+    }
+
+    public void put(String name, InterpreterDataType value) {
+        int slot = layout.slotOf(name);
+        if (slot >= 0) {
+            slots[slot] = value;
+            return;
+        }
+        if (overflow == null) {
+            overflow = new HashMap<>();
+        }
+        overflow.put(name, value);
+    }
+}
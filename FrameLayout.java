@@ -0,0 +1,78 @@
+package Interpreter;
+
+import AST.VariableReferenceNode;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * The fixed slot assignment for one method or constructor body, built once by SlotResolver.
+ * Parameters come first, then return values, then locals. Every VariableReferenceNode in the body
+ * is resolved ahead of time to its slot (or -1 if it is not a local, i.e. a member), and a member reference gets its
+ * own FieldSite.
+ */
+public class FrameLayout {
+    //used in NAMED_LOCALS mode - nothing has a slot, everything goes by name
+    public static final FrameLayout EMPTY = new FrameLayout(new String[0], new int[0], new int[0], new HashMap<>(), new IdentityHashMap<>());
+
+    /**
+     * What one reference in the body was resolved to: its local slot (-1 for none) and the inline cache for reading
+     * or writing it as a member of the current object (null if the class has no member by that name).
+     */
+    public record Reference(int slot, FieldSite member) {
+    }
+
+    private final String[] names;
+    private final int[] parameterSlots;
+    private final int[] returnSlots;
+    private final HashMap<String, Integer> slotByName;
+    private final IdentityHashMap<VariableReferenceNode, Reference> slotByReference;
+
+    FrameLayout(String[] names, int[] parameterSlots, int[] returnSlots,
+                HashMap<String, Integer> slotByName, IdentityHashMap<VariableReferenceNode, Reference> slotByReference) {
+        this.names = names;
+        this.parameterSlots = parameterSlots;
+        this.returnSlots = returnSlots;
+        this.slotByName = slotByName;
+        this.slotByReference = slotByReference;
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String nameOf(int slot) {
+        return names[slot];
+    }
+
+    //slot of the i'th parameter, -1 if this layout has no slots
+    public int parameterSlot(int index) {
+        return index < parameterSlots.length ? parameterSlots[index] : -1;
+    }
+
+    //slot of the i'th return value, -1 if this layout has no slots
+    public int returnSlot(int index) {
+        return index < returnSlots.length ? returnSlots[index] : -1;
+    }
+
+    //slow path, only used when we have a name and no node (NAMED_LOCALS mode)
+    public int slotOf(String name) {
+        Integer slot = slotByName.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    //fast path, resolved by SlotResolver - no string hashing
+    public int slotOf(VariableReferenceNode reference) {
+        Reference resolved = slotByReference.get(reference);
+        if (resolved != null) {
+            return resolved.slot();
+        }
+        //a node we did not see during resolution (built by the interpreter itself)
+        return reference.name == null ? -1 : slotOf(reference.name);
+    }
+
+    //slot and member cache together, null for a node we did not see during resolution (and in NAMED_LOCALS mode)
+    public Reference reference(VariableReferenceNode reference) {
+        return slotByReference.get(reference);
+    }
+}
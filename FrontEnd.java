@@ -0,0 +1,126 @@
+import AST.ClassNode;
+import AST.InterfaceNode;
+import AST.TranNode;
+import Interpreter.FlatAst;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Lexes and parses many source files at once, one fork-join task per file, each into its own TranNode.
+ * The fragments are then merged in the order the files were given, so the result doesn't depend on which task
+ * finished first. parseAllFlat() merges them into a FlatAst instead, a class at a time, and only keeps a few files'
+ * worth of node objects alive at once.
+ */
+public class FrontEnd {
+    private final ForkJoinPool pool;
+    private final AstCache cache;//null to always lex and parse
+
+    public FrontEnd() {
+        this(ForkJoinPool.commonPool(), null);
+    }
+
+    public FrontEnd(ForkJoinPool pool, AstCache cache) {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    /**
+     * Something wrong with one file. line and column are -1 when the problem isn't tied to a place in the file.
+     */
+    public record SourceError(Path file, int line, int column, String message) {
+        @Override
+        public String toString() {
+            return file + (line < 0 ? "" : ":" + line + ":" + column) + ": " + message;
+        }
+    }
+
+    /**
+     * The merged program, and every error from every file. The program only has the files that parsed.
+     */
+    public record Result(TranNode program, List<SourceError> errors) {
+        public boolean succeeded() {
+            return errors.isEmpty();
+        }
+    }
+
+    /**
+     * The merged program as a FlatAst, and every error from every file.
+     */
+    public record FlatResult(FlatAst program, List<SourceError> errors) {
+        public boolean succeeded() {
+            return errors.isEmpty();
+        }
+    }
+
+    //one file's worth - either a fragment or an error
+    private record Fragment(TranNode tran, SourceError error) {
+    }
+
+    public Result parseAll(List<Path> files) {
+        TranNode program = new TranNode();
+        List<SourceError> errors = new ArrayList<>();
+        parseInOrder(files, files.size(), errors, fragment -> {
+            program.Interfaces.addAll(fragment.Interfaces);
+            program.Classes.addAll(fragment.Classes);
+        });
+        return new Result(program, errors);
+    }
+
+    /**
+     * Like parseAll(), but each file's classes go into one FlatAst as soon as it is that file's turn, and its objects
+     * are dropped. Only about one file per pool thread is parsed ahead, so for a big program the object trees that are
+     * alive at once stay a few files' worth.
+     */
+    public FlatResult parseAllFlat(List<Path> files) {
+        FlatAst program = new FlatAst();
+        List<SourceError> errors = new ArrayList<>();
+        parseInOrder(files, pool.getParallelism() + 1, errors, fragment -> {
+            for (InterfaceNode interfaceNode : fragment.Interfaces) {
+                program.add(interfaceNode);
+            }
+            for (ClassNode classNode : fragment.Classes) {
+                program.add(classNode);
+            }
+        });
+        return new FlatResult(program, errors);
+    }
+
+    //hands every file's fragment to into in the order the files were given, with at most ahead files in flight
+    private void parseInOrder(List<Path> files, int ahead, List<SourceError> errors, Consumer<TranNode> into) {
+        ArrayDeque<ForkJoinTask<Fragment>> tasks = new ArrayDeque<>();
+        int next = 0;
+        while (next < files.size() || !tasks.isEmpty()) {
+            while (next < files.size() && tasks.size() < Math.max(ahead, 1)) {
+                Path file = files.get(next++);
+                tasks.add(pool.submit(() -> parse(file)));
+            }
+            Fragment fragment = tasks.poll().join();
+            if (fragment.error() != null) {
+                errors.add(fragment.error());
+            } else {
+                into.accept(fragment.tran());
+            }
+        }
+    }
+
+    private Fragment parse(Path file) {
+        try {
+            if (cache != null) {
+                return new Fragment(cache.parse(file), null);
+            }
+            TranNode tran = new TranNode();
+            new Parser(tran, new Lexer(file)).Tran();
+            return new Fragment(tran, null);
+        } catch (SyntaxErrorException e) {
+            return new Fragment(null, new SourceError(file, e.getLineNumber(), e.getCharacterPosition(), e.getMessage()));
+        } catch (Exception e) {//the parser doesn't turn every bad input into a SyntaxErrorException
+            return new Fragment(null, new SourceError(file, -1, -1, String.valueOf(e)));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import AST.ClassNode;
+import AST.InterfaceNode;
+import AST.TranNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a source file parsed while it is being edited. The text is split into top-level declarations - a line that
+ * starts at column 0 with a letter starts a new one, which is where parseNewline dedents back to nothing - and each
+ * declaration is lexed and parsed on its own. An edit only re-lexes and re-parses the declarations it touches;
+ * every other ClassNode and InterfaceNode is kept as it was.
+ */
+public class IncrementalParser {
+    private final StringBuilder text;
+    private final List<Declaration> declarations = new ArrayList<>();//in source order, covering all of text - never empty
+    private int reparsed;
+
+    //one top-level piece of the source and what it parsed to
+    private static class Declaration {
+        private int start;
+        private int end;
+        private final String source;
+        private ClassNode classNode;
+        private InterfaceNode interfaceNode;
+        private SyntaxErrorException error;
+
+        private Declaration(int start, int end, String source) {
+            this.start = start;
+            this.end = end;
+            this.source = source;
+        }
+    }
+
+    public IncrementalParser(String text) {
+        this.text = new StringBuilder(text);
+        declarations.addAll(split(0, text.length(), List.of()));
+    }
+
+    /**
+     * Replace removedLength characters at offset with inserted.
+     */
+    public void edit(int offset, int removedLength, String inserted) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > text.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removedLength + " is outside the text");
+        }
+        text.replace(offset, offset + removedLength, inserted);
+        int delta = inserted.length() - removedLength;
+
+        //the declarations the edit touches - one that ends right where the edit starts is included, since an indented
+        //line typed there belongs to it
+        int first = 0;
+        while (first < declarations.size() && declarations.get(first).end < offset) {
+            first++;
+        }
+        int last = first;
+        while (last + 1 < declarations.size() && declarations.get(last + 1).start <= offset + removedLength) {
+            last++;
+        }
+
+        List<Declaration> old = new ArrayList<>(declarations.subList(first, last + 1));
+        List<Declaration> replacement = split(declarations.get(first).start, declarations.get(last).end + delta, old);
+        for (int i = last + 1; i < declarations.size(); i++) {
+            declarations.get(i).start += delta;
+            declarations.get(i).end += delta;
+        }
+        declarations.subList(first, last + 1).clear();
+        declarations.addAll(first, replacement);
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    //how many declarations have been lexed and parsed so far, counting the first parse
+    public int getReparsedCount() {
+        return reparsed;
+    }
+
+    /**
+     * The program as it stands. Throws the first syntax error if any declaration doesn't parse.
+     */
+    public TranNode getTran() throws SyntaxErrorException {
+        TranNode tran = new TranNode();
+        for (Declaration declaration : declarations) {
+            if (declaration.error != null) {
+                throw declaration.error;
+            }
+            if (declaration.classNode != null) {
+                tran.Classes.add(declaration.classNode);
+            }
+            if (declaration.interfaceNode != null) {
+                tran.Interfaces.add(declaration.interfaceNode);
+            }
+        }
+        return tran;
+    }
+
+    //cut text[start, end) into declarations, reusing what old parsed wherever the text is the same
+    private List<Declaration> split(int start, int end, List<Declaration> old) {
+        List<Declaration> result = new ArrayList<>();
+        int from = start;
+        for (int i = start + 1; i < end; i++) {
+            if (text.charAt(i - 1) == '\n' && Character.isLetter(text.charAt(i))) {
+                result.add(declaration(from, i, old));
+                from = i;
+            }
+        }
+        if (from < end || result.isEmpty()) {
+            result.add(declaration(from, end, old));
+        }
+        return result;
+    }
+
+    private Declaration declaration(int start, int end, List<Declaration> old) {
+        String source = text.substring(start, end);
+        for (Declaration previous : old) {
+            if (previous.source.equals(source)) {
+                Declaration same = new Declaration(start, end, source);
+                same.classNode = previous.classNode;
+                same.interfaceNode = previous.interfaceNode;
+                same.error = previous.error;
+                if (same.error != null) {//it has moved, so the line in the message has too
+                    parse(same);
+                }
+                return same;
+            }
+        }
+        Declaration declaration = new Declaration(start, end, source);
+        parse(declaration);
+        return declaration;
+    }
+
+    private void parse(Declaration declaration) {
+        declaration.classNode = null;
+        declaration.interfaceNode = null;
+        declaration.error = null;
+        if (declaration.source.isBlank()) {//blank lines before the first declaration
+            return;
+        }
+        reparsed++;
+        TranNode tran = new TranNode();
+        try {
+            new Parser(tran, new Lexer(declaration.source)).Tran();
+            //a declaration starts with the only letter at column 0 it has, so there is at most one of either
+            if (!tran.Classes.isEmpty()) {
+                declaration.classNode = tran.Classes.get(0);
+            }
+            if (!tran.Interfaces.isEmpty()) {
+                declaration.interfaceNode = tran.Interfaces.get(0);
+            }
+        } catch (SyntaxErrorException e) {
+            declaration.error = new SyntaxErrorException(e.getMessage(), lineOf(declaration.start) + e.getLineNumber() - 1,
+                    e.getCharacterPosition());
+        } catch (Exception e) {//the parser doesn't turn every bad input into a SyntaxErrorException
+            declaration.error = new SyntaxErrorException(String.valueOf(e), lineOf(declaration.start), 0);
+        }
+    }
+
+    //the line number (from 1) that offset is on
+    private int lineOf(int offset) {
+        int line = 1;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+}
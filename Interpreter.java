@@ -6,51 +6,116 @@ import java.util.*;
 
 public class Interpreter {
     private TranNode top;
+    private final ExecutionMode mode;
+    private final IdentityHashMap<Node, FrameLayout> layouts = new IdentityHashMap<>();//method/constructor -> slots
+    private final IdentityHashMap<Node, CallSiteCache> callSites = new IdentityHashMap<>();//call node -> inline cache
+    private OverloadResolver overloads = new OverloadResolver();//overloaded calls and "new", by argument types
+    private ClassTable classTable;//classes, methods and constructors - indexed once, up front
+    private int classTableVersion = 0;
+    private final IdentityHashMap<Node, CompiledStatement> compiledBodies = new IdentityHashMap<>();//CLOSURE_COMPILED only
+    private ClosureCompiler compiler;//CLOSURE_COMPILED only, made by the first body it compiles
+    private final ValueCache values = new ValueCache();//one shared value per literal
+    private IdentityHashMap<MethodDeclarationNode, CompiledMethod> compiledMethods;//BYTECODE only, made by the first start()
+    private final IdentityHashMap<Node, RegisterCode> registerBodies = new IdentityHashMap<>();//REGISTER_VM only
+    private RegisterCompiler registerCompiler;//REGISTER_VM only, made on first use
+    private RegisterMachine machine;
+    private TypeChecker types;//null unless the program was type checked
+
+
+    /** Constructor - get the interpreter ready to run. Runs on slot resolved frames.
+     *
+     * @param top - the head of the AST
+     */
+    public Interpreter(TranNode top) {
+        this(top, ExecutionMode.SLOT_FRAMES);
+    }
 
+    /** Constructor - get the interpreter ready to run, without type checking the program first.
+     *
+     * @param top - the head of the AST
+     * @param mode - how locals are stored while running
+     */
+    public Interpreter(TranNode top, ExecutionMode mode) {
+        this(top, mode, false);
+    }
+
+    //console.write, if the tree already has the built-in console class
+    private static ConsoleWrite builtInConsole(TranNode top) {
+        for (ClassNode classNode : top.Classes) {
+            if ("console".equals(classNode.name)) {
+                for (MethodDeclarationNode m : classNode.methods) {
+                    if (m instanceof ConsoleWrite write) {
+                        return write;
+                    }
+                }
+            }
+        }
+        return null;
+    }
 
     /** Constructor - get the interpreter ready to run. Set members from parameters and "prepare" the class.
      *
      * Store the tran node.
-     * Add any built-in methods to the AST
+     * Add any built-in methods to the AST, unless they are already there
+     * Build the ClassTable (throws if a class, method or constructor is declared twice)
+     * If typeChecked, run the TypeChecker (throws, listing every type error) - calls then pick their method from the
+     * checked types, with no matching of values against declarations while running
+     * In every mode but NAMED_LOCALS, run the SlotResolver over every method and constructor so locals have fixed slots
+     * (BYTECODE mode compiles what it can to JVM classes in start() - the compiled code calls back into this interpreter)
      * @param top - the head of the AST
+     * @param mode - how locals are stored while running
+     * @param typeChecked - check the types before anything runs
      */
-    public Interpreter(TranNode top) {
+    public Interpreter(TranNode top, ExecutionMode mode, boolean typeChecked) {
         this.top = top;
+        this.mode = mode;
+
+        // The built-in console - an interpreter made on this tree before already added it
+        if (builtInConsole(top) == null) {
+            ClassNode classNodehere = new ClassNode();
+            classNodehere.name = "console";
+            ConsoleWrite method = new ConsoleWrite();
+            method.name = "write";
+            method.isShared = true;
+            method.isVariadic = true;
+            classNodehere.methods.add(method);
+            top.Classes.add(classNodehere);
+        }
+        classTable = new ClassTable(top);
+        if (typeChecked) {
+            types = TypeChecker.check(top, classTable);
+        }
 
-        ClassNode classNodehere = new ClassNode();
-        classNodehere.name ="console";
-        var method = new ConsoleWrite();
-        method.name="write";
-        method.isShared=true;
-        method.isVariadic = true;
-        //ConsoleWriteMethod writeMethod = new ConsoleWriteMethod();
-
-        classNodehere.methods.add(method);
-//        classNodehere.methods.add(writeMethod);
-
-        top.Classes.add(classNodehere);
-
+        if (mode.usesSlots()) {
+            for (ClassNode classNode : top.Classes) {
+                for (MethodDeclarationNode m : classNode.methods) {
+                    if (!(m instanceof BuiltInMethodDeclarationNode)) {
+                        layouts.put(m, SlotResolver.resolve(m, classNode));
+                    }
+                }
+                for (ConstructorNode c : classNode.constructors) {
+                    layouts.put(c, SlotResolver.resolve(c, classNode));
+                }
+            }
+        }
     }
 
         /**
          * This is the public interface to the interpreter. After parsing, we will create an interpreter and call start to
          * start interpreting the code.
          * <p>
-         * Search the classes in Tran for a method that is "isShared", named "start", that is not private and has no parameters
+         * The ClassTable already found the method that is "isShared", named "start", that is not private and has no parameters
+         * In BYTECODE mode, the first start() compiles what it can to JVM classes
          * Call "InterpretMethodCall" on that method, then return.
          * Throw an exception if no such method exists.
          */
         public void start() {
-            for (ClassNode classNode : top.Classes) {
-                for (MethodDeclarationNode method : classNode.methods) {
-                    if (method.name.equals("start") && method.isShared && !method.isPrivate && method.parameters.isEmpty()) {
-                        interpretMethodCall(Optional.empty(), method, new LinkedList<>());
-                        return;
-                    }
-                }
+            MethodDeclarationNode method = classTable.getStart()
+                    .orElseThrow(() -> new RuntimeException("No suitable 'start' method found."));
+            if (mode == ExecutionMode.BYTECODE && compiledMethods == null) {
+                compiledMethods = BytecodeCompiler.compile(top, layouts, builtInConsole(top), this);
             }
-            throw new RuntimeException("No suitable 'start' method found.");
-
+            interpretMethodCall(Optional.empty(), method, new LinkedList<>());
         }
 
         //              Running Methods
@@ -74,31 +139,146 @@ public class Interpreter {
          * @param mc     - the method call
          * @return - the return values
          */
-        private List<InterpreterDataType> findMethodForMethodCallAndRunIt(Optional<ObjectIDT> object, HashMap<String, InterpreterDataType> locals, MethodCallStatementNode mc) {
-            List<InterpreterDataType> result = null;
+        private List<InterpreterDataType> findMethodForMethodCallAndRunIt(Optional<ObjectIDT> object, Frame locals, MethodCallStatementNode mc) {
+            List<InterpreterDataType> parameters = getParameters(object, locals, mc);
+            return dispatch(mc, mc.objectName, mc.methodName, parameters, object, locals);
+        }
 
-            if (object.isPresent()) {
-                // Check local methods
-                for (MethodDeclarationNode method : object.get().astNode.methods) {
-                    if (doesMatch(method, mc, result)) {
-                        result = interpretMethodCall(object, method, getParameters(object, locals, mc));
-                        break;
-                    }
+        /**
+         * The shared part of every method call (statement or expression): work out the receiver, then find the method
+         * through the call site's inline cache and run it.
+         * <p>
+         * The receiver is: the object named by a local or member (bestStudent.getGPA()), or the class of that name for a
+         * shared call (console.write()), or the current object when there is no object name.
+         * A cache hit only needs doesMatch() on the one cached method; a miss does the full search and fills the cache
+         * when the name and parameter count pick out exactly one method. Overloaded methods are picked by the
+         * OverloadResolver from the argument types.
+         *
+         * @param site       - the call node, used as the key for its inline cache
+         * @param objectName - the name before the dot, if any
+         * @param methodName - the method being called
+         * @param parameters - the already evaluated parameter values
+         * @param object     - the object we are inside right now (might be empty)
+         * @param locals     - the current local variables
+         * @return - the return values
+         */
+        List<InterpreterDataType> dispatch(Node site, Optional<String> objectName, String methodName, List<InterpreterDataType> parameters,
+                                                   Optional<ObjectIDT> object, Frame locals) {
+            Optional<ObjectIDT> receiver = object;
+            ClassNode receiverClass = object.map(o -> o.astNode).orElse(null);
+
+            if (objectName != null && objectName.isPresent()) {
+                InterpreterDataType target = lookupVariable(objectName.get(), locals, object);
+                if (target instanceof ReferenceIDT reference) {
+                    target = reference.refersTo == null ? null : reference.refersTo.orElse(null);
                 }
-            } else {
-                for (ClassNode classNode : top.Classes) {
-                    for (MethodDeclarationNode method : classNode.methods) {
-                        if (doesMatch(method, mc, result)) {
-                            result = interpretMethodCall(Optional.empty(), method, getParameters(object, locals, mc));
-                            break;
-                        }
+                if (target instanceof ObjectIDT targetObject) {
+                    receiver = Optional.of(targetObject);
+                    receiverClass = targetObject.astNode;
+                } else {
+                    // not a variable, so it has to be a class name (shared method)
+                    receiver = Optional.empty();
+                    receiverClass = getClassByName(objectName.get())
+                            .orElseThrow(() -> new RuntimeException("Unknown object or class: " + objectName.get()));
+                }
+            }
+
+            MethodDeclarationNode method = linkMethod(site, receiverClass, methodName, parameters);
+            return interpretMethodCall(receiver, method, parameters);
+        }
+
+        /**
+         * Find the method for a call site, using (and filling) its inline cache.
+         *
+         * @param site          - the node that owns the cache
+         * @param receiverClass - the class to look in (null means look in every class)
+         * @param methodName    - the method being called
+         * @param parameters    - the parameter values
+         * @return the method to run, or throws if nothing matches
+         */
+        private MethodDeclarationNode linkMethod(Node site, ClassNode receiverClass, String methodName, List<InterpreterDataType> parameters) {
+            CallSiteCache cache = callSites.computeIfAbsent(site, s -> new CallSiteCache());
+            MethodDeclarationNode method = cache.lookup(receiverClass, classTableVersion);
+            List<String> signature = types == null ? null : types.signature(site);
+            if (signature != null) {//type checked - the receiver class alone decides the method
+                if (method == null) {
+                    method = findCheckedMethod(receiverClass, methodName, signature);
+                    cache.fill(receiverClass, method, classTableVersion);
+                }
+                return method;
+            }
+            if (method == null || !doesMatch(method, methodName, parameters)) {
+                List<MethodDeclarationNode> candidates = classTable.methods(receiverClass, methodName, parameters.size());
+                if (candidates.size() > 1) {//overloaded - the argument types decide, once per site and type tuple
+                    method = overloads.method(site, receiverClass, candidates, parameters);
+                    if (method == null) {
+                        throw new RuntimeException("Method call not found or not matching: " + methodName);
                     }
+                    return method;
+                }
+                method = findMethod(receiverClass, methodName, parameters);
+                if (isOnlyCandidate(receiverClass, method, parameters.size())) {
+                    cache.fill(receiverClass, method, classTableVersion);
+                }
+            }
+            return method;
+        }
+
+        /**
+         * The slow path for dispatch(): ask the ClassTable for the methods of the receiver class (or every class, when
+         * there is no receiver) with this name and parameter count, and return the first one that doesMatch().
+         * A shared built-in (write()) can be called from anywhere without its class name.
+         * Throws if nothing matches.
+         */
+        private MethodDeclarationNode findMethod(ClassNode receiverClass, String methodName, List<InterpreterDataType> parameters) {
+            for (MethodDeclarationNode method : classTable.methods(receiverClass, methodName, parameters.size())) {
+                if (doesMatch(method, methodName, parameters)) {
+                    return method;
                 }
             }
-            if (result == null) {
-                throw new RuntimeException("Method call not found or not matching.");
+            Optional<BuiltInMethodDeclarationNode> builtIn = classTable.builtIn(methodName);
+            if (builtIn.isPresent() && doesMatch(builtIn.get(), methodName, parameters)) {
+                return builtIn.get();
+            }
+            throw new RuntimeException("Method call not found or not matching: " + methodName);
+        }
+
+        /**
+         * The slow path for a type checked call site: the method of the receiver class with the parameter types the site
+         * was checked against. Nothing is matched against the values.
+         */
+        private MethodDeclarationNode findCheckedMethod(ClassNode receiverClass, String methodName, List<String> signature) {
+            for (MethodDeclarationNode method : classTable.methods(receiverClass, methodName, signature.size())) {
+                if (TypeChecker.declares(method, signature)) {
+                    return method;
+                }
             }
-            return result;
+            throw new RuntimeException("Method call not found or not matching: " + methodName);
+        }
+
+        /**
+         * Only link a call site when the name and the parameter count are enough to pick the method - overloads
+         * that differ by parameter type are cached by the OverloadResolver instead, per argument types.
+         */
+        private boolean isOnlyCandidate(ClassNode receiverClass, MethodDeclarationNode method, int parameterCount) {
+            List<MethodDeclarationNode> candidates = classTable.methods(receiverClass, method.name, parameterCount);
+            return candidates.size() == 1 && candidates.get(0) == method;
+        }
+
+        /**
+         * Tell the interpreter that classes were added to (or removed from) the TranNode after construction.
+         * Rebuilds the ClassTable and the OverloadResolver; every inline cache filled before this call is treated as empty, and compiled
+         * bodies are thrown away (they have classes and constructors baked in). A type checked program is checked again.
+         */
+        public void classesChanged() {
+            classTable = new ClassTable(top);
+            overloads = new OverloadResolver();
+            if (types != null) {
+                types = TypeChecker.check(top, classTable);
+            }
+            compiledBodies.clear();
+            registerBodies.clear();
+            classTableVersion++;
         }
 
         /**
@@ -126,31 +306,25 @@ public class Interpreter {
                 retVal.addAll(((BuiltInMethodDeclarationNode) m).Execute(values));
             } else {
                 // Handle user-defined methods (local methods)
-                HashMap<String, InterpreterDataType> locals = new HashMap<>();
                 if (m.parameters.size() != values.size()) {
                     throw new RuntimeException("Parameter count mismatch.");
                 }
-
-                // Map parameters to local variables
-                for (int i = 0; i < values.size(); i++) {
-                    String paramName = m.parameters.get(i).name;
-                    locals.put(paramName, values.get(i));
-                }
-                // Initialize declared local variables
-                for (VariableDeclarationNode localVar : m.locals) {
-                    String localName = localVar.name;
-                    // Initialize locals with a default value (e.g., null or a default instance)
-                    locals.put(localName, null);
+                // Compiled to bytecode - no frame needed
+                CompiledMethod compiled = compiledMethods == null ? null : compiledMethods.get(m);
+                if (compiled != null && compiled.accepts(values)) {
+                    return compiled.invoke(object.orElse(null), values);
                 }
+                // Parameters, return values and locals, declared the same way in every mode
+                Frame locals = newFrame(m, m.parameters, m.returns, m.locals, values);
 
                 // Interpret the method body
-                interpretStatementBlock(object, m.statements, locals);
+                runBody(object, m, m.statements, locals);
 
                 // Build the return list
-                for (VariableDeclarationNode returnVar : m.returns) {
-                    String returnName = returnVar.name;
-                    if (locals.containsKey(returnName)) {
-                        retVal.add(locals.get(returnName));
+                for (int i = 0; i < m.returns.size(); i++) {
+                    String returnName = m.returns.get(i).name;
+                    if (locals.containsReturn(i, returnName)) {
+                        retVal.add(locals.getReturn(i, returnName));
                     } else {
                         throw new RuntimeException("Return variable " + returnName + " not found.");
                     }
@@ -174,7 +348,7 @@ public class Interpreter {
          * @param mc        - the method call for this construction
          * @param newOne    - the object that we just created that we are calling the constructor for
          */
-        private void findConstructorAndRunIt(Optional<ObjectIDT> callerObj, HashMap<String, InterpreterDataType> locals, MethodCallStatementNode mc, ObjectIDT newOne) {
+        private void findConstructorAndRunIt(Optional<ObjectIDT> callerObj, Frame locals, MethodCallStatementNode mc, ObjectIDT newOne) {
             //Retrieve parameters
             List<InterpreterDataType> parameters = getParameters(callerObj, locals, mc); // Get the evaluated parameters
 
@@ -187,22 +361,16 @@ public class Interpreter {
 
             ClassNode classNode = classNodeOpt.get(); // Retrieve the ClassNode
 
-            //Look for a matching constructor in the class
-            ConstructorNode matchingConstructor = null;
-            for (ConstructorNode constructor : classNode.constructors) {
-                if (doesConstructorMatch(constructor, mc, parameters)) {
-                    matchingConstructor = constructor;
-                    break;
-                }
-            }
+            //Look for the best matching constructor in the class - only the ones with the right parameter count
+            Optional<ConstructorNode> matchingConstructor = constructorFor(mc, classNode, parameters);
 
             //If no matching constructor is found, throw an exception
-            if (matchingConstructor == null) {
+            if (matchingConstructor.isEmpty()) {
                 throw new RuntimeException("No matching constructor found for class: " + newOne.astNode.name);
             }
 
             // Interpret the constructor call
-            interpretConstructorCall(newOne, matchingConstructor, parameters); // Run the constructor
+            interpretConstructorCall(newOne, matchingConstructor.get(), parameters); // Run the constructor
         }
 
         /**
@@ -217,20 +385,14 @@ public class Interpreter {
          * @param c      - which constructor is being called
          * @param values - the parameter values being passed to the constructor
          */
-        private void interpretConstructorCall(ObjectIDT object, ConstructorNode c, List<InterpreterDataType> values) {
+        void interpretConstructorCall(ObjectIDT object, ConstructorNode c, List<InterpreterDataType> values) {
             if (c.parameters.size() != values.size()) {
                 throw new RuntimeException("Constructor parameters count mismatch. Expected "
                         + c.parameters.size() + " but got " + values.size());
             }
 
-            //Add parameters to local variables
-            //Add the parameters (with the names from the ConstructorNode) to the local variables
-            HashMap<String, InterpreterDataType> locals = new HashMap<>();
-            for (int i = 0; i < c.parameters.size(); i++) {
-                String paramName = c.parameters.get(i).name;
-                InterpreterDataType paramValue = values.get(i);
-                locals.put(paramName, paramValue);
-            }
+            //Add the parameters (with the names from the ConstructorNode) and the locals to the local variables
+            Frame locals = newFrame(c, c.parameters, List.of(), c.locals, values);
 
             //Call Instantiate() to create the object
             // This is typically handled by the constructor's implementation, which might initialize the object's members.
@@ -239,7 +401,7 @@ public class Interpreter {
             //Interpret the constructor's statement block
             // Run the statements defined in the constructor's body
             for (StatementNode stmt : c.statements) {
-                interpretStatementBlock(Optional.of(object), c.statements, locals);
+                runBody(Optional.of(object), c, c.statements, locals);
             }
         }
 
@@ -269,7 +431,7 @@ public class Interpreter {
          * @param statements - the statements to run
          * @param locals     - the local variables
          */
-        private void interpretStatementBlock(Optional<ObjectIDT> object, List<StatementNode> statements, HashMap<String, InterpreterDataType> locals) {
+        private void interpretStatementBlock(Optional<ObjectIDT> object, List<StatementNode> statements, Frame locals) {
             for (StatementNode statement : statements) {
                 if (statement instanceof AssignmentNode) {
                     // Handle AssignmentNode
@@ -281,143 +443,102 @@ public class Interpreter {
                     // Evaluate the expression to get the new value
                     InterpreterDataType value = evaluate(locals, object, assignNode.expression);
 
-                    if (object.isPresent() && object.get().members.containsKey(targetName)) {
+                    FrameLayout.Reference resolved = locals.getLayout().reference(assignNode.target);
+                    if (resolved != null) {
+                        // Resolved ahead of time: the member through this node's FieldSite, and the local's slot
+                        int member = memberSlot(resolved, object);
+                        if (member >= 0) {
+                            object.get().set(member, value);
+                        } else if (resolved.slot() < 0) {
+                            throw new RuntimeException("Variable not found: " + targetName);
+                        }
+                        if (resolved.slot() >= 0) {
+                            locals.set(resolved.slot(), value);
+                        }
+                    } else if (object.isPresent() && object.get().hasMember(targetName)) {
                         // Update the value of the member in ObjectIDT
-                        object.get().members.put(targetName, value);
-                    } else if (locals.containsKey(targetName)) {
+                        object.get().setMember(targetName, value);
+                    } else if (locals.containsKey(assignNode.target)) {
                         // Update a local variable
-                        locals.put(targetName, value);
+                        locals.put(assignNode.target, value);
                     } else {
                         throw new RuntimeException("Variable not found: " + targetName);
                     }
-
-                    // Find the variable using the updated method signature
-                    InterpreterDataType target = findVariable(targetName, locals, object);
-
-                    ExpressionNode expression = assignNode.expression;
-
-                    // Evaluate the expression on the right side of the assignment
-
-                    // Assign the evaluated value to the target variable
-                    locals.put(targetName, value);
                 } else if (statement instanceof MethodCallStatementNode) {
                     MethodCallStatementNode methodCall = (MethodCallStatementNode) statement;
 
                     // Extract parameters
                     List<InterpreterDataType> parameters = getParameters(object, locals, methodCall);
 
-                    // Check if the method is a built-in
-                    if ("write".equals(methodCall.methodName) ) {
-
-                       ClassNode consoleClass = top.Classes.stream()
-                                .filter(c -> "console".equals(c.name))
-                                .findFirst()
-                                .orElseThrow(() -> new RuntimeException("Class 'console' not found."));
-
-                        // Access the 'write' method
-                        MethodDeclarationNode writeMethod = consoleClass.methods.stream()
-                                .filter(m -> "write".equals(m.name))
-                                .findFirst()
-                                .orElseThrow(() -> new RuntimeException("Method 'write' not found in class 'console'."));
-
-                        // Cast to ConsoleWrite and execute
-                        if (writeMethod instanceof ConsoleWrite) {
-                            ((ConsoleWrite) writeMethod).Execute(parameters);
-                        } else {
-                            throw new RuntimeException("Method 'write' is not a ConsoleWrite instance.");
-                        }
+                    // Built-ins (console.write) and user methods both go through the class table and the call site's cache
+                    List<InterpreterDataType> results = dispatch(methodCall, methodCall.objectName, methodCall.methodName, parameters, object, locals);
 
-                } else {
-                        // Handle user-defined method calls
-
-
-                        // Loop over the returned values and store them in locals if needed
-                        if (methodCall.returnValues != null) {
-                            for (int i = 0; i < methodCall.returnValues.size(); i++) {
-                                // Access each return value as a VariableReferenceNode
-                                VariableReferenceNode returnValueNode = methodCall.returnValues.get(i);
-
-                                // Evaluate the VariableReferenceNode to get an InterpreterDataType
-                                InterpreterDataType evaluatedValue = evaluate(locals, object, returnValueNode);
-
-                                // Put the evaluated value into locals using the variable's name as the key
-                                locals.put(returnValueNode.name, evaluatedValue);
-                            }
+                    // Copy the returned values into the variables on the left of the =
+                    if (methodCall.returnValues != null) {
+                        if (methodCall.returnValues.size() > results.size()) {
+                            throw new RuntimeException("Method " + methodCall.methodName + " returns " + results.size()
+                                    + " values but " + methodCall.returnValues.size() + " were expected");
                         }
+                        for (int i = 0; i < methodCall.returnValues.size(); i++) {
+                            VariableReferenceNode returnValueNode = methodCall.returnValues.get(i);
+                            assignVariable(returnValueNode, results.get(i), locals, object);
+                        }
+                    }
+                } else if (statement instanceof IfNode ifNode) {
+                    // Only the branch the condition picks runs; the condition itself is evaluated lazily
+                    if (evaluateCondition(locals, object, ifNode.condition)) {
+                        interpretStatementBlock(object, ifNode.statements, locals);
+                    } else if (ifNode.elseStatement.isPresent()) {
+                        interpretStatementBlock(object, ifNode.elseStatement.get().statements, locals);
                     }
                 } else if (statement instanceof LoopNode) {
                     LoopNode loopNode = (LoopNode) statement;
+                    Optional<VariableReferenceNode> variable = loopNode.assignment == null ? Optional.empty() : loopNode.assignment;
+                    if (loopNode.expression == null) {
+                        throw new RuntimeException("Loop without a condition");
+                    }
 
-                    // Check if the loop uses an iterator or a boolean expression
-                    boolean isIteratorLoop = false;
-                    Optional<ObjectIDT> iteratorObject = Optional.empty();
-
-                    VariableReferenceNode variableReferenceNode = loopNode.assignment.get();
-
-
-                    // Evaluate the expression to check if it's an iterator
-                    InterpreterDataType expressionResult = evaluate(locals, object, loopNode.expression);
-
-                    // Check if the result is an ObjectIDT and if it implements an iterator interface
-                    if (expressionResult instanceof ObjectIDT) {
-                        ObjectIDT obj = (ObjectIDT) expressionResult;
-                        String className = obj.astNode.name;
+                    // A condition can only be true or false - there is no need to evaluate it once to find out
+                    boolean going;
+                    if (isCondition(loopNode.expression)) {
+                        going = evaluateCondition(locals, object, loopNode.expression);
+                    } else {
+                        // Evaluate the expression to check if it's an iterator
+                        InterpreterDataType expressionResult = evaluate(locals, object, loopNode.expression);
 
-                        // get the class
-                        Optional<ClassNode> classNodeOpt = getClassByName(className);
-                        if (classNodeOpt.isPresent()) {
-                            ClassNode classNode = classNodeOpt.get();
+                        // the object knows its class - just ask the class table if it has a getNext()
+                        if (expressionResult instanceof ObjectIDT iterObj && isIterator(iterObj)) {
+                            List<InterpreterDataType> result = callGetNext(loopNode, iterObj);
 
+                            // The first value indicates if there's a next item (boolean)
+                            BooleanIDT hasNextIDT = (BooleanIDT) result.get(0);  // Getting the first result
+                            boolean hasNext = hasNextIDT.Value;
+                            if (!hasNext) break;
 
-                            Optional<MethodDeclarationNode> getNextMethodOpt = classNode.methods.stream()
-                                    .filter(m -> m.name.equals("getNext"))
-                                    .findFirst();
+                            // The second value is the next item from the iterator
+                            InterpreterDataType nextValue = result.get(1);
 
-                            if (getNextMethodOpt.isPresent()) {
-                                isIteratorLoop = true;
-                                iteratorObject = Optional.of(obj);
+                            // If there is an assignment variable, assign the value to it
+                            if (variable.isPresent()) {
+                                locals.put(variable.get(), nextValue);
                             }
+
+                            // Execute the loop body
+                            interpretStatementBlock(object, loopNode.statements, locals);
+                            continue;
                         }
+                        going = truth(expressionResult);
                     }
-                    if (isIteratorLoop) {
-                        // Iterator-based loop
-                        ObjectIDT iterObj = iteratorObject.get();
-                        ClassNode classNode = new ClassNode();
-
-                        MethodCallStatementNode methodCallStatementNode = new MethodCallStatementNode();
-                        methodCallStatementNode.methodName = "getNext";
-
-                        List<InterpreterDataType> result = (List<InterpreterDataType>) getMethodFromObject(iterObj, methodCallStatementNode, List.of());
-
 
-                        // The first value indicates if there's a next item (boolean)
-                        BooleanIDT hasNextIDT = (BooleanIDT) result.get(0);  // Getting the first result
-                        boolean hasNext = hasNextIDT.Value;
-                        if (!hasNext) break;
-
-                        // The second value is the next item from the iterator
-                        InterpreterDataType nextValue = result.get(1);
-
-                        // If there is an assignment variable, assign the value to it
-                        if (loopNode.assignment.isPresent()) {
-                            locals.put(loopNode.assignment.get().name, nextValue);
+                    // Boolean condition-based loop - the condition is evaluated once per pass, so the loop variable is just true
+                    while (going) {
+                        if (variable.isPresent()) {
+                            locals.put(variable.get(), ValueCache.bool(true));
                         }
 
                         // Execute the loop body
                         interpretStatementBlock(object, loopNode.statements, locals);
-
-                    } else {
-                        // Boolean condition-based loop
-                        while (((BooleanIDT) evaluate(locals, object, loopNode.expression)).Value) {
-                            // If there's an assignment variable, assign the evaluated expression result to it
-                            if (loopNode.assignment.isPresent()) {
-                                InterpreterDataType loopConditionValue = evaluate(locals, object, loopNode.expression);
-                                locals.put(loopNode.assignment.get().name, loopConditionValue);
-                            }
-
-                            // Execute the loop body
-                            interpretStatementBlock(object, loopNode.statements, locals);
-                        }
+                        going = evaluateCondition(locals, object, loopNode.expression);
                     }
                 }
             }
@@ -431,7 +552,7 @@ public class Interpreter {
          * For each possible ExpressionNode, do the work to resolve it:
          * BooleanLiteralNode - create a new BooleanLiteralNode with the same value
          * - Same for all of the basic data types
-         * BooleanOpNode - Evaluate() left and right, then perform either and/or on the results.
+         * BooleanOpNode - evaluateCondition() left, and right only if left didn't decide it. NotOpNode - evaluateCondition() and flip it.
          * CompareNode - Evaluate() both sides. Do good comparison for each data type
          * MathOpNode - Evaluate() both sides. If they are both numbers, do the math using the built-in operators. Also handle String + String as concatenation (like Java)
          * MethodCallExpression - call doMethodCall() and return the first value
@@ -442,91 +563,39 @@ public class Interpreter {
          * @param expression - some expression to evaluate
          * @return a value
          */
-        private InterpreterDataType evaluate(HashMap<String, InterpreterDataType> locals, Optional<ObjectIDT> object, ExpressionNode expression) {
+        private InterpreterDataType evaluate(Frame locals, Optional<ObjectIDT> object, ExpressionNode expression) {
 
+            // Literals never change, so each one has a single shared value (see ValueCache)
             if (expression instanceof BooleanLiteralNode) {
-                return new BooleanIDT(((BooleanLiteralNode) expression).value);
+                return ValueCache.bool(((BooleanLiteralNode) expression).value);
             }
 
             if (expression instanceof NumericLiteralNode) {
-                return new NumberIDT(((NumericLiteralNode) expression).value);
+                return values.constant((NumericLiteralNode) expression);
             }
 
             if (expression instanceof StringLiteralNode) {
-                return new StringIDT(((StringLiteralNode) expression).value);
-            }
-
-            // Boolean Operation Node
-            if (expression instanceof BooleanOpNode) {
-                BooleanOpNode boolOpNode = (BooleanOpNode) expression;
-                InterpreterDataType left = evaluate(locals, object, boolOpNode.left);
-                InterpreterDataType right = evaluate(locals, object, boolOpNode.right);
-
-                if (left instanceof BooleanIDT && right instanceof BooleanIDT) {
-                    boolean leftValue = ((BooleanIDT) left).Value;
-                    boolean rightValue = ((BooleanIDT) right).Value;
-                    if (boolOpNode.op == BooleanOpNode.BooleanOperations.and) {
-                        return new BooleanIDT(leftValue && rightValue);
-                    } else if (boolOpNode.op == BooleanOpNode.BooleanOperations.or) {
-                        return new BooleanIDT(leftValue || rightValue);
-                    }
-                }
-                throw new RuntimeException("Boolean operation on non-boolean types");
-            }
-
-            // Comparison Node
-            if (expression instanceof CompareNode) {
-                CompareNode compareNode = (CompareNode) expression;
-                InterpreterDataType left = evaluate(locals, object, compareNode.left);
-                InterpreterDataType right = evaluate(locals, object, compareNode.right);
-
-                if (left instanceof NumberIDT && right instanceof NumberIDT) {
-                    double leftValue = ((NumberIDT) left).Value;
-                    double rightValue = ((NumberIDT) right).Value;
-                    switch (compareNode.op) {
-                        case eq:
-                            return new BooleanIDT(leftValue == rightValue);
-                        case ne:
-                            return new BooleanIDT(leftValue != rightValue);
-                        case lt:
-                            return new BooleanIDT(leftValue < rightValue);
-                        case gt:
-                            return new BooleanIDT(leftValue > rightValue);
-                        case le:
-                            return new BooleanIDT(leftValue <= rightValue);
-                        case ge:
-                            return new BooleanIDT(leftValue >= rightValue);
-                        default:
-                            throw new RuntimeException("Unsupported comparison operator: " + compareNode.op);
-                    }
-                }
-                throw new RuntimeException("Comparison on non-comparable types");
+                return values.constant((StringLiteralNode) expression);
             }
 
-            // Math Op Node
-            if (expression instanceof MathOpNode) {
-                MathOpNode mathOpNode = (MathOpNode) expression;
-                InterpreterDataType left = evaluate(locals, object, mathOpNode.left);
-                InterpreterDataType right = evaluate(locals, object, mathOpNode.right);
-
-                if (left instanceof NumberIDT && right instanceof NumberIDT) {
-                    float leftValue = ((NumberIDT) left).Value;
-                    float rightValue = ((NumberIDT) right).Value;
-
-                    switch (mathOpNode.op) {
-                        case add:
-                            return new NumberIDT(leftValue + rightValue);
-                        case subtract:
-                            return new NumberIDT(leftValue - rightValue);
-                        case multiply:
-                            return new NumberIDT(leftValue * rightValue);
-                        case divide:
-                            return new NumberIDT(leftValue / rightValue);
-                        default:
-                            throw new RuntimeException("Unsupported math operator: " + mathOpNode.op);
-                    }
-                }
-                throw new RuntimeException("Math operation on non-number types");
+            // Boolean Operation Node - worked out on primitive booleans, boxed once at the top
+            if (expression instanceof BooleanOpNode booleanOpNode) {
+                return ValueCache.bool(evaluateBooleanOp(locals, object, booleanOpNode));
+            }
+
+            // Not - same as and/or, worked out lazily as a condition
+            if (expression instanceof NotOpNode notOpNode) {
+                return ValueCache.bool(!evaluateCondition(locals, object, notOpNode.left));
+            }
+
+            // Comparison Node - same, a comparison of (maybe nested math) on primitive floats
+            if (expression instanceof CompareNode compareNode) {
+                return ValueCache.bool(evaluateCompare(locals, object, compareNode));
+            }
+
+            // Math Op Node - a whole tree of math is worked out on floats, boxed once at the top
+            if (expression instanceof MathOpNode mathOpNode) {
+                return ValueCache.number(evaluateMath(locals, object, mathOpNode));
             }
 
             // Method Call Expression Node
@@ -540,21 +609,11 @@ public class Interpreter {
                     parameters.add(value);
                 }
 
-                // Find the method declaration node (if needed)
-                Optional<MethodDeclarationNode> methodDecNodeOpt = getClassByName(object.get().astNode.name)
-                        .flatMap(classNode -> classNode.methods.stream()
-                                .filter(m -> m.name.equals(methodCallNode.methodName))
-                                .findFirst());
-
-                if (methodDecNodeOpt.isPresent()) {
-                    MethodDeclarationNode methodDecNode = methodDecNodeOpt.get();
-                    List<InterpreterDataType> results = interpretMethodCall(object, methodDecNode, parameters);
+                // Find the method through this call site's inline cache and run it
+                List<InterpreterDataType> results = dispatch(methodCallNode, methodCallNode.objectName, methodCallNode.methodName, parameters, object, locals);
 
-                    // Return the first result
-                    return results.isEmpty() ? null : results.get(0);
-                }
-
-                throw new RuntimeException("Method not found: " + methodCallNode.methodName);
+                // Return the first result
+                return results.isEmpty() ? null : results.get(0);
             }
             if (expression instanceof VariableReferenceNode) {
                 VariableReferenceNode varRefNode = (VariableReferenceNode) expression;
@@ -564,18 +623,29 @@ public class Interpreter {
                     return null;
                 }
 
-                // Check local variables
-                if (locals.containsKey(varName)) {
-                    return locals.get(varName);
+                FrameLayout.Reference resolved = locals.getLayout().reference(varRefNode);
+                if (resolved != null) {
+                    // Resolved ahead of time: its slot, otherwise a shape check in this node's FieldSite
+                    if (resolved.slot() >= 0) {
+                        return locals.get(resolved.slot());
+                    }
+                    int member = memberSlot(resolved, object);
+                    if (member >= 0) {
+                        return object.get().get(member);
+                    }
+                    throw new RuntimeException("Variable not found: " + varName);
                 }
 
-                if(object.get().members.containsKey(varName)) {
-                    return object.get().members.get(varName);
+                // Check local variables
+                if (locals.containsKey(varRefNode)) {
+                    return locals.get(varRefNode);
                 }
 
-                // Check object members
-                if (object.isPresent() && object.get().members.containsKey(varName)) {
-                    return object.get().members.get(varName);
+                // Check object members - one lookup in the class's shape, then straight to the slot
+                ObjectIDT self = object.get();
+                int member = self.shape.slotOf(varName);
+                if (member >= 0) {
+                    return self.get(member);
                 }
 
 
@@ -593,46 +663,18 @@ public class Interpreter {
                 }
                 ClassNode classNode = classNodeOpt.get();
 
-                ObjectIDT newObject = new ObjectIDT(classNode);
-
+                // Step 2: Make the object and give its members their first values
+                ObjectIDT newObject = newObject(classNode, locals, object);
 
-                for (MemberNode member : classNode.members) {
-                    String memberName = member.declaration.name;
-                    InterpreterDataType memberValue;
-
-                    // Attempt to initialize from locals or the current object
-                    if (locals.containsKey(memberName)) {
-                        memberValue = locals.get(memberName);
-                    } else if (object.isPresent() && object.get().members.containsKey(memberName)) {
-                        memberValue = object.get().members.get(memberName);
-                    } else {
-                        // Use a default value or throw an error if uninitialized
-                        memberValue = instantiate(member.declaration.type);
-                    }
-                    newObject.members.put(memberName, memberValue);
-                }
-                // Step 3: Invoke the constructor, if one exists
-                Optional<ConstructorNode> constructorOpt = classNode.constructors.stream()
-                        .filter(c -> c.parameters.size() == newNode.parameters.size())
-                        .findFirst();
-                if (constructorOpt.isPresent()) {
-                    ConstructorNode constructor = constructorOpt.get();
+                // Step 3: Invoke the constructor, if one exists - the argument types pick between overloads
+                if (hasConstructor(classNode, newNode.parameters.size())) {
                     List<InterpreterDataType> paramValues = new ArrayList<>();
                     for (ExpressionNode param : newNode.parameters) {
                         paramValues.add(evaluate(locals, object, param));
                     }
-                    interpretConstructorCall(newObject, constructor, paramValues);
-                }
-
-                Optional<MethodDeclarationNode>methodDeclarationNode= classNode.methods.stream()
-                        .filter(c->c.parameters.size()==newNode.parameters.size()).findFirst();
-                if(methodDeclarationNode.isPresent()){
-                    MethodDeclarationNode methodDecNode = methodDeclarationNode.get();
-                    List<InterpreterDataType> paramValues = new ArrayList<>();
-                    for (ExpressionNode param : newNode.parameters) {
-                        paramValues.add(evaluate(locals, object, param));
-                    }
-                    interpretMethodCall(Optional.of(newObject), methodDecNode, paramValues);
+                    interpretConstructorCall(newObject, constructorFor(newNode, classNode, paramValues)
+                            .orElseThrow(() -> new RuntimeException("No matching constructor found for class: " + classNode.name)),
+                            paramValues);
                 }
 
                 // Return the newly created object
@@ -642,6 +684,135 @@ public class Interpreter {
 
             throw new IllegalArgumentException("Unsupported ExpressionNode type: " + expression.getClass().getSimpleName());
         }
+        /**
+         * The unboxed side of evaluate(): math, comparisons and and/or work on primitive floats and booleans all the way
+         * down, and only the top of the tree is boxed into an IDT (at an assignment, a call, ...). Nested math, literals
+         * and comparisons never allocate; anything else (variables, method calls) goes through evaluate() and is unboxed.
+         * The numbers are floats (NumberIDT.Value), so the results are exactly the boxed ones.
+         * <p>
+         * Both sides are always evaluated before the types are checked, so errors come out in the same order as before.
+         */
+        private float evaluateMath(Frame locals, Optional<ObjectIDT> object, MathOpNode mathOpNode) {
+            float leftValue = 0;
+            float rightValue = 0;
+            boolean numbers = true;
+
+            if (mathOpNode.left instanceof MathOpNode nested) {
+                leftValue = evaluateMath(locals, object, nested);
+            } else if (mathOpNode.left instanceof NumericLiteralNode literal) {
+                leftValue = literal.value;
+            } else if (evaluate(locals, object, mathOpNode.left) instanceof NumberIDT number) {
+                leftValue = number.Value;
+            } else {
+                numbers = false;
+            }
+            if (mathOpNode.right instanceof MathOpNode nested) {
+                rightValue = evaluateMath(locals, object, nested);
+            } else if (mathOpNode.right instanceof NumericLiteralNode literal) {
+                rightValue = literal.value;
+            } else if (evaluate(locals, object, mathOpNode.right) instanceof NumberIDT number) {
+                rightValue = number.Value;
+            } else {
+                numbers = false;
+            }
+            if (!numbers) {
+                throw new RuntimeException("Math operation on non-number types");
+            }
+
+            switch (mathOpNode.op) {
+                case add:
+                    return leftValue + rightValue;
+                case subtract:
+                    return leftValue - rightValue;
+                case multiply:
+                    return leftValue * rightValue;
+                case divide:
+                    return leftValue / rightValue;
+                case modulo:
+                    return leftValue % rightValue;
+                default:
+                    throw new RuntimeException("Unsupported math operator: " + mathOpNode.op);
+            }
+        }
+
+        private boolean evaluateCompare(Frame locals, Optional<ObjectIDT> object, CompareNode compareNode) {
+            float leftValue = 0;
+            float rightValue = 0;
+            boolean numbers = true;
+
+            if (compareNode.left instanceof MathOpNode nested) {
+                leftValue = evaluateMath(locals, object, nested);
+            } else if (compareNode.left instanceof NumericLiteralNode literal) {
+                leftValue = literal.value;
+            } else if (evaluate(locals, object, compareNode.left) instanceof NumberIDT number) {
+                leftValue = number.Value;
+            } else {
+                numbers = false;
+            }
+            if (compareNode.right instanceof MathOpNode nested) {
+                rightValue = evaluateMath(locals, object, nested);
+            } else if (compareNode.right instanceof NumericLiteralNode literal) {
+                rightValue = literal.value;
+            } else if (evaluate(locals, object, compareNode.right) instanceof NumberIDT number) {
+                rightValue = number.Value;
+            } else {
+                numbers = false;
+            }
+            if (!numbers) {
+                throw new RuntimeException("Comparison on non-comparable types");
+            }
+
+            switch (compareNode.op) {
+                case eq:
+                    return leftValue == rightValue;
+                case ne:
+                    return leftValue != rightValue;
+                case lt:
+                    return leftValue < rightValue;
+                case gt:
+                    return leftValue > rightValue;
+                case le:
+                    return leftValue <= rightValue;
+                case ge:
+                    return leftValue >= rightValue;
+                default:
+                    throw new RuntimeException("Unsupported comparison operator: " + compareNode.op);
+            }
+        }
+
+        //and/or stop as soon as the left side decides - the right side is not evaluated at all
+        private boolean evaluateBooleanOp(Frame locals, Optional<ObjectIDT> object, BooleanOpNode boolOpNode) {
+            if (boolOpNode.op == BooleanOpNode.BooleanOperations.and) {
+                return evaluateCondition(locals, object, boolOpNode.left) && evaluateCondition(locals, object, boolOpNode.right);
+            } else if (boolOpNode.op == BooleanOpNode.BooleanOperations.or) {
+                return evaluateCondition(locals, object, boolOpNode.left) || evaluateCondition(locals, object, boolOpNode.right);
+            }
+            evaluate(locals, object, boolOpNode.left);
+            evaluate(locals, object, boolOpNode.right);
+            throw new RuntimeException("Boolean operation on non-boolean types");
+        }
+
+        /**
+         * Evaluate something that has to be true or false (an if or loop condition, a side of and/or, the operand of
+         * not) without boxing it. and/or/not are worked out here, lazily, so a condition only evaluates the parts
+         * that decide it.
+         */
+        private boolean evaluateCondition(Frame locals, Optional<ObjectIDT> object, ExpressionNode expression) {
+            if (expression instanceof BooleanLiteralNode literal) {
+                return literal.value;
+            }
+            if (expression instanceof CompareNode compareNode) {
+                return evaluateCompare(locals, object, compareNode);
+            }
+            if (expression instanceof BooleanOpNode booleanOpNode) {
+                return evaluateBooleanOp(locals, object, booleanOpNode);
+            }
+            if (expression instanceof NotOpNode notOpNode) {
+                return !evaluateCondition(locals, object, notOpNode.left);
+            }
+            return truth(evaluate(locals, object, expression));
+        }
+
         //              Utility Methods
 
         /**
@@ -659,30 +830,31 @@ public class Interpreter {
          * @return does this method match the method call?
          */
         private boolean doesMatch(MethodDeclarationNode m, MethodCallStatementNode mc, List<InterpreterDataType> parameters) {
+            return doesMatch(m, mc.methodName, parameters);
+        }
+
+        /**
+         * doesMatch() for callers that only have the method name (MethodCallExpressionNode, cached call sites).
+         */
+        private boolean doesMatch(MethodDeclarationNode m, String methodName, List<InterpreterDataType> parameters) {
             // Check if method names match
-            if (!m.name.equals(mc.methodName)) {
+            if (!m.name.equals(methodName)) {
                 return false;
             }
 
+            // Variadic built-ins (console.write) take anything
+            if (m instanceof BuiltInMethodDeclarationNode builtIn && builtIn.isVariadic) {
+                return true;
+            }
+
             // Check if the number of parameters match
             if (m.parameters.size() != parameters.size()) {
                 return false;
             }
 
-            // Check if each parameter type matches
+            // Check if each parameter type matches - the same type names the OverloadResolver scores with
             for (int i = 0; i < m.parameters.size(); i++) {
-                VariableDeclarationNode paramNode = m.parameters.get(i);
-                InterpreterDataType paramType = parameters.get(i);
-
-
-                String paramTypeString = paramNode.type;
-
-                // Check the class of paramType and compare with paramTypeString
-                if (paramTypeString.equals("int") && !(paramType instanceof NumberIDT)) {
-                    return false;
-                } else if (paramTypeString.equals("String") && !(paramType instanceof StringIDT)) {
-                    return false;
-                } else if (paramTypeString.equals("boolean") && !(paramType instanceof BooleanIDT)) {
+                if (!typeMatchToIDT(m.parameters.get(i).type, parameters.get(i))) {
                     return false;
                 }
             }
@@ -725,7 +897,7 @@ public class Interpreter {
          * @param mc     - a method call
          * @return the list of method values
          */
-        private List<InterpreterDataType> getParameters(Optional<ObjectIDT> object, HashMap<String, InterpreterDataType> locals, MethodCallStatementNode mc) {
+        private List<InterpreterDataType> getParameters(Optional<ObjectIDT> object, Frame locals, MethodCallStatementNode mc) {
             List<InterpreterDataType> parameterValues = new LinkedList<InterpreterDataType>();
 
             for (ExpressionNode parameter : mc.parameters) {
@@ -733,6 +905,10 @@ public class Interpreter {
                 if(parameter== null){
                     return parameterValues;
                 }
+                //the parser leaves a nameless reference behind for an empty "()"
+                if(parameter instanceof VariableReferenceNode reference && reference.name == null){
+                    return parameterValues;
+                }
                 InterpreterDataType value = evaluate(locals, object, parameter);
                 parameterValues.add(value);
             }
@@ -747,35 +923,14 @@ public class Interpreter {
          * If the IDT is a simple type (boolean, number, etc) - does the string type match the name of that IDT ("boolean", etc)
          * If the IDT is an object, check to see if the name matches OR the class has an interface that matches
          * If the IDT is a reference, check the inner (refered to) type
+         * The rules live in OverloadResolver.accepts(), so picking an overload and checking a call agree on every type name.
          *
          * @param type the name of a data type (parameter to a method)
          * @param idt  the IDT someone is trying to pass to this method
          * @return is this OK?
          */
         private boolean typeMatchToIDT(String type, InterpreterDataType idt) {
-            // Match simple types
-            if (type.equals("boolean") && idt instanceof BooleanIDT) {
-                return true;
-            } else if (type.equals("number") && idt instanceof NumberIDT) {
-                return true;
-            } else if (type.equals("String") && idt instanceof StringIDT) {
-                return true;
-            }
-
-            // Match object types
-            if (idt instanceof ObjectIDT) {
-                ObjectIDT objectIDT = (ObjectIDT) idt;
-                if (objectIDT.astNode != null && objectIDT.astNode.getClass().getSimpleName().equals(type)) {
-                    return true;
-                }
-            }
-
-            // Handle references
-            if (idt instanceof ReferenceIDT) {
-                ReferenceIDT referenceIDT = (ReferenceIDT) idt;
-                return typeMatchToIDT(type, referenceIDT.refersTo.get());
-            }
-            throw new RuntimeException("Unable to resolve type " + type);
+            return OverloadResolver.accepts(type, idt);
         }
 
         /**
@@ -789,38 +944,25 @@ public class Interpreter {
          * @return a method or throws an exception
          */
         private MethodDeclarationNode getMethodFromObject(ObjectIDT object, MethodCallStatementNode mc, List<InterpreterDataType> parameters) {
-            // Retrieve the class associated with the current object
-            Optional<ClassNode> classNodeOpt = getClassByName(object.astNode.name);
-
-            if (classNodeOpt.isPresent()) {
-                ClassNode classNode = classNodeOpt.get();
-                // Loop through the methods in the class and check for a match
-                for (MethodDeclarationNode method : classNode.methods) {
-                    if (doesMatch(method, mc, parameters)) {
-                        return method;
-                    }
-                }
-            }
+            return getMethodFromObject(mc, object, mc.methodName, parameters);
+        }
 
-            throw new RuntimeException("Unable to resolve method call " + mc);
+        /**
+         * getMethodFromObject() for a call site that is not a MethodCallStatementNode (the getNext() call of an iterator loop).
+         */
+        private MethodDeclarationNode getMethodFromObject(Node site, ObjectIDT object, String methodName, List<InterpreterDataType> parameters) {
+            // The object already knows its class - no need to look it up by name
+            return linkMethod(site, object.astNode, methodName, parameters);
         }
 
         /**
-         * Find a class, given the name. Just loops over the TranNode's classes member, matching by name.
-         * <p>
-         * Loop over each class in the top node, comparing names to find a match.
+         * Find a class, given the name. A hash lookup in the ClassTable built by the constructor.
          *
          * @param name Name of the class to find
          * @return either a class node or empty if that class doesn't exist
          */
-        private Optional<ClassNode> getClassByName(String name) {
-            // Assuming tranNode holds the top-level node that contains the list of classes.
-            for (ClassNode classNode : top.Classes) {
-                if (classNode.name.equals(name)) {
-                    return Optional.of(classNode);
-                }
-            }
-            return Optional.empty();
+        Optional<ClassNode> getClassByName(String name) {
+            return classTable.getClass(name);
         }
 
         /**
@@ -831,7 +973,7 @@ public class Interpreter {
          * @param object - the current object (so we can find members)
          * @return the IDT that we are looking for or throw an exception
          */
-        private InterpreterDataType findVariable(String name, HashMap<String, InterpreterDataType> locals, Optional<ObjectIDT> object) {
+        private InterpreterDataType findVariable(String name, Frame locals, Optional<ObjectIDT> object) {
             // Check locals first
             // Check if the variable exists in the locals
             if (locals.containsKey(name)) {
@@ -839,12 +981,240 @@ public class Interpreter {
             }
 
             // Check if the variable exists in the object's members
-            if (object.isPresent() && object.get().members.containsKey(name)) {
-                return object.get().members.get(name);
+            if (object.isPresent() && object.get().hasMember(name)) {
+                return object.get().getMember(name);
             }
             throw new RuntimeException("Unable to find variable " + name);
         }
 
+        /**
+         * Like findVariable(), but returns null instead of throwing - used to tell "obj.method()" from "SomeClass.method()".
+         */
+        private InterpreterDataType lookupVariable(String name, Frame locals, Optional<ObjectIDT> object) {
+            if (locals.containsKey(name)) {
+                return locals.get(name);
+            }
+            if (object.isPresent() && object.get().hasMember(name)) {
+                return object.get().getMember(name);
+            }
+            return null;
+        }
+
+        /**
+         * Store a value into a variable - a member of the current object if there is one by that name, otherwise a local.
+         */
+        void assignVariable(VariableReferenceNode target, InterpreterDataType value, Frame locals, Optional<ObjectIDT> object) {
+            FrameLayout.Reference resolved = locals.getLayout().reference(target);
+            if (resolved != null) {
+                int member = memberSlot(resolved, object);
+                if (member >= 0) {
+                    object.get().set(member, value);
+                } else if (resolved.slot() >= 0) {
+                    locals.set(resolved.slot(), value);
+                } else {
+                    throw new RuntimeException("Variable not found: " + target.name);
+                }
+            } else if (object.isPresent() && object.get().hasMember(target.name)) {
+                object.get().setMember(target.name, value);
+            } else {
+                locals.put(target, value);
+            }
+        }
+
+        /**
+         * The member slot a resolved reference names in the current object, -1 if it is not a member (or there is no
+         * object) - a shape check in the reference's FieldSite, no hashing once the site has seen this shape.
+         */
+        private int memberSlot(FrameLayout.Reference resolved, Optional<ObjectIDT> object) {
+            return resolved.member() != null && object.isPresent() ? resolved.member().slotIn(object.get()) : -1;
+        }
+
+        /**
+         * Make a new object of a class (for "new") and give every member its first value: a local or member of the
+         * caller with the same name, otherwise the default for its type.
+         *
+         * @param classNode - the class to make
+         * @param locals    - the caller's local variables
+         * @param object    - the caller's object (might be empty)
+         * @return the new object, before any constructor has run
+         */
+        ObjectIDT newObject(ClassNode classNode, Frame locals, Optional<ObjectIDT> object) {
+            ObjectIDT newObject = new ObjectIDT(classNode, classTable.shapeOf(classNode));
+            for (MemberNode member : classNode.members) {
+                String memberName = member.declaration.name;
+                InterpreterDataType memberValue;
+
+                // Attempt to initialize from locals or the current object
+                if (locals.containsKey(memberName)) {
+                    memberValue = locals.get(memberName);
+                } else if (object.isPresent() && object.get().hasMember(memberName)) {
+                    memberValue = object.get().getMember(memberName);
+                } else {
+                    // Use a default value or throw an error if uninitialized
+                    memberValue = instantiate(member.declaration.type);
+                }
+                newObject.setMember(memberName, memberValue);
+            }
+            return newObject;
+        }
+
+        /**
+         * Does "new" with this many parameters run a constructor? (without one, it only makes the object)
+         */
+        boolean hasConstructor(ClassNode classNode, int parameterCount) {
+            return !classTable.constructors(classNode, parameterCount).isEmpty();
+        }
+
+        /**
+         * The constructor "new" runs for these values: the only one with that parameter count, or - when there are
+         * overloads - the best match for the argument types, resolved once per site and type tuple.
+         *
+         * @param site      - the NewNode (or call) making the object
+         * @param classNode - the class being made
+         * @param arguments - the evaluated parameters
+         * @return the constructor, or empty if there is none for this count or none takes these types
+         */
+        Optional<ConstructorNode> constructorFor(Node site, ClassNode classNode, List<InterpreterDataType> arguments) {
+            List<ConstructorNode> constructors = classTable.constructors(classNode, arguments.size());
+            if (constructors.size() <= 1) {
+                return constructors.isEmpty() ? Optional.empty() : Optional.of(constructors.get(0));
+            }
+            return Optional.ofNullable(overloads.constructor(site, classNode, constructors, arguments));
+        }
+
+        //the shared value of a literal - same instance for every engine
+        NumberIDT literal(NumericLiteralNode literal) {
+            return values.constant(literal);
+        }
+
+        StringIDT literal(StringLiteralNode literal) {
+            return values.constant(literal);
+        }
+
+        /**
+         * Can a loop iterate over this object? (does its class have a getNext()?)
+         */
+        boolean isIterator(ObjectIDT object) {
+            return classTable.hasMethod(object.astNode, "getNext");
+        }
+
+        /**
+         * Is this expression always true or false (a literal, comparison, and/or or not)? A loop over one of these
+         * is a boolean loop without having to evaluate it first to see if it is an iterator.
+         */
+        static boolean isCondition(ExpressionNode expression) {
+            return expression instanceof BooleanLiteralNode || expression instanceof CompareNode
+                    || expression instanceof BooleanOpNode || expression instanceof NotOpNode;
+        }
+
+        /**
+         * The value of a condition that was evaluated as a value (a variable, a method call) - every engine fails the
+         * same way when it isn't a boolean.
+         */
+        static boolean truth(InterpreterDataType value) {
+            if (value instanceof BooleanIDT bool) {
+                return bool.Value;
+            }
+            throw new RuntimeException("Boolean operation on non-boolean types");
+        }
+
+        /**
+         * Call getNext() on an iterator object. The loop itself is the call site for the inline cache.
+         *
+         * @return (was there another?, the next value)
+         */
+        List<InterpreterDataType> callGetNext(LoopNode loopNode, ObjectIDT iterator) {
+            MethodDeclarationNode getNext = getMethodFromObject(loopNode, iterator, "getNext", List.of());
+            return interpretMethodCall(Optional.of(iterator), getNext, List.of());
+        }
+
+        /**
+         * Run a method or constructor body. In CLOSURE_COMPILED mode the body is compiled the first time it runs and
+         * the compiled version is reused after that; REGISTER_VM does the same with register code (newFrame() already
+         * lowered it, to size the frame). Every other mode walks the AST with interpretStatementBlock().
+         *
+         * @param object     - the object the body runs in (might be empty for shared)
+         * @param body       - the MethodDeclarationNode or ConstructorNode the statements belong to
+         * @param statements - the body's statements
+         * @param locals     - the frame made by newFrame()
+         */
+        private void runBody(Optional<ObjectIDT> object, Node body, List<StatementNode> statements, Frame locals) {
+            if (mode == ExecutionMode.REGISTER_VM) {
+                if (machine == null) {//not in the constructor - the machine holds on to this interpreter
+                    machine = new RegisterMachine(this);
+                }
+                machine.run(registerCode(body, statements, locals.getLayout()), object, locals);
+                return;
+            }
+            if (mode != ExecutionMode.CLOSURE_COMPILED) {
+                interpretStatementBlock(object, statements, locals);
+                return;
+            }
+            CompiledStatement compiled = compiledBodies.get(body);
+            if (compiled == null) {
+                if (compiler == null) {//not in the constructor - the compiler holds on to this interpreter
+                    compiler = new ClosureCompiler(this);
+                }
+                compiled = compiler.compileBody(statements, locals.getLayout());
+                compiledBodies.put(body, compiled);
+            }
+            compiled.execute(object, locals);
+        }
+
+        /**
+         * Make the local variables for a method or constructor about to run, with its parameters set.
+         * In SLOT_FRAMES and CLOSURE_COMPILED modes the frame uses the layout SlotResolver built in the constructor;
+         * in NAMED_LOCALS mode (or for a body we never resolved) everything is kept by name.
+         * In REGISTER_VM mode the frame also has room for the body's temporary registers.
+         * Either way the declarations mean the same thing: a return value with a parameter's name is that parameter,
+         * every other return value and every local starts out null - even one that shadows a parameter.
+         *
+         * @param body - the MethodDeclarationNode or ConstructorNode being called
+         * @return the frame for that body
+         */
+        private Frame newFrame(Node body, List<VariableDeclarationNode> parameters, List<VariableDeclarationNode> returns,
+                               List<VariableDeclarationNode> declaredLocals, List<InterpreterDataType> values) {
+            FrameLayout layout = layouts.get(body);
+            if (layout == null) {
+                layout = FrameLayout.EMPTY;
+            }
+            Frame locals;
+            if (mode == ExecutionMode.REGISTER_VM) {
+                List<StatementNode> statements = body instanceof MethodDeclarationNode m ? m.statements
+                        : ((ConstructorNode) body).statements;
+                locals = new Frame(layout, registerCode(body, statements, layout).registers());
+            } else {
+                locals = new Frame(layout);
+            }
+            for (int i = 0; i < values.size(); i++) {
+                locals.putParameter(i, parameters.get(i).name, values.get(i));
+            }
+            if (layout == FrameLayout.EMPTY) {//slot frames already have the rest, as null
+                for (VariableDeclarationNode returnValue : returns) {
+                    if (!locals.containsKey(returnValue.name)) {
+                        locals.put(returnValue.name, null);
+                    }
+                }
+                for (VariableDeclarationNode local : declaredLocals) {
+                    locals.put(local.name, null);
+                }
+            }
+            return locals;
+        }
+
+        //the body's register code, lowered the first time it is asked for
+        private RegisterCode registerCode(Node body, List<StatementNode> statements, FrameLayout layout) {
+            RegisterCode code = registerBodies.get(body);
+            if (code == null) {
+                if (registerCompiler == null) {
+                    registerCompiler = new RegisterCompiler(this);
+                }
+                code = registerCompiler.compileBody(statements, layout);
+                registerBodies.put(body, code);
+            }
+            return code;
+        }
+
         /**
          * Given a string (the type name), make an IDT for it.
          *
@@ -854,13 +1224,13 @@ public class Interpreter {
         private InterpreterDataType instantiate(String type) {
             switch (type.toLowerCase()) {
                 case "number":
-                    return new NumberIDT(0); //  numeric values
+                    return ValueCache.number(0); //  numeric values
                 case "string":
                     return new StringIDT(""); //  strings
                 case "boolean":
-                    return new BooleanIDT(false); //  boolean values
+                    return ValueCache.FALSE; //  boolean values
                 case "char":
-                    return new CharIDT(' '); // characters
+                    return ValueCache.character(' '); // characters
                 default:
                     return new ReferenceIDT(); // unsupported types
             }
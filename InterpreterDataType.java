@@ -1,5 +1,10 @@
 package Interpreter;
 
+/**
+ * A value at run time. The interpreter treats values as immutable: assigning to a variable or member rebinds it to
+ * a different value, so values can be shared (see ValueCache). Assign() copies another value into this one in place,
+ * and shared values refuse it.
+ */
 public interface InterpreterDataType {
     public void Assign(InterpreterDataType in);
 }
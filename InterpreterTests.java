@@ -1,11 +1,35 @@
+import AST.AssignmentNode;
+import AST.BooleanLiteralNode;
 import AST.BuiltInMethodDeclarationNode;
+import AST.ClassNode;
+import AST.IfNode;
+import AST.LoopNode;
+import AST.MethodCallExpressionNode;
+import AST.MethodDeclarationNode;
+import AST.NumericLiteralNode;
+import AST.VariableDeclarationNode;
 import AST.TranNode;
 import Interpreter.Interpreter;
 import Interpreter.ConsoleWrite;
+import Interpreter.ConstantFolder;
+import Interpreter.ExecutionMode;
+import Interpreter.FieldSite;
+import Interpreter.CallSiteCache;
+import Interpreter.ClassTable;
+import Interpreter.FlatAst;
+import Interpreter.BooleanIDT;
+import Interpreter.NumberIDT;
+import Interpreter.ObjectIDT;
+import Interpreter.OverloadResolver;
+import Interpreter.ReferenceIDT;
+import Interpreter.StringIDT;
+import Interpreter.ValueCache;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 public class InterpreterTests {
     @Test
@@ -85,6 +109,751 @@ public class InterpreterTests {
         Assertions.assertEquals("12.0",c.getFirst());
     }
 
+    @Test
+    public void RepeatedMethodCalls() {
+        String program = """
+                class SimpleAdd
+                    number x
+                    number y
+
+                    construct()
+                        x = 6
+                        y = 6
+
+                    add()
+                        number z
+                        z = x + y
+                        console.write(z)
+
+                    shared start()
+                        SimpleAdd t
+                        t = new SimpleAdd()
+                        t.add()
+                        t.add()
+                        t.add()
+
+                """;
+        var tranNode = run(program);
+        var c = getConsole(tranNode);
+        Assertions.assertEquals(3,c.size());
+        Assertions.assertEquals("12.0",c.getFirst());
+        Assertions.assertEquals("12.0",c.getLast());
+    }
+
+    @Test
+    public void CallSiteCacheGoesMegamorphic() {
+        var cache = new CallSiteCache();
+        var receivers = new ArrayList<ClassNode>();
+        var targets = new ArrayList<MethodDeclarationNode>();
+        for (int i = 0; i <= CallSiteCache.POLYMORPHIC_LIMIT; i++) {
+            receivers.add(new ClassNode());
+            targets.add(new MethodDeclarationNode());
+            cache.fill(receivers.get(i), targets.get(i), 0);
+        }
+        //the first four are kept, the fifth tips the site over and is not
+        for (int i = 0; i < CallSiteCache.POLYMORPHIC_LIMIT; i++) {
+            Assertions.assertSame(targets.get(i), cache.lookup(receivers.get(i), 0));
+        }
+        Assertions.assertNull(cache.lookup(receivers.get(CallSiteCache.POLYMORPHIC_LIMIT), 0));
+        Assertions.assertTrue(cache.isMegamorphic());
+
+        //a new class table version empties it, megamorphic or not
+        Assertions.assertNull(cache.lookup(receivers.get(0), 1));
+        cache.fill(receivers.get(0), targets.get(0), 1);
+        Assertions.assertFalse(cache.isMegamorphic());
+        Assertions.assertSame(targets.get(0), cache.lookup(receivers.get(0), 1));
+    }
+
+    @Test
+    public void CallSiteWithManyReceiverClasses() throws Exception {
+        String teller = """
+                class Teller
+                    tell()
+                        t.say()
+
+                    shared start()
+                        Teller teller
+                        A a
+                        B b
+                        C c
+                        D d
+                        E e
+                        teller = new Teller()
+                        a = new A()
+                        b = new B()
+                        c = new C()
+                        d = new D()
+                        e = new E()
+                        teller.tell(a)
+                        teller.tell(b)
+                        teller.tell(c)
+                        teller.tell(d)
+                        teller.tell(e)
+                        teller.tell(a)
+                        teller.tell(e)
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            //"t.say()" sees five receiver classes - one more than the site caches - and must still run each one's say()
+            var tran = tellerProgram(teller);
+            var interpreter = new Interpreter(tran, mode);
+            interpreter.start();
+            Assertions.assertEquals(List.of("A", "B", "C", "D", "E", "A", "E"), getConsole(tran), mode.toString());
+
+            //the site is linked to A's say() now - give A a new one, in the same ClassNode, and it has to be found
+            var newSay = new TranNode();
+            new Parser(newSay, new Lexer(sayer("A", "new A")).Lex()).Tran();
+            var a = tran.Classes.stream().filter(c -> c.name.equals("A")).findFirst().orElseThrow();
+            a.methods.set(0, newSay.Classes.getFirst().methods.getFirst());
+            interpreter.classesChanged();
+            getConsole(tran).clear();
+            interpreter.start();
+            Assertions.assertEquals(List.of("new A", "B", "C", "D", "E", "new A", "E"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void DuplicateMethod() {
+        String program = """
+                class SimpleAdd
+
+                    add()
+                        number x
+                        x = 6
+                        console.write(x)
+
+                    add()
+                        number x
+                        x = 7
+                        console.write(x)
+
+                    shared start()
+                        number y
+                        y = 1
+                        console.write(y)
+                """;
+        var e = Assertions.assertThrows(RuntimeException.class, () -> run(program));
+        Assertions.assertTrue(e.getMessage().contains("Duplicate method 'add()' in class SimpleAdd"));
+        //found the same way in a FlatAst, without loading the program
+        var tran = new TranNode();
+        try {
+            new Parser(tran, new Lexer(program).Lex()).Tran();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        Assertions.assertEquals(List.of("Duplicate method 'add()' in class SimpleAdd"), ClassTable.check(FlatAst.of(tran)));
+    }
+
+    @Test
+    public void RepeatedMethodCallsClosureCompiled() {
+        String program = """
+                class SimpleAdd
+                    number x
+                    number y
+
+                    construct()
+                        x = 6
+                        y = 6
+
+                    add()
+                        number z
+                        z = x + y
+                        console.write(z)
+
+                    shared start()
+                        SimpleAdd t
+                        t = new SimpleAdd()
+                        t.add()
+                        t.add()
+                        t.add()
+
+                """;
+        var compiled = getConsole(run(program, ExecutionMode.CLOSURE_COMPILED));
+        var walked = getConsole(run(program, ExecutionMode.SLOT_FRAMES));
+        Assertions.assertEquals(3,compiled.size());
+        Assertions.assertEquals("12.0",compiled.getFirst());
+        Assertions.assertEquals(walked,compiled);
+    }
+
+    @Test
+    public void LoopRegisterVM() {
+        String program = """
+                class Counter
+                    number n
+
+                    construct()
+                        n = 0
+
+                    count()
+                        boolean going
+                        loop going = n < 5
+                            n = n + 1
+                            console.write(n % 3, n / 2)
+                        console.write(n * 2 - 1, going)
+
+                    shared start()
+                        Counter t
+                        t = new Counter()
+                        t.count()
+                """;
+        var lowered = getConsole(run(program, ExecutionMode.REGISTER_VM));
+        var walked = getConsole(run(program, ExecutionMode.SLOT_FRAMES));
+        Assertions.assertEquals(6, lowered.size());
+        Assertions.assertEquals("2.02.5", lowered.get(4));
+        Assertions.assertEquals("9.0true", lowered.getLast());
+        Assertions.assertEquals(walked, lowered);
+    }
+
+    @Test
+    public void ConstantFolding() throws Exception {
+        String program = """
+                class Folded
+                    number x
+
+                    shared start()
+                        number y
+                        boolean b
+                        y = 2 * 3 + 17 % 5
+                        b = 4 >= 4 and true or not (1 < 2)
+                        console.write(y, b, 10 / 4 - 1)
+                        if 1 == 2
+                            console.write(2)
+                        if 3 > 4
+                            console.write(0)
+                        else
+                            console.write(1)
+                """;
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        var start = tran.Classes.getFirst().methods.getFirst();
+        Assertions.assertEquals(14, ConstantFolder.fold(tran));
+        Assertions.assertEquals(4, start.statements.size());
+        Assertions.assertInstanceOf(NumericLiteralNode.class, ((AssignmentNode) start.statements.get(0)).expression);
+        Assertions.assertInstanceOf(BooleanLiteralNode.class, ((AssignmentNode) start.statements.get(1)).expression);
+        var taken = (IfNode) start.statements.get(3);
+        Assertions.assertTrue(((BooleanLiteralNode) taken.condition).value);
+        Assertions.assertTrue(taken.elseStatement.isEmpty());
+        Assertions.assertEquals(0, ConstantFolder.fold(tran));
+
+        new Interpreter(tran).start();
+        Assertions.assertEquals(List.of("8.0true1.5", "1.0"), getConsole(tran));
+    }
+
+    @Test
+    public void ShortCircuitConditions() {
+        String program = """
+                class Guard
+                    check() : boolean ok
+                        console.write("check")
+                        ok = true
+
+                    shared start()
+                        Guard g
+                        boolean no
+                        boolean b
+                        boolean keepGoing
+                        number n
+                        g = new Guard()
+                        no = false
+                        b = no and g.check()
+                        console.write(b)
+                        b = not no or g.check()
+                        console.write(b)
+                        b = no or g.check()
+                        console.write(b)
+                        n = 0
+                        loop not (n >= 3)
+                            n = n + 1
+                        console.write(n)
+                        keepGoing = true
+                        loop keepGoing
+                            n = n + 1
+                            keepGoing = n < 5
+                        console.write(n)
+                        if no and g.check()
+                            console.write("then")
+                        else
+                            console.write("else")
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var c = getConsole(run(program, mode));
+            //check() only runs when the left side of the or doesn't decide it
+            Assertions.assertEquals(List.of("false", "true", "check", "true", "3.0", "5.0", "else"), c, mode.toString());
+        }
+        //a loop with nothing to test is an error in every engine, not a crash
+        var loop = new LoopNode();
+        loop.assignment = Optional.empty();
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            try {
+                new Parser(tran, new Lexer(program).Lex()).Tran();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            tran.Classes.getFirst().methods.getLast().statements.addFirst(loop);
+            var e = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(tran, mode).start(), mode.toString());
+            Assertions.assertEquals("Loop without a condition", e.getMessage(), mode.toString());
+        }
+    }
+
+    @Test
+    public void TypeCheckedRun() {
+        String program = """
+                class Counter
+                    number n
+
+                    construct()
+                        n = 0
+
+                    count() : number total
+                        boolean going
+                        loop going = n < 3
+                            n = n + 1
+                        total = n * 10
+
+                    shared start()
+                        Counter t
+                        number result
+                        t = new Counter()
+                        result = t.count()
+                        console.write(result, t.count() + 1)
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            try {
+                new Parser(tran, new Lexer(program).Lex()).Tran();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            new Interpreter(tran, mode, true).start();
+            Assertions.assertEquals(List.of("30.031.0"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void TypeErrorsBeforeRunning() throws Exception {
+        String program = """
+                class Broken
+                    number n
+
+                    construct()
+                        n = "five"
+
+                    total() : number t
+                        t = n + true
+
+                    shared start()
+                        Broken b
+                        boolean ok
+                        b = new Broken(3)
+                        ok = b.total()
+                        b.missing()
+                        console.write(m)
+                """;
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        var error = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(tran, ExecutionMode.SLOT_FRAMES, true));
+        Assertions.assertEquals("""
+                Type errors:
+                    Broken.construct(): can't assign string to number n
+                    Broken.total(): math on number and boolean
+                    Broken.start(): no constructor for Broken takes 1 parameters
+                    Broken.start(): can't assign number to boolean ok
+                    Broken.start(): no method missing() in class Broken
+                    Broken.start(): unknown variable m""", error.getMessage());
+    }
+
+    @Test
+    public void OverloadsPickedByArgumentTypes() throws Exception {
+        String byNumber = """
+                class Shows
+                    string made
+
+                    construct()
+                        made = "number"
+
+                    show()
+                        console.write(made, " shows a number ", n)
+
+                    shared start()
+                        Shows a
+                        Shows b
+                        a = new Shows(1)
+                        b = new Shows("one")
+                        a.show(2)
+                        b.show("two")
+                        a.show(3)
+                """;
+        String byString = """
+                class Shows
+                    string made
+
+                    construct()
+                        made = "string"
+
+                    show()
+                        console.write(made, " shows a string ", s)
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            new Parser(tran, new Lexer(byNumber).Lex()).Tran();
+            var overloads = new TranNode();
+            new Parser(overloads, new Lexer(byString).Lex()).Tran();
+            //the parser reads neither parameter lists nor a second constructor or method yet - put together
+            //construct(number m), construct(string m), show(number n) and show(string s) by hand
+            var shows = tran.Classes.getFirst();
+            shows.constructors.add(overloads.Classes.getFirst().constructors.getFirst());
+            shows.methods.add(1, overloads.Classes.getFirst().methods.getFirst());
+            shows.constructors.get(0).parameters.add(declaration("number", "m"));
+            shows.constructors.get(1).parameters.add(declaration("string", "m"));
+            shows.methods.get(0).parameters.add(declaration("number", "n"));
+            shows.methods.get(1).parameters.add(declaration("string", "s"));
+            new Interpreter(tran, mode).start();
+            Assertions.assertEquals(List.of("number shows a number 2.0", "string shows a string two",
+                    "number shows a number 3.0"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void TwoInterpretersOnOneTree() throws Exception {
+        String program = """
+                class SimpleAdd
+
+                    shared start()
+                        number x
+                        x = 6
+                        console.write(x + 6)
+                """;
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        new Interpreter(tran).start();
+        //the second one finds the console the first one added, instead of adding a second "console" class
+        new Interpreter(tran, ExecutionMode.CLOSURE_COMPILED).start();
+        Assertions.assertEquals(1, tran.Classes.stream().filter(c -> c.name.equals("console")).count());
+        Assertions.assertEquals(List.of("12.0", "12.0"), getConsole(tran));
+    }
+
+    @Test
+    public void MemberChangedByACall() throws Exception {
+        String program = """
+                class Ctr
+                    number x
+
+                    bump() : number r
+                        x = x + 1
+                        r = x
+
+                    run()
+                        number y
+                        x = 1
+                        y = bump()
+                        console.write(x, y)
+
+                    shared start()
+                        Ctr c
+                        c = new Ctr()
+                        c.run()
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            new Parser(tran, new Lexer(program).Lex()).Tran();
+            new Interpreter(tran, mode).start();
+            //x is only ever the member - reading it after bump() must not find an old copy in run()'s frame
+            Assertions.assertEquals(List.of("2.02.0"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void LocalShadowsParameter() throws Exception {
+        String program = """
+                class Shadow
+                    number seen
+
+                    construct()
+                        seen = 1
+
+                    twice() : number r
+                        x = 4
+                        r = x + x
+
+                    shared start()
+                        Shadow s
+                        number y
+                        s = new Shadow()
+                        y = s.twice(5)
+                        console.write(y)
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            //twice(number x) with a local number x, by hand - the parser reads neither a parameter list nor a local
+            //after the return values; the local is a second variable, not the parameter
+            var unassigned = shadow(program.replace("        x = 4\n", ""));
+            var e = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(unassigned, mode).start(), mode.toString());
+            //so until it is assigned it has no value, in every engine, the same as NAMED_LOCALS putting it as null
+            Assertions.assertEquals("Math operation on non-number types", e.getMessage(), mode.toString());
+            var tran = shadow(program);
+            new Interpreter(tran, mode).start();
+            Assertions.assertEquals(List.of("8.0"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void OverloadResolverCachesBySiteAndTypes() {
+        var resolver = new OverloadResolver();
+        var byNumber = new MethodDeclarationNode();
+        byNumber.parameters.add(declaration("number", "n"));
+        var byString = new MethodDeclarationNode();
+        byString.parameters.add(declaration("string", "s"));
+        var candidates = List.of(byNumber, byString);
+        var site = new MethodCallExpressionNode();
+
+        Assertions.assertSame(byString, resolver.method(site, null, candidates, List.of(new StringIDT("x"))));
+        Assertions.assertSame(byNumber, resolver.method(site, null, candidates, List.of(new NumberIDT(1))));
+        Assertions.assertSame(byString, resolver.method(site, null, candidates, List.of(new StringIDT("y"))));
+        Assertions.assertNull(resolver.method(site, null, candidates, List.of(ValueCache.TRUE)));
+    }
+
+    @Test
+    public void AmbiguousOverloadIsAnError() {
+        var resolver = new OverloadResolver();
+        var takesA = new MethodDeclarationNode();
+        takesA.name = "take";
+        takesA.parameters.add(declaration("A", "a"));
+        var takesB = new MethodDeclarationNode();
+        takesB.name = "take";
+        takesB.parameters.add(declaration("B", "b"));
+        var nothing = new ReferenceIDT();
+        nothing.refersTo = Optional.empty();
+        //an empty reference fits any class equally well - neither one may win just for being declared first
+        var e = Assertions.assertThrows(RuntimeException.class,
+                () -> resolver.method(new MethodCallExpressionNode(), null, List.of(takesA, takesB), List.of(nothing)));
+        Assertions.assertEquals("Ambiguous call: take(A) and take(B) both fit", e.getMessage());
+    }
+
+    @Test
+    public void ParameterTypesCheckedOnEveryCall() throws Exception {
+        String program = """
+                class Takes
+                    show()
+                        console.write(n)
+
+                    shared start()
+                        Takes t
+                        t = new Takes()
+                        t.show(1)
+                        t.show("one")
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            new Parser(tran, new Lexer(program).Lex()).Tran();
+            //show(number n) by hand - the parser reads no parameter lists
+            tran.Classes.getFirst().methods.getFirst().parameters.add(declaration("number", "n"));
+            //"number" means the same thing to a single method as it does to the OverloadResolver
+            var e = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(tran, mode).start(), mode.toString());
+            Assertions.assertEquals("Method call not found or not matching: show", e.getMessage(), mode.toString());
+            Assertions.assertEquals(List.of("1.0"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void SimpleAddBytecode() {
+        String program = """
+                class SimpleAdd
+
+                    shared start()
+                        number x
+                        number y
+                        number z
+
+                        x = 6
+                        y = 6
+                        z = x + y
+                        console.write(z)
+                """;
+        var tranNode = run(program, ExecutionMode.BYTECODE);
+        var c = getConsole(tranNode);
+        Assertions.assertEquals(1,c.size());
+        Assertions.assertEquals("12.0",c.getFirst());
+    }
+
+    @Test
+    public void BytecodeMembersAndCalls() throws Exception {
+        String program = """
+                class Ctr
+                    number x
+                    string s
+
+                    bump() : number r
+                        x = x + 1
+                        r = x
+
+                    two() : number a, string b
+                        a = x + 5
+                        b = s
+
+                    run()
+                        number y
+                        boolean b
+                        string t
+                        x = 1
+                        s = "hi"
+                        y = bump()
+                        b = 2 < bump()
+                        console.write(x, y, s, b)
+                        if x > 2
+                            console.write("big", x)
+                        y = x * bump() - 1
+                        console.write(y)
+                        loop x < 10
+                            x = x + 2
+                        console.write(x, bump())
+                        y, t = two()
+                        console.write(y, t)
+                        x = s
+                        y = x + 1
+                        console.write("not reached")
+
+                    shared start()
+                        Ctr c
+                        c = new Ctr()
+                        c.run()
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            new Parser(tran, new Lexer(program).Lex()).Tran();
+            //run() reads and writes members and calls bump() and two() - compiled in BYTECODE mode, and it has to agree
+            var e = Assertions.assertThrows(RuntimeException.class, () -> new Interpreter(tran, mode).start(), mode.toString());
+            Assertions.assertEquals("Math operation on non-number types", e.getMessage(), mode.toString());
+            Assertions.assertEquals(List.of("3.02.0hitrue", "big3.0", "11.0", "10.011.0", "16.0hi"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void NestedMathAndComparisons() {
+        String program = """
+                class Calc
+                    shared start()
+                        number a
+                        number b
+                        boolean c
+                        a = 3
+                        b = (a + 2) * (a - 1) / 4 - a % 2
+                        console.write(b)
+                        c = a * 2 > b + 1 and not b >= 10
+                        console.write(c)
+                        if (a + b) * 2 < (a - b) * 3 or a == 3
+                            console.write("yes")
+                        loop b * b <= a * 10 + 1
+                            b = b + 0.5 * (a - 1)
+                        console.write(b, a / 0 > 1, 0 - a / 0 < 1, 0 / 0 == 0 / 0, 0 / 0 != 0 / 0)
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            //whole trees of math and comparisons on unboxed floats - infinities and NaN compare like the boxed values did
+            var tran = run(program, mode);
+            Assertions.assertEquals(List.of("1.5", "true", "yes", "6.5truetruefalsetrue"), getConsole(tran), mode.toString());
+        }
+    }
+
+    @Test
+    public void ObjectsShareAShapeNotTheirMembers() throws Exception {
+        String program = """
+                class Point
+                    number x
+                    number y
+
+                    bump()
+                        x = x + 1
+                        y = y + x
+
+                    show()
+                        console.write(x, y)
+
+                    shared start()
+                        Point p
+                        Point q
+                        p = new Point()
+                        q = new Point()
+                        p.bump()
+                        p.bump()
+                        q.bump()
+                        p.show()
+                        q.show()
+                """;
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            var tran = new TranNode();
+            new Parser(tran, new Lexer(program).Lex()).Tran();
+            var interpreter = new Interpreter(tran, mode);
+            interpreter.start();
+            //a new class table makes new shapes - the member sites have to find x and y again in the new objects
+            interpreter.classesChanged();
+            interpreter.start();
+            Assertions.assertEquals(List.of("2.03.0", "1.01.0", "2.03.0", "1.01.0"), getConsole(tran), mode.toString());
+        }
+
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        var point = tran.Classes.getFirst();
+        var table = new ClassTable(tran);
+        var p = new ObjectIDT(point, table.shapeOf(point));
+        var q = new ObjectIDT(point, table.shapeOf(point));
+        Assertions.assertSame(p.shape, q.shape);
+        var x = new FieldSite("x");
+        p.set(x.slotIn(p), ValueCache.number(1));
+        q.set(x.slotIn(q), ValueCache.number(2));
+        Assertions.assertEquals("1.0", p.getMember("x").toString());
+        Assertions.assertEquals("2.0", q.getMember("x").toString());
+
+        var later = new ObjectIDT(point, new ClassTable(tran).shapeOf(point));
+        Assertions.assertNotSame(p.shape, later.shape);
+        later.set(x.slotIn(later), ValueCache.number(3));
+        Assertions.assertEquals("3.0", later.getMember("x").toString());
+        Assertions.assertEquals("1.0", p.getMember("x").toString());
+        Assertions.assertNull(later.getMember("y"));
+    }
+
+    @Test
+    public void SharedValuesAreNotChanged() {
+        Assertions.assertSame(ValueCache.number(12), ValueCache.number(12));
+        Assertions.assertSame(ValueCache.TRUE, ValueCache.bool(true));
+        Assertions.assertNotSame(ValueCache.number(0), ValueCache.number(-0.0f));
+        Assertions.assertThrows(RuntimeException.class, () -> ValueCache.TRUE.Assign(new BooleanIDT(false)));
+        Assertions.assertThrows(RuntimeException.class, () -> ValueCache.number(1).Assign(new NumberIDT(2)));
+        Assertions.assertTrue(ValueCache.TRUE.Value);
+        Assertions.assertEquals(1f, ValueCache.number(1).Value);
+
+        //a literal too big for the table still gets a value of its own that can't be changed
+        var literal = new NumericLiteralNode();
+        literal.value = 5000.5f;
+        var values = new ValueCache();
+        Assertions.assertSame(values.constant(literal), values.constant(literal));
+        Assertions.assertThrows(RuntimeException.class, () -> values.constant(literal).Assign(new NumberIDT(2)));
+        Assertions.assertEquals(5000.5f, values.constant(literal).Value);
+
+        //an ordinary value still can be
+        var number = new NumberIDT(1);
+        number.Assign(new NumberIDT(2));
+        Assertions.assertEquals(2f, number.Value);
+    }
+
+    @Test
+    public void SimpleAddNamedLocals() {
+        String program = """
+                class SimpleAdd
+
+                    shared start()
+                        number x
+                        number y
+                        number z
+
+                        x = 6
+                        y = 6
+                        z = x + y
+                        console.write(z)
+                """;
+        var tranNode = run(program, ExecutionMode.NAMED_LOCALS);
+        var c = getConsole(tranNode);
+        Assertions.assertEquals(1,c.size());
+        Assertions.assertEquals("12.0",c.getFirst());
+    }
+
     @Test
     public void Loop1() {
         String program = "class LoopOne\n" +
@@ -145,6 +914,48 @@ public class InterpreterTests {
         Assertions.assertEquals("bart simpson 30.0",c.getLast());
     }
 
+    @Test
+    public void FlatAstRoundTrip() throws Exception {
+        String program = """
+                class SimpleAdd
+                    number x
+                    number y
+
+                    construct()
+                        x = 6
+                        y = 6
+
+                    add()
+                        number z
+                        z = x + y
+                        console.write(z)
+
+                    shared start()
+                        SimpleAdd t
+                        t = new SimpleAdd()
+                        t.add()
+
+                """;
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        var flat = FlatAst.of(tran);
+        int[] variables = {0};
+        flat.walk(flat.root(), (ast, node) -> {
+            if (ast.kind(node) == FlatAst.Kind.VARIABLE) {
+                variables[0]++;
+            }
+            return true;
+        });
+        Assertions.assertEquals(7, variables[0]);
+
+        var rebuilt = flat.toTran();
+        Assertions.assertEquals(tran.toString(), rebuilt.toString());
+        new Interpreter(rebuilt).start();
+        var c = getConsole(rebuilt);
+        Assertions.assertEquals(1,c.size());
+        Assertions.assertEquals("12.0",c.getFirst());
+    }
+
     private static List<String> getConsole(TranNode tn) {
         for (var c : tn.Classes)
             if (c.name.equals("console")) {
@@ -157,7 +968,46 @@ public class InterpreterTests {
         throw new RuntimeException("Unable to find console");
     }
 
+    private static VariableDeclarationNode declaration(String type, String name) {
+        var declaration = new VariableDeclarationNode();
+        declaration.type = type;
+        declaration.name = name;
+        return declaration;
+    }
+
+    //twice(number x) with a local number x
+    private static TranNode shadow(String program) throws Exception {
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(program).Lex()).Tran();
+        var twice = tran.Classes.getFirst().methods.getFirst();
+        twice.parameters.add(declaration("number", "x"));
+        twice.locals.add(declaration("number", "x"));
+        return tran;
+    }
+
+    //Teller plus classes A to E, each a Sayer with a say() - the parser only reads one class with methods per source
+    private static TranNode tellerProgram(String teller) throws Exception {
+        var tran = new TranNode();
+        new Parser(tran, new Lexer(teller).Lex()).Tran();
+        for (String name : List.of("A", "B", "C", "D", "E")) {
+            var sayer = new TranNode();
+            new Parser(sayer, new Lexer(sayer(name, name)).Lex()).Tran();
+            tran.Classes.addAll(sayer.Classes);
+        }
+        //tell(Sayer t) by hand - the parser reads no parameter lists
+        tran.Classes.getFirst().methods.getFirst().parameters.add(declaration("Sayer", "t"));
+        return tran;
+    }
+
+    private static String sayer(String name, String says) {
+        return "class " + name + " implements Sayer\n    say()\n        console.write(\"" + says + "\")\n";
+    }
+
     private static TranNode run(String program) {
+        return run(program, ExecutionMode.SLOT_FRAMES);
+    }
+
+    private static TranNode run(String program, ExecutionMode mode) {
         var l  = new Lexer(program);
         try {
             var tokens = l.Lex();
@@ -165,7 +1015,7 @@ public class InterpreterTests {
             var p = new Parser(tran,tokens);
             p.Tran();
             System.out.println(tran.toString());
-            var i = new Interpreter(tran);
+            var i = new Interpreter(tran, mode);
             i.start();
             return tran;
         } catch (Exception e) {
@@ -1,147 +1,238 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.HashMap;
 
 public class Lexer {
+    //ASCII characters are classified by table, anything else falls back to Character.isLetter/isDigit
+    private static final byte OTHER = 0, LETTER = 1, DIGIT = 2;
+    private static final byte[] CLASSES = new byte[128];
+    private static final Token.TokenTypes[] PUNCTUATION = new Token.TokenTypes[128];
+    private static final KeywordNode KEYWORDS = new KeywordNode();
+
     private final TextManager textManager;//manages input text
-    private final HashMap<Character, Token.TokenTypes> punctuationMap;
-    private final HashMap<String, Token.TokenTypes> keywordsMap;
-    LinkedList<Token> ListOfTokens = new LinkedList<>();
+    ArrayList<Token> ListOfTokens = new ArrayList<>();
+    private final ArrayDeque<Token> pending = new ArrayDeque<>();//tokens lexed but not handed out yet
     private int previousIndent = 0;//holds indent for DEDENT cases
     private int lineNumber = 1;
     private int characterPosition = 1;
     private int currentIndentation = 0;
+    private TraceListener trace = TraceListener.fromSystemProperty();
+    private final NamePool names = new NamePool();//every WORD with the same name shares one String
 
     public Lexer(String text) {
         this.textManager = new TextManager(text);
-        this.keywordsMap = new HashMap<>();
-        this.punctuationMap = new HashMap<>();
-        initializePunctuationMap();
-        initializeKeywordsMap();
     }
 
-    //map to search for keywords instead of sort
-    private void initializeKeywordsMap() {
-        //Add keywords to the map
-        keywordsMap.put("if", Token.TokenTypes.IF);
-        keywordsMap.put("else", Token.TokenTypes.ELSE);
-        keywordsMap.put("class", Token.TokenTypes.CLASS);
-        keywordsMap.put("interface", Token.TokenTypes.INTERFACE);
-        keywordsMap.put("accessor", Token.TokenTypes.ACCESSOR);
-        keywordsMap.put("colon", Token.TokenTypes.COLON);
-        keywordsMap.put("mutator", Token.TokenTypes.MUTATOR);
-        keywordsMap.put("loop", Token.TokenTypes.LOOP);
-        keywordsMap.put("and", Token.TokenTypes.AND);
-        keywordsMap.put("or", Token.TokenTypes.OR);
-        keywordsMap.put("not", Token.TokenTypes.NOT);
-        keywordsMap.put("true", Token.TokenTypes.TRUE);
-        keywordsMap.put("false", Token.TokenTypes.FALSE);
-        keywordsMap.put("shared", Token.TokenTypes.SHARED);
-        keywordsMap.put("construct", Token.TokenTypes.CONSTRUCT);
-        keywordsMap.put("new", Token.TokenTypes.NEW);
-        keywordsMap.put("private", Token.TokenTypes.PRIVATE);
-        keywordsMap.put("implements", Token.TokenTypes.IMPLEMENTS);
+    public Lexer(Reader reader) {//streams the source instead of holding all of it
+        this.textManager = new TextManager(reader);
     }
 
-    //map of punctuation
-    private void initializePunctuationMap() {
-        punctuationMap.put('=', Token.TokenTypes.ASSIGN);
-        punctuationMap.put('>', Token.TokenTypes.GREATERTHAN);
-        punctuationMap.put('<', Token.TokenTypes.LESSTHAN);
-        punctuationMap.put('!', Token.TokenTypes.NOTEQUAL);
-        punctuationMap.put(':', Token.TokenTypes.COLON);
-        punctuationMap.put('(', Token.TokenTypes.LPAREN);
-        punctuationMap.put(')', Token.TokenTypes.RPAREN);
-        punctuationMap.put('.', Token.TokenTypes.DOT);
-        punctuationMap.put('+', Token.TokenTypes.PLUS);
-        punctuationMap.put('-', Token.TokenTypes.MINUS);
-        punctuationMap.put(',', Token.TokenTypes.COMMA);
-        punctuationMap.put('*', Token.TokenTypes.TIMES);
+    public Lexer(Path file) throws IOException {//maps the file rather than reading it onto the heap
+        this.textManager = TextManager.mapFile(file);
+    }
 
+    public Lexer(ByteBuffer utf8) {//source bytes the caller already has
+        this.textManager = TextManager.decode(utf8);
     }
 
-    public List<Token> Lex() throws Exception {//makes linked list of input
-        while (!textManager.isAtEnd()) {//loop
-            char c = textManager.getCharacter();//get single character from input
-
-            if (Character.isLetter(c)) {//if c is letter
-                ListOfTokens.add(parseWord(c));
-                System.out.println("Parsed token: " + ListOfTokens);
-            } else if (Character.isDigit(c)) {//if c is num
-                ListOfTokens.add(parseNumber(c));
-                System.out.println("Parsed token: " + ListOfTokens);
-            } else if (isPunctuation(c)) {//if c is punctuation
-                ListOfTokens.add(parsePunctuation(c));
-                System.out.println("Parsed token: " + ListOfTokens);
-            }else if( c=='&'||c=='|'){
-                ListOfTokens.add(parseand(c));
-            } else if (c == '\n') {
-                lineNumber++;
-                currentIndentation = 0;
-                characterPosition = 0;
-                ListOfTokens.add(new Token(Token.TokenTypes.NEWLINE, lineNumber, characterPosition));
-                System.out.println("Parsed token: " + ListOfTokens);
-                    ListOfTokens.addAll(parseNewline(c));
-                System.out.println("Parsed token: " + ListOfTokens);
-            } else if (c == '\t') {
-                characterPosition += 4;
-            } else if (c == '\"') {//start of quote
-                ListOfTokens.add(parseQuotedString());
-                System.out.println("Parsed token: " + ListOfTokens);
-            } else if (c == '\'') {//start of exact character
-                ListOfTokens.add(parseCharacter());
-                System.out.println("Parsed token: " + ListOfTokens);
-            } else if (c == '{') {
-                parseComment();
-            }
-            while(textManager.isAtEnd() && previousIndent > 0) {
-                previousIndent -= 4;
-                ListOfTokens.add(new Token(Token.TokenTypes.DEDENT, lineNumber, characterPosition));
-                System.out.println("Parsed token: " + ListOfTokens);
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = LETTER;
+            CLASSES[Character.toUpperCase(c)] = LETTER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+
+        PUNCTUATION['='] = Token.TokenTypes.ASSIGN;
+        PUNCTUATION['>'] = Token.TokenTypes.GREATERTHAN;
+        PUNCTUATION['<'] = Token.TokenTypes.LESSTHAN;
+        PUNCTUATION['!'] = Token.TokenTypes.NOTEQUAL;
+        PUNCTUATION[':'] = Token.TokenTypes.COLON;
+        PUNCTUATION['('] = Token.TokenTypes.LPAREN;
+        PUNCTUATION[')'] = Token.TokenTypes.RPAREN;
+        PUNCTUATION['.'] = Token.TokenTypes.DOT;
+        PUNCTUATION['+'] = Token.TokenTypes.PLUS;
+        PUNCTUATION['-'] = Token.TokenTypes.MINUS;
+        PUNCTUATION[','] = Token.TokenTypes.COMMA;
+        PUNCTUATION['*'] = Token.TokenTypes.TIMES;
+        PUNCTUATION['/'] = Token.TokenTypes.DIVIDE;
+        PUNCTUATION['%'] = Token.TokenTypes.MODULO;
+
+        KEYWORDS.add("if", Token.TokenTypes.IF);
+        KEYWORDS.add("else", Token.TokenTypes.ELSE);
+        KEYWORDS.add("class", Token.TokenTypes.CLASS);
+        KEYWORDS.add("interface", Token.TokenTypes.INTERFACE);
+        KEYWORDS.add("accessor", Token.TokenTypes.ACCESSOR);
+        KEYWORDS.add("colon", Token.TokenTypes.COLON);
+        KEYWORDS.add("mutator", Token.TokenTypes.MUTATOR);
+        KEYWORDS.add("loop", Token.TokenTypes.LOOP);
+        KEYWORDS.add("and", Token.TokenTypes.AND);
+        KEYWORDS.add("or", Token.TokenTypes.OR);
+        KEYWORDS.add("not", Token.TokenTypes.NOT);
+        KEYWORDS.add("true", Token.TokenTypes.TRUE);
+        KEYWORDS.add("false", Token.TokenTypes.FALSE);
+        KEYWORDS.add("shared", Token.TokenTypes.SHARED);
+        KEYWORDS.add("construct", Token.TokenTypes.CONSTRUCT);
+        KEYWORDS.add("new", Token.TokenTypes.NEW);
+        KEYWORDS.add("private", Token.TokenTypes.PRIVATE);
+        KEYWORDS.add("implements", Token.TokenTypes.IMPLEMENTS);
+    }
+
+    /**
+     * A trie of the keywords (all lower case letters). parseWord walks it while it reads the word, so by the end of
+     * the word it already knows whether it was a keyword.
+     */
+    private static class KeywordNode {
+        private final KeywordNode[] next = new KeywordNode[26];
+        private Token.TokenTypes type;//set if a keyword ends here
+
+        private void add(String keyword, Token.TokenTypes type) {
+            KeywordNode node = this;
+            for (char c : keyword.toCharArray()) {
+                if (node.next[c - 'a'] == null) {
+                    node.next[c - 'a'] = new KeywordNode();
+                }
+                node = node.next[c - 'a'];
             }
+            node.type = type;
+        }
+
+        //null once the word can't be a keyword any more
+        private KeywordNode step(char c) {
+            return c >= 'a' && c <= 'z' ? next[c - 'a'] : null;
         }
+    }
+
+    private static boolean isLetter(char c) {
+        return c < 128 ? CLASSES[c] == LETTER : Character.isLetter(c);
+    }
 
+    private static boolean isDigit(char c) {
+        return c < 128 ? CLASSES[c] == DIGIT : Character.isDigit(c);
+    }
+
+    public List<Token> Lex() throws Exception {//makes linked list of input
+        Token token;
+        while ((token = next()) != null) {
+            ListOfTokens.add(token);
+        }
         return ListOfTokens;//out all defined tokens from text
     }
 
+    //like Lex, but packs the tokens into a TokenBuffer instead of making a list of Token objects
+    public TokenBuffer LexToBuffer() throws Exception {
+        TokenBuffer buffer = new TokenBuffer();
+        Token token;
+        while ((token = next()) != null) {
+            buffer.add(token);
+        }
+        return buffer;
+    }
+
+    /**
+     * Pull the next token, reading only as much of the input as it takes to produce it.
+     * Returns null once the input is used up.
+     */
+    public Token next() throws Exception {
+        while (pending.isEmpty() && !textManager.isAtEnd()) {
+            lexCharacter();
+        }
+        Token token = pending.poll();
+        if (token != null && trace != TraceListener.NONE) {//the listener wants the value - don't make it for nothing
+            trace.tokenLexed(token.getType(), token.getLineNumber(), token.getColumnNumber(), token.getValue());
+        }
+        return token;
+    }
+
+    public void setTraceListener(TraceListener trace) {
+        this.trace = trace;
+    }
+
+    //one step of the lexer - some characters make no tokens, a newline can make several
+    private void lexCharacter() throws Exception {
+        textManager.mark();//a token that starts here can take its value straight from the source
+        char c = textManager.getCharacter();//get single character from input
+
+        if (isLetter(c)) {//if c is letter
+            pending.add(parseWord(c));
+        } else if (isDigit(c)) {//if c is num
+            pending.add(parseNumber(c));
+        } else if (isPunctuation(c)) {//if c is punctuation
+            pending.add(parsePunctuation(c));
+        }else if( c=='&'||c=='|'){
+            pending.add(parseand(c));
+        } else if (c == '\n') {
+            lineNumber++;
+            currentIndentation = 0;
+            characterPosition = 0;
+            pending.add(new Token(Token.TokenTypes.NEWLINE, lineNumber, characterPosition));
+                pending.addAll(parseNewline(c));
+        } else if (c == '\t') {
+            characterPosition += 4;
+        } else if (c == '\"') {//start of quote
+            pending.add(parseQuotedString());
+        } else if (c == '\'') {//start of exact character
+            pending.add(parseCharacter());
+        } else if (c == '{') {
+            parseComment();
+        }
+        while(textManager.isAtEnd() && previousIndent > 0) {
+            previousIndent -= 4;
+            pending.add(new Token(Token.TokenTypes.DEDENT, lineNumber, characterPosition));
+        }
+    }
+
 
     //Token management for words/letters
     private Token parseWord(char firstChar) throws Exception {
-        StringBuilder CurrentWord = new StringBuilder();//blank string
-        CurrentWord.append(firstChar);//adds character to new string
-        //easier to use string builder and append then initializing String Current Word
-        while (!textManager.isAtEnd() && Character.isLetter(textManager.peekCharacter())) {
-            CurrentWord.append(textManager.getCharacter());//starts word with character
+        KeywordNode keyword = KEYWORDS.step(firstChar);
+        char c;
+        while (!textManager.isAtEnd() && isLetter(c = textManager.peekCharacter())) {
+            if (keyword != null) {
+                keyword = keyword.step(c);
+            }
+            textManager.advance();
         }
-        String word = CurrentWord.toString();
-        if (keywordsMap.containsKey(word)) {
-            return new Token(keywordsMap.get(word), textManager.getLineNumber(),
+        if (keyword != null && keyword.type != null) {
+            return new Token(keyword.type, textManager.getLineNumber(),
                     textManager.getColumnNumber());
         } else {
             //return method with Token Type, Line, Column, and uses toString for print style
-            return new Token(Token.TokenTypes.WORD, textManager.getLineNumber(),
-                    textManager.getColumnNumber(), CurrentWord.toString());
+            return new Token(Token.TokenTypes.WORD, textManager.getLineNumber(), textManager.getColumnNumber(),
+                    names.intern(textManager.source(), textManager.markOffset(), textManager.offset()));
         }
     }
 
     private Token parseNumber(char firstChar) throws Exception {//in case of num
-        StringBuilder num = new StringBuilder();//num holder like parse word
-        num.append(firstChar);
         boolean period = false;//set to false until period/decimal
         while (!textManager.isAtEnd()) {//not at end of text
             char twoChar = textManager.peekCharacter();
-            if (Character.isDigit(twoChar)) {//two num in a row
-                num.append(textManager.getCharacter());
+            if (isDigit(twoChar)) {//two num in a row
+                textManager.advance();
             } else if (twoChar == '.' && !period) {//case of decimal
-                num.append(textManager.getCharacter());
+                textManager.advance();
                 period = true;
             } else {
                 break;
             }
         }
         //similar return to word, Instead new Token of NUMBER
-        return new Token(Token.TokenTypes.NUMBER, textManager.getLineNumber(),
-                textManager.getColumnNumber(), num.toString());
+        return sourceToken(Token.TokenTypes.NUMBER, textManager.getLineNumber(), textManager.getColumnNumber(),
+                textManager.markOffset(), textManager.offset());
+    }
+
+    //a token whose value is the source text between the offsets - only copied out if the source can change under it
+    private Token sourceToken(Token.TokenTypes type, int line, int column, int start, int end) {
+        if (textManager.holdsWholeSource()) {
+            return new Token(type, line, column, textManager.source(), start, end);
+        }
+        return new Token(type, line, column, textManager.text(start, end));
     }
     private Token parseand(char c) throws Exception {
         Token.TokenTypes type = null;
@@ -162,8 +253,8 @@ public class Lexer {
     //were looking at the next character after to see what Token it is
     private Token parsePunctuation(char c) throws Exception {
         Token.TokenTypes type;
-        if (punctuationMap.containsKey(c)) {
-            type = punctuationMap.get(c); //Get the token type from the map
+        if (isPunctuation(c)) {
+            type = PUNCTUATION[c]; //Get the token type from the table
             if (c == '=' && !textManager.isAtEnd() && textManager.peekCharacter() == '=') {
                 textManager.getCharacter();
                 type = Token.TokenTypes.EQUAL;
@@ -176,13 +267,12 @@ public class Lexer {
             } else if (c == '!' && !textManager.isAtEnd() && textManager.peekCharacter() == '=') {
                 textManager.getCharacter();
                 type = Token.TokenTypes.NOTEQUAL;
-            } else if (c == '.' && !textManager.isAtEnd() && Character.isDigit(textManager.peekCharacter())) {
-                StringBuilder num = new StringBuilder();
-                num.append(c);
-                while (!textManager.isAtEnd() && Character.isDigit(textManager.peekCharacter())) {
-                    num.append(textManager.getCharacter());
+            } else if (c == '.' && !textManager.isAtEnd() && isDigit(textManager.peekCharacter())) {
+                while (!textManager.isAtEnd() && isDigit(textManager.peekCharacter())) {
+                    textManager.advance();
                 }
-                return new Token(Token.TokenTypes.NUMBER, textManager.getLineNumber(), textManager.getColumnNumber(), num.toString());
+                return sourceToken(Token.TokenTypes.NUMBER, textManager.getLineNumber(), textManager.getColumnNumber(),
+                        textManager.markOffset(), textManager.offset());
 
             }
         } else {
@@ -192,7 +282,7 @@ public class Lexer {
     }
 
     private boolean isPunctuation(char c) {
-        return punctuationMap.containsKey(c);//defined punctuations
+        return c < 128 && PUNCTUATION[c] != null;//defined punctuations
     }
 
     //in case of tab
@@ -230,7 +320,7 @@ public class Lexer {
                     return returnVal;
                 }
                 return returnVal;
-            } else if (Character.isDigit(textManager.peekCharacter())) {//after newline immediately digit
+            } else if (isDigit(textManager.peekCharacter())) {//after newline immediately digit
                 if (previousIndent > currentIndentation) {
                     while (previousIndent > currentIndentation) {
                         previousIndent -= 4;
@@ -238,7 +328,7 @@ public class Lexer {
                     }
                 }
                 return returnVal;
-            } else if (Character.isLetter(textManager.peekCharacter())) {//after newline immediately letter
+            } else if (isLetter(textManager.peekCharacter())) {//after newline immediately letter
                 if (previousIndent > currentIndentation) {
                     while (previousIndent > currentIndentation) {
                         previousIndent -= 4;
@@ -309,7 +399,7 @@ public class Lexer {
     }
 
     private Token parseQuotedString() throws Exception {
-        StringBuilder QuotedString = new StringBuilder();//build blank string
+        StringBuilder QuotedString = null;//only needed once there is an escape to take out
         boolean escape = false;
         while (!textManager.isAtEnd()) {
             char c = textManager.getCharacter();//not peeking actually pulling character
@@ -318,16 +408,26 @@ public class Lexer {
                 QuotedString.append(c);
                 escape = false;
             } else if (c == '\\') {
+                if (QuotedString == null) {//copy what came before the escape
+                    int start = textManager.markOffset() + 1;
+                    QuotedString = new StringBuilder().append(textManager.source(), start, textManager.offset() - 1 - start);
+                }
                 escape = true;
             } else if (c == '\"') {
                 //proper case of string so we can return as quote
+                if (QuotedString == null) {
+                    return sourceToken(Token.TokenTypes.QUOTEDSTRING, lineNumber, characterPosition,
+                            textManager.markOffset() + 1, textManager.offset() - 1);
+                }
                 return new Token(Token.TokenTypes.QUOTEDSTRING, lineNumber, characterPosition, QuotedString.toString());
             } else if (c == '\n') {
                 //new lines inside the quoted string
                 lineNumber++;
                 characterPosition = 0;
-                QuotedString.append(c);
-            } else {
+                if (QuotedString != null) {
+                    QuotedString.append(c);
+                }
+            } else if (QuotedString != null) {
                 //this is important to return our text in quote as well as the quote token
                 QuotedString.append(c);
             }
@@ -347,6 +447,7 @@ public class Lexer {
     }
     private void parseComment() throws Exception {
         while (!textManager.isAtEnd()) {//comment case
+            textManager.mark();//nothing in a comment needs keeping
             char c = textManager.getCharacter();
             if (c == '}') {//end comment
                 textManager.getCharacter();
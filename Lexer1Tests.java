@@ -137,4 +137,152 @@ public class Lexer1Tests {
             Assertions.fail("exception occurred: " +  e.getMessage());
         }
     }
+
+    @Test
+    public void StreamingLexerTest() {
+        String program = "class Tran\n\thelloWorld()\n\t\tx = 1.5 + 3\n\t\tconsole.write(\"hi\")\n";
+        try {
+            var expected = new Lexer(program).Lex();
+            var l = new Lexer(new java.io.StringReader(program));
+            for (var token : expected) {
+                var streamed = l.next();
+                Assertions.assertEquals(token.getType(), streamed.getType());
+                Assertions.assertEquals(token.getValue(), streamed.getValue());
+            }
+            Assertions.assertNull(l.next());
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void TraceListenerTest() {
+        var l = new Lexer("ab\ncd");
+        var seen = new LinkedList<String>();
+        l.setTraceListener(new TraceListener() {
+            @Override
+            public void tokenLexed(Token.TokenTypes type, int line, int column, String value) {
+                seen.add(type + " " + line + " " + value);
+            }
+        });
+        try {
+            l.Lex();
+            Assertions.assertEquals(3, seen.size());
+            Assertions.assertEquals("WORD 1 ab", seen.get(0));
+            Assertions.assertEquals("WORD 2 cd", seen.get(2));
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void KeywordPrefixLexerTest() {
+        var l = new Lexer("classy cla class \u00e9t\u00e9 loop");
+        try {
+            var res = l.Lex();
+            Assertions.assertEquals(5, res.size());
+            Assertions.assertEquals(Token.TokenTypes.WORD, res.get(0).getType());
+            Assertions.assertEquals("classy", res.get(0).getValue());
+            Assertions.assertEquals(Token.TokenTypes.WORD, res.get(1).getType());
+            Assertions.assertEquals(Token.TokenTypes.CLASS, res.get(2).getType());
+            Assertions.assertEquals("\u00e9t\u00e9", res.get(3).getValue());
+            Assertions.assertEquals(Token.TokenTypes.LOOP, res.get(4).getType());
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void StreamingTokenSpansReadsTest() {
+        String program = "class Tran\n\tveryLongVariableName = 123.456 + veryLongVariableName\n\t\tconsole.write(\"a \\\"quoted\\\" word\")\n";
+        try {
+            var expected = new Lexer(program).Lex();
+            var oneCharAtATime = new java.io.Reader() {
+                int at = 0;
+
+                @Override
+                public int read(char[] buffer, int offset, int length) {
+                    if (at == program.length()) {
+                        return -1;
+                    }
+                    buffer[offset] = program.charAt(at++);
+                    return 1;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+            var res = new Lexer(oneCharAtATime).Lex();
+            Assertions.assertEquals(expected, res);
+            var quoted = res.stream().filter(t -> t.getType() == Token.TokenTypes.QUOTEDSTRING).findFirst().get();
+            Assertions.assertEquals("a \"quoted\" word", quoted.getValue());
+            Assertions.assertSame(res.get(3).getValue(), res.get(7).getValue());
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void MappedFileLexerTest() {
+        String program = "class Tran\n\thelloWorld()\n\t\tgr\u00fc\u00dfe = \"h\u00e9llo\"\n";
+        try {
+            var file = java.nio.file.Files.createTempFile("lexer", ".tran");
+            java.nio.file.Files.writeString(file, program);
+            var expected = new Lexer(program).Lex();
+            Assertions.assertEquals(expected, new Lexer(file).Lex());
+            java.nio.file.Files.delete(file);
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void PeekDistanceTest() {
+        var text = new TextManager(new java.io.StringReader("abc"));
+        try {
+            Assertions.assertEquals('a', text.peekCharacter(0));
+            Assertions.assertEquals('c', text.peekCharacter(2));
+            Assertions.assertEquals('\0', text.peekCharacter(3));
+            text.getCharacter();
+            Assertions.assertEquals('c', text.peekCharacter(1));
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
+
+    @Test
+    public void TokenValuesStayLazyTest() {
+        try {
+            var lexer = new Lexer("x = 123.5 + \"hi\"\n");
+            lexer.setTraceListener(TraceListener.NONE);
+            Token token;
+            var valued = new java.util.ArrayList<Token>();
+            while ((token = lexer.next()) != null) {
+                if (token.getType() == Token.TokenTypes.NUMBER || token.getType() == Token.TokenTypes.QUOTEDSTRING) {
+                    valued.add(token);
+                }
+            }
+            Assertions.assertEquals(2, valued.size());
+            for (Token t : valued) {
+                Assertions.assertFalse(t.isValueMade(), t.getType() + " was copied out while lexing");
+            }
+
+            var buffer = new TokenBuffer();
+            valued.forEach(buffer::add);
+            Assertions.assertFalse(buffer.token(0).isValueMade());
+            Assertions.assertEquals("123.5", buffer.value(0));
+            Assertions.assertEquals("hi", buffer.value(1));
+            Assertions.assertFalse(valued.get(0).isValueMade());
+        }
+        catch (Exception e) {
+            Assertions.fail("exception occurred: " +  e.getMessage());
+        }
+    }
 }
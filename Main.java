@@ -1,7 +1,60 @@
+import Interpreter.ClassTable;
+import Interpreter.ConstantFolder;
+import Interpreter.ExecutionMode;
+import Interpreter.Interpreter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 public class Main {
+    //java Main a.tran b.tran ... - lex and parse every file (in parallel), then run the program they make up
     public static void main(String[] args) {
-        System.out.println("args has " + args.length + " arguments");
-        for (var a : args)
-            System.out.println("    " + a);
+        if (args.length == 0) {
+            System.err.println("usage: java Main <file.tran>...");
+            System.exit(2);
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(Path.of(arg));
+        }
+        String cacheDirectory = System.getProperty("tran.cache");//-Dtran.cache=dir reuses parses of unchanged files
+        FrontEnd frontEnd = cacheDirectory == null ? new FrontEnd()
+                : new FrontEnd(ForkJoinPool.commonPool(), new AstCache(Path.of(cacheDirectory)));
+        if (Boolean.getBoolean("tran.check")) {//-Dtran.check=true only parses and checks declarations, nothing runs
+            System.exit(check(frontEnd, files));
+        }
+        FrontEnd.Result result = frontEnd.parseAll(files);
+        if (!result.succeeded()) {
+            for (FrontEnd.SourceError error : result.errors()) {
+                System.err.println(error);
+            }
+            System.exit(1);
+        }
+        ConstantFolder.fold(result.program());
+        boolean typeChecked = Boolean.getBoolean("tran.typecheck");//-Dtran.typecheck=true reports type errors before running
+        Interpreter interpreter;
+        try {
+            interpreter = new Interpreter(result.program(), ExecutionMode.SLOT_FRAMES, typeChecked);
+        } catch (RuntimeException e) {//duplicate declarations, type errors - nothing has run yet
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        interpreter.start();
+    }
+
+    //the program is kept as a FlatAst throughout - no object tree for all of it is ever built
+    private static int check(FrontEnd frontEnd, List<Path> files) {
+        FrontEnd.FlatResult result = frontEnd.parseAllFlat(files);
+        for (FrontEnd.SourceError error : result.errors()) {
+            System.err.println(error);
+        }
+        List<String> diagnostics = ClassTable.check(result.program());
+        for (String diagnostic : diagnostics) {
+            System.err.println(diagnostic);
+        }
+        return result.succeeded() && diagnostics.isEmpty() ? 0 : 1;
     }
 }
@@ -0,0 +1,65 @@
+/**
+ * Interns names straight out of a char array, so a name the lexer has seen before costs a hash and a compare
+ * instead of a new String - and every use of a name ends up as the same String instance.
+ */
+public class NamePool {
+    private String[] table = new String[256];//open addressing, size is a power of two
+    private int count;
+
+    public String intern(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];//same as String.hashCode
+        }
+        int mask = table.length - 1;
+        int slot = spread(hash) & mask;
+        String name;
+        while ((name = table[slot]) != null) {
+            if (name.hashCode() == hash && sameChars(name, chars, start, end)) {
+                return name;
+            }
+            slot = (slot + 1) & mask;
+        }
+        name = new String(chars, start, end - start);
+        table[slot] = name;
+        if (++count * 2 > table.length) {
+            grow();
+        }
+        return name;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private static boolean sameChars(String name, char[] chars, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        String[] old = table;
+        table = new String[old.length * 2];
+        int mask = table.length - 1;
+        for (String name : old) {
+            if (name != null) {
+                int slot = spread(name.hashCode()) & mask;
+                while (table[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = name;
+            }
+        }
+    }
+}
@@ -2,14 +2,49 @@ package Interpreter;
 
 import AST.ClassNode;
 
-import java.util.HashMap;
-
+/**
+ * An object: its class, the shape of that class, and one value per member, in the shape's slots.
+ */
 public class ObjectIDT implements InterpreterDataType {
-    public final HashMap<String,InterpreterDataType> members = new HashMap<>();
     public final ClassNode astNode;
+    public final Shape shape;
+    private final InterpreterDataType[] members;
 
+    //for callers without a ClassTable - the interpreter always passes the class's shared shape
     public ObjectIDT(ClassNode astNode) {
+        this(astNode, new Shape(astNode));
+    }
+
+    public ObjectIDT(ClassNode astNode, Shape shape) {
         this.astNode = astNode;
+        this.shape = shape;
+        this.members = new InterpreterDataType[shape.size()];
+    }
+
+    public boolean hasMember(String name) {
+        return shape.slotOf(name) >= 0;
+    }
+
+    public InterpreterDataType getMember(String name) {
+        int slot = shape.slotOf(name);
+        return slot < 0 ? null : members[slot];
+    }
+
+    public void setMember(String name, InterpreterDataType value) {
+        int slot = shape.slotOf(name);
+        if (slot < 0) {
+            throw new RuntimeException("Class " + astNode.name + " has no member " + name);
+        }
+        members[slot] = value;
+    }
+
+    //by slot - for callers that already know the shape (FieldSite)
+    public InterpreterDataType get(int slot) {
+        return members[slot];
+    }
+
+    public void set(int slot, InterpreterDataType value) {
+        members[slot] = value;
     }
 
     @Override
@@ -20,8 +55,8 @@ public class ObjectIDT implements InterpreterDataType {
     @Override
     public String toString() {
         StringBuilder out = new StringBuilder();
-        for (var m : members.entrySet())
-            out.append(m.getKey()).append(" : ").append(m.getValue().toString()).append("\n");
+        for (int i = 0; i < members.length; i++)
+            out.append(shape.nameOf(i)).append(" : ").append(members[i].toString()).append("\n");
         return out.toString();
     }
 }
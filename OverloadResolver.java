@@ -0,0 +1,238 @@
+package Interpreter;
+
+import AST.BuiltInMethodDeclarationNode;
+import AST.ClassNode;
+import AST.ConstructorNode;
+import AST.MethodDeclarationNode;
+import AST.Node;
+import AST.VariableDeclarationNode;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Picks between overloads - methods or constructors with the same name and parameter count - from the types of the
+ * argument values, and remembers the pick for each call site (or "new") by receiver class and argument types, so a site
+ * that keeps passing the same kinds of values resolves once.
+ * <p>
+ * Every candidate is scored against the arguments: an exact type (number for a number, the object's own class) scores
+ * 2, an interface the object's class implements or an empty reference scores 1, a variadic built-in takes anything for
+ * 0, and anything else rules the candidate out. The highest total wins; a tie for the highest is an ambiguous call and
+ * throws. The same type names decide whether one method takes the values at all - see accepts().
+ * <p>
+ * Built per ClassTable - the Interpreter makes a new one when the classes change, which also empties every cache.
+ */
+public class OverloadResolver {
+    public static final int ENTRIES_PER_SITE = 8;
+
+    private final IdentityHashMap<Node, Site> sites = new IdentityHashMap<>();
+
+    /**
+     * The method of the candidates that best matches the arguments.
+     *
+     * @param site       - the call node, used as the cache key
+     * @param receiver   - the class dispatched on (null for none)
+     * @param candidates - the methods with the right name and parameter count
+     * @param arguments  - the argument values
+     * @return the best match, or null if none of them take these arguments (throws if two of them fit best)
+     */
+    public MethodDeclarationNode method(Node site, ClassNode receiver, List<MethodDeclarationNode> candidates,
+                                        List<InterpreterDataType> arguments) {
+        Site cache = sites.computeIfAbsent(site, s -> new Site());
+        Object target = cache.lookup(receiver, arguments);
+        if (target == null) {
+            int best = -1;
+            MethodDeclarationNode tied = null;
+            for (MethodDeclarationNode candidate : candidates) {
+                int score = candidate instanceof BuiltInMethodDeclarationNode builtIn && builtIn.isVariadic ? 0
+                        : score(candidate.parameters, arguments);
+                if (score > best) {
+                    best = score;
+                    target = candidate;
+                    tied = null;
+                } else if (score >= 0 && score == best) {
+                    tied = candidate;
+                }
+            }
+            if (target == null) {
+                return null;
+            }
+            if (tied != null) {
+                throw new RuntimeException("Ambiguous call: " + signature(tied.name, ((MethodDeclarationNode) target).parameters)
+                        + " and " + signature(tied.name, tied.parameters) + " both fit");
+            }
+            cache.fill(receiver, arguments, target);
+        }
+        return (MethodDeclarationNode) target;
+    }
+
+    /**
+     * The constructor of the candidates that best matches the arguments.
+     *
+     * @param site       - the NewNode, used as the cache key
+     * @param classNode  - the class being made
+     * @param candidates - its constructors with the right parameter count
+     * @param arguments  - the argument values
+     * @return the best match, or null if none of them take these arguments (throws if two of them fit best)
+     */
+    public ConstructorNode constructor(Node site, ClassNode classNode, List<ConstructorNode> candidates,
+                                       List<InterpreterDataType> arguments) {
+        Site cache = sites.computeIfAbsent(site, s -> new Site());
+        Object target = cache.lookup(classNode, arguments);
+        if (target == null) {
+            int best = -1;
+            ConstructorNode tied = null;
+            for (ConstructorNode candidate : candidates) {
+                int score = score(candidate.parameters, arguments);
+                if (score > best) {
+                    best = score;
+                    target = candidate;
+                    tied = null;
+                } else if (score >= 0 && score == best) {
+                    tied = candidate;
+                }
+            }
+            if (target == null) {
+                return null;
+            }
+            if (tied != null) {
+                throw new RuntimeException("Ambiguous new " + classNode.name + ": " + signature("construct", ((ConstructorNode) target).parameters)
+                        + " and " + signature("construct", tied.parameters) + " both fit");
+            }
+            cache.fill(classNode, arguments, target);
+        }
+        return (ConstructorNode) target;
+    }
+
+    /**
+     * Does a parameter of this type take this value? The one place type names ("number", "string", a class or
+     * interface name) are matched against values - the Interpreter's doesMatch() asks here, too.
+     */
+    static boolean accepts(String type, InterpreterDataType value) {
+        return score(type, value) >= 0;
+    }
+
+    //how well the values fit the parameters, or -1 if one of them doesn't fit at all
+    private static int score(List<VariableDeclarationNode> parameters, List<InterpreterDataType> arguments) {
+        if (parameters.size() != arguments.size()) {
+            return -1;
+        }
+        int total = 0;
+        int i = 0;
+        for (InterpreterDataType argument : arguments) {
+            int score = score(parameters.get(i++).type, argument);
+            if (score < 0) {
+                return -1;
+            }
+            total += score;
+        }
+        return total;
+    }
+
+    private static int score(String type, InterpreterDataType value) {
+        if (value instanceof ReferenceIDT reference) {
+            value = reference.refersTo == null ? null : reference.refersTo.orElse(null);
+        }
+        boolean primitive = isPrimitive(type);
+        if (value == null) {
+            return primitive ? -1 : 1;
+        }
+        if (value instanceof ObjectIDT object) {
+            if (primitive || object.astNode == null) {
+                return -1;
+            }
+            return object.astNode.name.equals(type) ? 2 : object.astNode.interfaces.contains(type) ? 1 : -1;
+        }
+        return switch (type) {
+            case "number" -> value instanceof NumberIDT ? 2 : -1;
+            case "string" -> value instanceof StringIDT ? 2 : -1;
+            case "boolean" -> value instanceof BooleanIDT ? 2 : -1;
+            case "character", "char" -> value instanceof CharIDT ? 2 : -1;
+            default -> -1;
+        };
+    }
+
+    private static String signature(String name, List<VariableDeclarationNode> parameters) {
+        return name + "(" + parameters.stream().map(p -> p.type).collect(Collectors.joining(", ")) + ")";
+    }
+
+    private static boolean isPrimitive(String type) {
+        return switch (type) {
+            case "number", "string", "boolean", "character", "char" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * What decides the overload for one value: its IDT class, or the ClassNode for an object (or a reference to one).
+     * Compared by identity - there is one of each.
+     */
+    private static Object typeKey(InterpreterDataType value) {
+        if (value instanceof ReferenceIDT reference && reference.refersTo != null && reference.refersTo.isPresent()) {
+            value = reference.refersTo.get();
+        }
+        if (value instanceof ObjectIDT object) {
+            return object.astNode;
+        }
+        //a ValueCache value is a subclass of its type - the same key as any other value of that type
+        if (value instanceof NumberIDT) {
+            return NumberIDT.class;
+        }
+        if (value instanceof StringIDT) {
+            return StringIDT.class;
+        }
+        if (value instanceof BooleanIDT) {
+            return BooleanIDT.class;
+        }
+        if (value instanceof CharIDT) {
+            return CharIDT.class;
+        }
+        return value == null ? null : value.getClass();
+    }
+
+    //one site's picks: receiver class + argument type keys -> target. Full sites stop learning and resolve every time
+    private static class Site {
+        private final ClassNode[] receivers = new ClassNode[ENTRIES_PER_SITE];
+        private final Object[][] keys = new Object[ENTRIES_PER_SITE][];
+        private final Object[] targets = new Object[ENTRIES_PER_SITE];
+        private int size = 0;
+
+        Object lookup(ClassNode receiver, List<InterpreterDataType> arguments) {
+            for (int i = 0; i < size; i++) {
+                if (receivers[i] == receiver && sameTypes(keys[i], arguments)) {
+                    return targets[i];
+                }
+            }
+            return null;
+        }
+
+        void fill(ClassNode receiver, List<InterpreterDataType> arguments, Object target) {
+            if (size == ENTRIES_PER_SITE) {
+                return;
+            }
+            Object[] key = new Object[arguments.size()];
+            int i = 0;
+            for (InterpreterDataType argument : arguments) {
+                key[i++] = typeKey(argument);
+            }
+            receivers[size] = receiver;
+            keys[size] = key;
+            targets[size] = target;
+            size++;
+        }
+
+        private static boolean sameTypes(Object[] key, List<InterpreterDataType> arguments) {
+            if (key.length != arguments.size()) {
+                return false;
+            }
+            int i = 0;
+            for (InterpreterDataType argument : arguments) {//getParameters() makes linked lists
+                if (key[i++] != typeKey(argument)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -2,40 +2,163 @@ import AST.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 
 public class Parser {
+    //bump whenever the same source parses to a different tree - AstCache keys its entries on this
+    public static final int VERSION = 3;
+
     private final TokenManager tokenManager;
     private final TranNode tranNode;
+    private TraceListener trace = TraceListener.fromSystemProperty();
+    private boolean recovering;//keep going after a syntax error - see TranRecovering()
+    private final List<SyntaxErrorException> diagnostics = new ArrayList<>();
+    private ClassNode partialClass;//the class being parsed, so what was parsed of it survives an error
 
     public Parser(TranNode top, List<Token> tokens) {
         this.tranNode = top;
         this.tokenManager = new TokenManager(tokens);
     }
 
+    public Parser(TranNode top, TokenBuffer tokens) {
+        this.tranNode = top;
+        this.tokenManager = new TokenManager(tokens);
+    }
+
+    //parse while the lexer is still reading - tokens are lexed as the parser gets to them
+    public Parser(TranNode top, Lexer lexer) {
+        this.tranNode = top;
+        this.tokenManager = new TokenManager(lexer);
+    }
+
+    public void setTraceListener(TraceListener trace) {
+        this.trace = trace;
+    }
+
     // Tran = { Class | Interface }
     public void Tran() throws SyntaxErrorException {
+        try {
+            TranBody();
+        } catch (TokenManager.LexingException e) {//only happens when streaming from a lexer
+            if (e.getCause() instanceof SyntaxErrorException syntaxError) {
+                throw syntaxError;
+            }
+            throw new SyntaxErrorException(e.getCause().getMessage(), -1, -1);
+        }
+    }
+
+    /**
+     * Parse the whole program, recording every syntax error instead of stopping at the first. After an error in a
+     * statement the parser skips to the next line; after any other error it skips to the next class or interface.
+     * The top node gets everything that could be parsed, including the part of a class before its error.
+     * Returns the errors in the order they were found - empty when the program is fine.
+     */
+    public List<SyntaxErrorException> TranRecovering() {
+        recovering = true;
+        try {
+            TranBody();
+        } catch (SyntaxErrorException e) {//not thrown while recovering - TranBody records them
+            diagnostics.add(e);
+        } catch (TokenManager.LexingException e) {//the lexer can't go on, so neither can the parser
+            diagnostics.add(e.getCause() instanceof SyntaxErrorException syntaxError ? syntaxError
+                    : new SyntaxErrorException(e.getCause().getMessage(), -1, -1));
+        }
+        return diagnostics;
+    }
+
+    public List<SyntaxErrorException> getDiagnostics() {
+        return diagnostics;
+    }
+
+    private void TranBody() throws SyntaxErrorException {
         while (!tokenManager.done()){
-            //make sure first two tokens are class and word
-            if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.CLASS, Token.TokenTypes.WORD) ){
-                Optional<ClassNode> classNode= Class();
-                tranNode.Classes.add(classNode.get());
-                //make sure first two tokens are interface and word
-            }else if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.INTERFACE, Token.TokenTypes.WORD)){
-                System.out.println("you made it to call interface");
-                //call parse interface
-                InterfaceNode interfaceNode = Interface()//input to AST
-                        .orElseThrow(() -> new SyntaxErrorException("Failed to create InterfaceNode",
-                                tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-                tranNode.Interfaces.add(interfaceNode);
-            }else{
-                throw new SyntaxErrorException("Expected class or interface"
-                        ,tokenManager.getCurrentLine()
-                        , tokenManager.getCurrentColumnNumber());
+            if (recovering) {
+                try {
+                    partialClass = null;
+                    declaration();
+                } catch (TokenManager.LexingException e) {
+                    throw e;
+                } catch (SyntaxErrorException | RuntimeException e) {
+                    record(e);
+                    if (partialClass != null) {
+                        tranNode.Classes.add(partialClass);
+                    }
+                    skipToDeclaration();
+                }
+            } else {
+                declaration();
             }
         }
     }
+
+    private void declaration() throws SyntaxErrorException {
+        //make sure first two tokens are class and word
+        if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.CLASS, Token.TokenTypes.WORD) ){
+            Optional<ClassNode> classNode= Class();
+            tranNode.Classes.add(classNode.get());
+            //make sure first two tokens are interface and word
+        }else if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.INTERFACE, Token.TokenTypes.WORD)){
+            //call parse interface
+            InterfaceNode interfaceNode = Interface()//input to AST
+                    .orElseThrow(() -> new SyntaxErrorException("Failed to create InterfaceNode",
+                            tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
+            tranNode.Interfaces.add(interfaceNode);
+        }else{
+            throw new SyntaxErrorException("Expected class or interface"
+                    ,tokenManager.getCurrentLine()
+                    , tokenManager.getCurrentColumnNumber());
+        }
+    }
+
+    //              Error recovery
+
+    //the parser doesn't turn every bad input into a SyntaxErrorException - an empty Optional or a missing token
+    //shows up as a NoSuchElementException - so those are recorded at the current token too
+    private void record(Exception e) {
+        if (e instanceof SyntaxErrorException syntaxError) {
+            diagnostics.add(syntaxError);
+        } else {
+            String found = tokenManager.peek(0).map(token -> token.getType().toString()).orElse("end of file");
+            diagnostics.add(new SyntaxErrorException("Unexpected " + found,
+                    tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
+        }
+    }
+
+    private boolean atDeclaration() {
+        return tokenManager.nextTwoTokensMatch(Token.TokenTypes.CLASS, Token.TokenTypes.WORD)
+                || tokenManager.nextTwoTokensMatch(Token.TokenTypes.INTERFACE, Token.TokenTypes.WORD);
+    }
+
+    //drop tokens up to the start of the next class or interface
+    private void skipToDeclaration() {
+        while (!tokenManager.done() && !atDeclaration()) {
+            skipToken();
+        }
+    }
+
+    //drop the rest of a bad statement - up to and including its NEWLINE, but not a DEDENT, which ends the block,
+    //or the start of the next class
+    private void skipStatement() {
+        while (tokenManager.peek(0).isPresent() && !atDeclaration()) {
+            Token.TokenTypes type = tokenManager.peek(0).get().getType();
+            if (type == Token.TokenTypes.DEDENT) {
+                return;
+            }
+            skipToken();
+            if (type == Token.TokenTypes.NEWLINE) {
+                while (tokenManager.matchAndRemove(Token.TokenTypes.NEWLINE).isPresent()) {
+                }
+                return;
+            }
+        }
+    }
+
+    private void skipToken() {
+        tokenManager.peek(0).ifPresent(token -> tokenManager.matchAndRemove(token.getType()));
+    }
     private Optional<ClassNode> Class() throws SyntaxErrorException {
+        trace.ruleEntered("Class", tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber());
         tokenManager.matchAndRemove(Token.TokenTypes.CLASS)//token is class
                 .orElseThrow(()->new SyntaxErrorException("Expected 'class' keyword",
                     tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
@@ -46,6 +169,7 @@ public class Parser {
 
             ClassNode classNode = new ClassNode();//new class node
             classNode.name = className.getValue();//set class name
+            partialClass = classNode;
 
         if(!tokenManager.done() && tokenManager.peek(0).isPresent()&&
                 tokenManager.peek(0).get().getType() == Token.TokenTypes.IMPLEMENTS) {//case of implements
@@ -162,7 +286,7 @@ public class Parser {
         return Optional.of(classNode);
     }
     private Optional<InterfaceNode> Interface() throws SyntaxErrorException {
-        System.out.println("YOU MADE IT TO INTERFACE");//reaffirm token is interface
+        trace.ruleEntered("Interface", tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber());
         if (tokenManager.matchAndRemove(Token.TokenTypes.INTERFACE).isEmpty()) {
                 throw new SyntaxErrorException("Expected 'interface' keyword",
                         tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber());
@@ -282,8 +406,6 @@ public class Parser {
                 -> new SyntaxErrorException("Expected Construct",
                 tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
 
-        ClassNode classNode = new ClassNode();
-
         tokenManager.matchAndRemove(Token.TokenTypes.LPAREN)//expect LPAREN
                 .orElseThrow(() -> new SyntaxErrorException("Expected '(' after construct at instead got "+ tokenManager.peek(0).get().getType(), tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
 
@@ -291,8 +413,6 @@ public class Parser {
                 .orElseThrow(() -> new SyntaxErrorException("Expected ')' to close at ", tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
         ConstructorNode constructorNode = new ConstructorNode();
 
-
-        classNode.constructors.add(constructorNode);//populate class constructor
         RequireNewLine();
 
         tokenManager.matchAndRemove(Token.TokenTypes.INDENT)//expect LPAREN
@@ -324,8 +444,21 @@ public class Parser {
             if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.SHARED,Token.TokenTypes.WORD)) {
                 break;
             }
-            statementNodes.add(statement().get());//add call statement to list
-            RequireNewLine();
+            if (recovering && atDeclaration()) {//a block the lexer never dedented out of
+                break;
+            }
+            if (!recovering) {
+                statementNodes.add(statement().get());//add call statement to list
+                RequireNewLine();
+                continue;
+            }
+            try {
+                statementNodes.add(statement().get());
+                RequireNewLine();
+            } catch (SyntaxErrorException | NoSuchElementException e) {//record it and carry on with the next line
+                record(e);
+                skipStatement();
+            }
         }
 
         return Optional.of(statementNodes);
@@ -410,17 +543,13 @@ public class Parser {
     private Optional<StatementNode> loop() throws SyntaxErrorException {
         LoopNode loopNode = new LoopNode();//new loop
         tokenManager.matchAndRemove(Token.TokenTypes.LOOP);//match loop
+        loopNode.assignment = Optional.empty();//a loop over a condition or iterator alone has no variable
             //some more to be added this is to enter lop
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.WORD) {
+        if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.ASSIGN)) {//only "x = ..." names a loop variable
             loopNode.assignment= Optional.of(variableref().get());//assignment in loop
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.ASSIGN){
             tokenManager.matchAndRemove(Token.TokenTypes.ASSIGN);
         }
-
-        if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.DOT)){
-            loopNode.expression = methodcallexpression().get();
-        }
+        loopNode.expression = expression().orElse(null);//keepGoing, n < 100, list.iterator() - a bare "loop" fails when it runs
         RequireNewLine();
         if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.INDENT) {
             tokenManager.matchAndRemove(Token.TokenTypes.INDENT);
@@ -431,7 +560,9 @@ public class Parser {
         if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.WORD) {
             loopNode.statements.addAll(statements().get());
         }
-
+        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.DEDENT){
+            tokenManager.matchAndRemove(Token.TokenTypes.DEDENT);//end of the loop body, same as if
+        }
 
         if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.ELSE){
             tokenManager.matchAndRemove(Token.TokenTypes.ELSE);
@@ -443,17 +574,8 @@ public class Parser {
         ifNode.statements = new ArrayList<>();
         ifNode.elseStatement=Optional.empty();
 
-        List<ExpressionNode> expressionNodes = new ArrayList<>();
-
         tokenManager.matchAndRemove(Token.TokenTypes.IF);
-        if(tokenManager.peek(3).isPresent()&& tokenManager.peek(3).get().getType() == Token.TokenTypes.NEWLINE){
-            ifNode.condition= BoolExpFactor().get();
-        }
-
-        while(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() != Token.TokenTypes.NEWLINE) {
-
-            ifNode.condition =BoolExpTerm().get();//fill condintion with things like n>b
-        }
+        ifNode.condition = requireExpression("a condition after 'if'");//things like n>b and n!=a
 
         RequireNewLine();
         if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.INDENT){
@@ -493,80 +615,6 @@ public class Parser {
 
         return Optional.empty();
     }
-    private Optional<ExpressionNode>BoolExpTerm()throws SyntaxErrorException{
-      BooleanOpNode booleanOpNode = new BooleanOpNode();//instance of bool op
-      BooleanOpNode booleanOpNode2 = new BooleanOpNode();//incase of more than 2 conditions
-        booleanOpNode.op =null;
-        booleanOpNode.left=BoolExpFactor().get();//fill left before AND or OR
-
-
-
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.AND){
-            tokenManager.matchAndRemove(Token.TokenTypes.AND);
-            booleanOpNode.op = BooleanOpNode.BooleanOperations.and;//fill ast with and
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.OR){
-            tokenManager.matchAndRemove(Token.TokenTypes.OR);
-            booleanOpNode.op = BooleanOpNode.BooleanOperations.or;//fil ast with or
-        }
-
-        booleanOpNode.right=BoolExpFactor().get();//fill right after AND or OR
-
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.AND||
-                tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.OR){
-
-            booleanOpNode2.left = booleanOpNode;//fill new instance with whole old bool op instance
-
-            if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.AND){
-                tokenManager.matchAndRemove(Token.TokenTypes.AND);
-                booleanOpNode2.op = BooleanOpNode.BooleanOperations.and;//add and to AST
-            }
-            if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.OR){
-                tokenManager.matchAndRemove(Token.TokenTypes.OR);
-                booleanOpNode2.op = BooleanOpNode.BooleanOperations.or;//add or to AST
-            }
-
-            booleanOpNode2.right=BoolExpFactor().get();//fill right
-                return Optional.of(booleanOpNode2);
-        }
-        return Optional.of(booleanOpNode);
-    }
-    private Optional<ExpressionNode>BoolExpFactor()throws SyntaxErrorException{
-
-        CompareNode compareNode = new CompareNode();
-
-        compareNode.left = variableref().get();//get letter
-            //in cases of comparisions or not equal or equal
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.LESSTHAN){
-            tokenManager.matchAndRemove(Token.TokenTypes.LESSTHAN);
-           compareNode.op = CompareNode.CompareOperations.lt;//Filling op with neccesary comparision
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.GREATERTHAN){
-            tokenManager.matchAndRemove(Token.TokenTypes.GREATERTHAN);
-            compareNode.op = CompareNode.CompareOperations.gt;
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.LESSTHANEQUAL){
-            tokenManager.matchAndRemove(Token.TokenTypes.LESSTHANEQUAL);
-            compareNode.op = CompareNode.CompareOperations.le;
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.GREATERTHANEQUAL){
-            tokenManager.matchAndRemove(Token.TokenTypes.GREATERTHANEQUAL);
-            compareNode.op = CompareNode.CompareOperations.ge;
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.NOTEQUAL){
-            tokenManager.matchAndRemove(Token.TokenTypes.NOTEQUAL);
-            compareNode.op = CompareNode.CompareOperations.ne;
-        }
-        if(tokenManager.peek(0).isPresent() && tokenManager.peek(0).get().getType() == Token.TokenTypes.EQUAL){
-            tokenManager.matchAndRemove(Token.TokenTypes.EQUAL);
-            compareNode.op = CompareNode.CompareOperations.eq;
-        }
-
-        compareNode.right = variableref().get();
-
-        return Optional.of(compareNode);
-    }
-
     private Optional<StatementNode> methodcall() throws SyntaxErrorException {
         MethodCallStatementNode methodCallNode = new MethodCallStatementNode();
         List<VariableReferenceNode> returns = new ArrayList<>();
@@ -590,8 +638,7 @@ public class Parser {
             methodname = tokenManager.matchAndRemove(Token.TokenTypes.WORD).orElseThrow(()
                     -> new SyntaxErrorException("Expected methodname", tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
             methodCallNode.methodName = methodname.getValue();
-            tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
-            tokenManager.matchAndRemove(Token.TokenTypes.RPAREN);
+            arguments(methodCallNode.parameters);
         }
         if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.DOT)){
            Token objectname =null;//remove object name
@@ -606,12 +653,7 @@ public class Parser {
                     -> new SyntaxErrorException("Expected methodname", tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
 
             methodCallNode.methodName = methodname.getValue();
-                //to get param(now)
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.LPAREN){
-                tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
-                methodCallNode.parameters.add(variableref().get());
-                tokenManager.matchAndRemove(Token.TokenTypes.RPAREN);
-            }
+            arguments(methodCallNode.parameters);
         }
 
 
@@ -642,197 +684,211 @@ public class Parser {
         //get letter
         assignmentNode.target= variableref().get();
         tokenManager.matchAndRemove(Token.TokenTypes.ASSIGN);
+        assignmentNode.expression = requireExpression("an expression after '='");
 
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.TRUE){
-            assignmentNode.expression = expressionNode().get();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.FALSE){
-            assignmentNode.expression = expressionNode().get();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.QUOTEDSTRING){
-            assignmentNode.expression = expressionNode().get();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NUMBER) {
-            assignmentNode.expression = expressionNode().get();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NEW){
-            assignmentNode.expression = expressionNode().get();
-        }
+        return Optional.of(assignmentNode);
+    }
+    //              Expressions
+    //
+    // One precedence climbing loop instead of a method per level. Each binary operator has a precedence - higher
+    // binds tighter - and the right side of an operator is parsed one level up, so everything is left associative:
+    //     or  <  and  <  not  <  == != < <= > >=  <  + -  <  * / %
+    // Comparisons don't chain - a < b < c is an error.
+
+    private static final int OR = 1;
+    private static final int AND = 2;
+    private static final int NOT = 3;
+    private static final int COMPARE = 4;
+    private static final int SUM = 5;
+    private static final int PRODUCT = 6;
+
+    private Optional<ExpressionNode> expression() throws SyntaxErrorException {
+        if (tokenManager.peek(0).isEmpty() || tokenManager.peek(0).get().getType() == Token.TokenTypes.NEWLINE) {
+            return Optional.empty();
+        }
+        return Optional.of(expression(OR));
+    }
 
-        //get letter
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.WORD) {
-            if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.NEWLINE)){
-                assignmentNode.expression = variableref().get();
-                return Optional.of(assignmentNode);
+    private ExpressionNode requireExpression(String what) throws SyntaxErrorException {
+        return expression().orElseThrow(() -> new SyntaxErrorException("Expected " + what,
+                tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
+    }
+
+    //parse operators that bind at least as tight as minimum
+    private ExpressionNode expression(int minimum) throws SyntaxErrorException {
+        ExpressionNode left = operand();
+        while (true) {
+            Optional<Token> next = tokenManager.peek(0);
+            int precedence = next.isPresent() ? precedence(next.get().getType()) : 0;
+            if (precedence == 0 || precedence < minimum) {
+                return left;
+            }
+            Token.TokenTypes op = next.get().getType();
+            tokenManager.matchAndRemove(op);
+            left = binary(op, left, expression(precedence + 1));
+            if (precedence == COMPARE && tokenManager.peek(0).isPresent()
+                    && precedence(tokenManager.peek(0).get().getType()) == COMPARE) {
+                throw new SyntaxErrorException("Comparisons can't be chained",
+                        tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber());
             }
-            assignmentNode.expression = expressionNode().get();
         }
+    }
 
-        return Optional.of(assignmentNode);
+    //0 for anything that isn't a binary operator
+    private static int precedence(Token.TokenTypes type) {
+        return switch (type) {
+            case OR -> OR;
+            case AND -> AND;
+            case EQUAL, NOTEQUAL, LESSTHAN, LESSTHANEQUAL, GREATERTHAN, GREATERTHANEQUAL -> COMPARE;
+            case PLUS, MINUS -> SUM;
+            case TIMES, DIVIDE, MODULO -> PRODUCT;
+            default -> 0;
+        };
     }
-    private Optional<ExpressionNode>  expressionNode() throws SyntaxErrorException {
-            //special keywords
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.TRUE){
-            return factor();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.FALSE){
-            return factor();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NEW){
-            return factor();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.QUOTEDSTRING){
-            return factor();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.WORD){
-            if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.PLUS)){
+
+    private static ExpressionNode binary(Token.TokenTypes op, ExpressionNode left, ExpressionNode right) {
+        switch (op) {
+            case OR, AND -> {
+                BooleanOpNode booleanOpNode = new BooleanOpNode();
+                booleanOpNode.left = left;
+                booleanOpNode.op = op == Token.TokenTypes.AND ? BooleanOpNode.BooleanOperations.and
+                        : BooleanOpNode.BooleanOperations.or;
+                booleanOpNode.right = right;
+                return booleanOpNode;
+            }
+            case PLUS, MINUS, TIMES, DIVIDE, MODULO -> {
                 MathOpNode mathOpNode = new MathOpNode();
-                mathOpNode.left = variableref().get();
-                mathOpNode.op =MathOpNode.MathOperations.add;
-                tokenManager.matchAndRemove(Token.TokenTypes.PLUS);
-                mathOpNode.right = variableref().get();
-                return Optional.of(mathOpNode);
+                mathOpNode.left = left;
+                mathOpNode.op = switch (op) {
+                    case PLUS -> MathOpNode.MathOperations.add;
+                    case MINUS -> MathOpNode.MathOperations.subtract;
+                    case TIMES -> MathOpNode.MathOperations.multiply;
+                    case DIVIDE -> MathOpNode.MathOperations.divide;
+                    default -> MathOpNode.MathOperations.modulo;
+                };
+                mathOpNode.right = right;
+                return mathOpNode;
             }
-            return factor();
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NUMBER) {
-            if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.NUMBER, Token.TokenTypes.NEWLINE)){
-                return factor();
+            default -> {
+                CompareNode compareNode = new CompareNode();
+                compareNode.left = left;
+                compareNode.op = switch (op) {
+                    case EQUAL -> CompareNode.CompareOperations.eq;
+                    case NOTEQUAL -> CompareNode.CompareOperations.ne;
+                    case LESSTHAN -> CompareNode.CompareOperations.lt;
+                    case LESSTHANEQUAL -> CompareNode.CompareOperations.le;
+                    case GREATERTHAN -> CompareNode.CompareOperations.gt;
+                    default -> CompareNode.CompareOperations.ge;
+                };
+                compareNode.right = right;
+                return compareNode;
             }
-            MathOpNode mathOpNode = new MathOpNode();
-            mathOpNode.left= factor().get();
+        }
+    }
 
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.PLUS){
-                mathOpNode.op = MathOpNode.MathOperations.add;
-                tokenManager.matchAndRemove(Token.TokenTypes.PLUS);
+    //a literal, variable, method call, new, not, unary minus or something in parentheses
+    private ExpressionNode operand() throws SyntaxErrorException {
+        Token token = tokenManager.peek(0).orElseThrow(() -> new SyntaxErrorException("Expected an expression",
+                tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
+        switch (token.getType()) {
+            case NOT -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.NOT);
+                NotOpNode notOpNode = new NotOpNode();
+                notOpNode.left = expression(NOT + 1);//not a < b is not (a < b)
+                return notOpNode;
             }
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.MINUS){
-                mathOpNode.op = MathOpNode.MathOperations.subtract;
+            case MINUS -> {//-x is 0 - x
                 tokenManager.matchAndRemove(Token.TokenTypes.MINUS);
+                MathOpNode mathOpNode = new MathOpNode();
+                NumericLiteralNode zero = new NumericLiteralNode();
+                zero.value = 0;
+                mathOpNode.left = zero;
+                mathOpNode.op = MathOpNode.MathOperations.subtract;
+                mathOpNode.right = operand();
+                return mathOpNode;
+            }
+            case LPAREN -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
+                ExpressionNode inside = expression(OR);
+                tokenManager.matchAndRemove(Token.TokenTypes.RPAREN)
+                        .orElseThrow(() -> new SyntaxErrorException("Expected ')'",
+                                tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
+                return inside;
             }
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.TIMES){
-                mathOpNode.op = MathOpNode.MathOperations.multiply;
-                tokenManager.matchAndRemove(Token.TokenTypes.TIMES);
+            case TRUE, FALSE -> {
+                tokenManager.matchAndRemove(token.getType());
+                return new BooleanLiteralNode(token.getType() == Token.TokenTypes.TRUE);
             }
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.DIVIDE){
-                mathOpNode.op = MathOpNode.MathOperations.divide;
-                tokenManager.matchAndRemove(Token.TokenTypes.DIVIDE);
+            case NUMBER -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.NUMBER);
+                NumericLiteralNode numericLiteralNode = new NumericLiteralNode();
+                numericLiteralNode.value = Float.parseFloat(token.getValue());
+                return numericLiteralNode;
             }
-            //if case has parethesis
-            if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.LPAREN){
-                tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
-
-                mathOpNode.right= expressionNode().get();
-
-                tokenManager.matchAndRemove(Token.TokenTypes.RPAREN);
-                //make new node if more space needed
-                MathOpNode mathOpNode2 = new MathOpNode();
-                mathOpNode2.left = mathOpNode;
-                if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.PLUS){
-                    mathOpNode2.op = MathOpNode.MathOperations.add;
-                    tokenManager.matchAndRemove(Token.TokenTypes.PLUS);
-                }
-                if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.MINUS){
-                    mathOpNode2.op = MathOpNode.MathOperations.subtract;
-                    tokenManager.matchAndRemove(Token.TokenTypes.MINUS);
-                }
-                if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.TIMES){
-                    mathOpNode2.op = MathOpNode.MathOperations.multiply;
-                    tokenManager.matchAndRemove(Token.TokenTypes.TIMES);
-                }
-                if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.DIVIDE){
-                    mathOpNode2.op = MathOpNode.MathOperations.divide;
-                    tokenManager.matchAndRemove(Token.TokenTypes.DIVIDE);
+            case QUOTEDSTRING -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.QUOTEDSTRING);
+                StringLiteralNode stringLiteralNode = new StringLiteralNode();
+                stringLiteralNode.value = token.getValue();
+                return stringLiteralNode;
+            }
+            case QUOTEDCHARACTER -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.QUOTEDCHARACTER);
+                CharLiteralNode charLiteralNode = new CharLiteralNode();
+                charLiteralNode.value = token.getValue().charAt(0);
+                return charLiteralNode;
+            }
+            case NEW -> {
+                tokenManager.matchAndRemove(Token.TokenTypes.NEW);
+                NewNode newNode = new NewNode();
+                newNode.className = tokenManager.matchAndRemove(Token.TokenTypes.WORD)
+                        .orElseThrow(() -> new SyntaxErrorException("Expected classname",
+                                tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()))
+                        .getValue();
+                arguments(newNode.parameters);
+                return newNode;
+            }
+            case WORD -> {
+                if (tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.DOT)
+                        || tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.LPAREN)) {
+                    return methodcallexpression();
                 }
-
-                mathOpNode2.right = factor().get();
-                return Optional.of(mathOpNode2);
+                return variableref().get();
             }
-            mathOpNode.right = factor().get();
-
-            return Optional.of(mathOpNode);
+            default -> throw new SyntaxErrorException("Expected an expression instead got " + token.getType(),
+                    tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber());
         }
-
-        return Optional.empty();
     }
-    private Optional<ExpressionNode> factor() throws SyntaxErrorException {
-            //fill ast and remove special keyword
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.TRUE){
-            BooleanLiteralNode booleanLiteralNode = new BooleanLiteralNode(true);
-            tokenManager.matchAndRemove(Token.TokenTypes.TRUE);
-            return Optional.of(booleanLiteralNode);
-
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.FALSE){
-            BooleanLiteralNode booleanLiteralNode = new BooleanLiteralNode(false);
-            tokenManager.matchAndRemove(Token.TokenTypes.FALSE);
-            return Optional.of(booleanLiteralNode);
 
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NEW){
-            NewNode newNode = new NewNode();
-            Token classname = null;
-           tokenManager.matchAndRemove(Token.TokenTypes.NEW);
-           classname = tokenManager.matchAndRemove(Token.TokenTypes.WORD)//token is word
-                   .orElseThrow(() -> new SyntaxErrorException("Expected classname",
-                           tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-           newNode.className = classname.getValue();
-
-           tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
-           tokenManager.matchAndRemove(Token.TokenTypes.RPAREN);
-           return Optional.of(newNode);
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.QUOTEDSTRING){
-            StringLiteralNode stringLiteralNode = new StringLiteralNode();
-
-            Token sum = tokenManager.matchAndRemove(Token.TokenTypes.QUOTEDSTRING)//token is word
-                    .orElseThrow(() -> new SyntaxErrorException("Expected quoted string",
-                            tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-
-            stringLiteralNode.value = sum.getValue();
-            return Optional.of(stringLiteralNode);
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.NUMBER) {
-            NumericLiteralNode numericLiteralNode = new NumericLiteralNode();
-            Token num = tokenManager.matchAndRemove(Token.TokenTypes.NUMBER)//token is word
-                    .orElseThrow(() -> new SyntaxErrorException("Expected quoted string",
-                            tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-
-            numericLiteralNode.value =Float.parseFloat(num.getValue());
-            return Optional.of(numericLiteralNode);
-
-
-        }
-        if(tokenManager.peek(0).isPresent()&& tokenManager.peek(0).get().getType() == Token.TokenTypes.WORD){
-
-        }
-        return Optional.empty();
-    }
-    private Optional <ExpressionNode> methodcallexpression() throws SyntaxErrorException {
+    //object.method(arguments) or method(arguments) - the parentheses are optional when there are no arguments
+    private ExpressionNode methodcallexpression() throws SyntaxErrorException {
         MethodCallExpressionNode methodCallExpressionNode = new MethodCallExpressionNode();
         methodCallExpressionNode.objectName = Optional.empty();
-        Token methodname = null;
-            //using method call
-        //for console.print
-        if(tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD,Token.TokenTypes.DOT)){
-            Token objectname = null;
-            objectname =tokenManager.matchAndRemove(Token.TokenTypes.WORD).orElseThrow(()
-                    -> new SyntaxErrorException("Expected method name",tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-            methodCallExpressionNode.objectName = Optional.of(objectname.getValue());
-
+        if (tokenManager.nextTwoTokensMatch(Token.TokenTypes.WORD, Token.TokenTypes.DOT)) {
+            methodCallExpressionNode.objectName = Optional.of(tokenManager.matchAndRemove(Token.TokenTypes.WORD).get().getValue());
             tokenManager.matchAndRemove(Token.TokenTypes.DOT);
         }
+        methodCallExpressionNode.methodName = tokenManager.matchAndRemove(Token.TokenTypes.WORD)
+                .orElseThrow(() -> new SyntaxErrorException("Expected method name",
+                        tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()))
+                .getValue();
+        arguments(methodCallExpressionNode.parameters);
+        return methodCallExpressionNode;
+    }
 
-        methodname = tokenManager.matchAndRemove(Token.TokenTypes.WORD).orElseThrow(()
-                -> new SyntaxErrorException("Expected method name",tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
-
-        methodCallExpressionNode.methodName = methodname.getValue();
-
-        tokenManager.matchAndRemove(Token.TokenTypes.LPAREN);
-        tokenManager.matchAndRemove(Token.TokenTypes.RPAREN);
-
-        return Optional.of(methodCallExpressionNode);
-
+    //( expression { , expression } ) into parameters, if there is a (
+    private void arguments(List<ExpressionNode> parameters) throws SyntaxErrorException {
+        if (tokenManager.matchAndRemove(Token.TokenTypes.LPAREN).isEmpty()) {
+            return;
+        }
+        if (tokenManager.matchAndRemove(Token.TokenTypes.RPAREN).isPresent()) {
+            return;
+        }
+        do {
+            parameters.add(expression(OR));
+        } while (tokenManager.matchAndRemove(Token.TokenTypes.COMMA).isPresent());
+        tokenManager.matchAndRemove(Token.TokenTypes.RPAREN)
+                .orElseThrow(() -> new SyntaxErrorException("Expected ')' after the parameters",
+                        tokenManager.getCurrentLine(), tokenManager.getCurrentColumnNumber()));
     }
 
-}
\ No newline at end of file
+}
@@ -1,6 +1,7 @@
 import AST.*;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 public class Parser4Tests {
@@ -160,4 +161,212 @@ public class Parser4Tests {
 
 
     }
+
+    @Test
+    public void streaming_parse() throws Exception {
+        Lexer l= new Lexer(new java.io.StringReader("class Tran\n" +
+                "\thelloWorld()\n" +
+                "\t\ta,b,c,d,e = doSomething()\n"));
+        TranNode TN= new TranNode();
+        Parser p= new Parser(TN, l);
+        p.Tran();
+        var firstStatement = TN.Classes.get(0).methods.get(0).statements.getFirst();
+        Assertions.assertInstanceOf(MethodCallStatementNode.class, firstStatement);
+        Assertions.assertEquals(5, ((MethodCallStatementNode) firstStatement).returnValues.size());
+        Assertions.assertEquals("e", ((MethodCallStatementNode) firstStatement).returnValues.get(4).name);
+    }
+
+    @Test
+    public void token_buffer_parse() throws Exception {
+        Lexer l= new Lexer("class Tran\n" +
+                "\thelloWorld()\n" +
+                "\t\ta= 1+(6-5)+7\n");
+        var tokens= l.LexToBuffer();
+        Assertions.assertEquals(Token.TokenTypes.CLASS, tokens.type(0));
+        Assertions.assertEquals("Tran", tokens.value(1));
+        TranNode TN= new TranNode();
+        Parser p= new Parser(TN, tokens);
+        p.Tran();
+        var firstStatement = TN.Classes.get(0).methods.get(0).statements.getFirst();
+        Assertions.assertInstanceOf(AssignmentNode.class, firstStatement);
+        Assertions.assertEquals("add", ((MathOpNode) ((AssignmentNode) firstStatement).expression).op.name());
+    }
+
+    @Test
+    public void front_end_parses_many_files(@TempDir java.nio.file.Path dir) throws Exception {
+        var first = java.nio.file.Files.writeString(dir.resolve("a.tran"), "class A\n\thelloWorld()\n\t\tx = 1\n");
+        var second = java.nio.file.Files.writeString(dir.resolve("b.tran"), "class B\n\thelloWorld()\n\t\tx = 2\n");
+        var broken = java.nio.file.Files.writeString(dir.resolve("c.tran"), "helloWorld()\n");
+        var result = new FrontEnd().parseAll(java.util.List.of(second, broken, first));
+        Assertions.assertEquals(2, result.program().Classes.size());
+        Assertions.assertEquals("B", result.program().Classes.get(0).name);
+        Assertions.assertEquals("A", result.program().Classes.get(1).name);
+        Assertions.assertEquals(1, result.errors().size());
+        Assertions.assertEquals(broken, result.errors().get(0).file());
+        Assertions.assertEquals(1, result.errors().get(0).line());
+    }
+
+    @Test
+    public void front_end_parses_into_flat_ast(@TempDir java.nio.file.Path dir) throws Exception {
+        var first = java.nio.file.Files.writeString(dir.resolve("a.tran"), "class A\n\thelloWorld()\n\t\tx = 1\n");
+        var second = java.nio.file.Files.writeString(dir.resolve("b.tran"), "class B\n\thelloWorld()\n\t\tx = 2\n");
+        var broken = java.nio.file.Files.writeString(dir.resolve("c.tran"), "helloWorld()\n");
+        var files = java.util.List.of(second, broken, first);
+        var flat = new FrontEnd(new java.util.concurrent.ForkJoinPool(1), null).parseAllFlat(files);
+        Assertions.assertEquals(1, flat.errors().size());
+        Assertions.assertEquals(broken, flat.errors().get(0).file());
+        Assertions.assertEquals(new FrontEnd().parseAll(files).program().toString(), flat.program().toTran().toString());
+        Assertions.assertEquals(java.util.List.of(), Interpreter.ClassTable.check(flat.program()));
+
+        var again = java.nio.file.Files.writeString(dir.resolve("d.tran"), "class A\n\thelloWorld()\n\t\tx = 3\n");
+        flat = new FrontEnd().parseAllFlat(java.util.List.of(first, second, again));
+        Assertions.assertEquals(java.util.List.of("Duplicate class 'A'"), Interpreter.ClassTable.check(flat.program()));
+    }
+
+    @Test
+    public void incremental_reparse_keeps_untouched_classes() throws Exception {
+        String program = "class A\n\thelloWorld()\n\t\tx = 1\nclass B\n\thelloWorld()\n\t\tx = 2\n";
+        var incremental = new IncrementalParser(program);
+        var before = incremental.getTran();
+        Assertions.assertEquals(2, incremental.getReparsedCount());
+
+        int at = program.indexOf("x = 2") + 4;
+        incremental.edit(at, 1, "3 + 4");
+        var after = incremental.getTran();
+        Assertions.assertEquals(3, incremental.getReparsedCount());
+        Assertions.assertSame(before.Classes.get(0), after.Classes.get(0));
+        Assertions.assertNotSame(before.Classes.get(1), after.Classes.get(1));
+
+        TranNode full = new TranNode();
+        new Parser(full, new Lexer(incremental.getText()).Lex()).Tran();
+        Assertions.assertEquals(full.toString(), after.toString());
+
+        incremental.edit(program.indexOf("class B"), 0, "\t");//B's header is now indented, so it is part of A
+        Assertions.assertEquals(4, incremental.getReparsedCount());
+        incremental.edit(program.indexOf("class B"), 1, "");
+        Assertions.assertEquals(6, incremental.getReparsedCount());//A and B split apart again
+        Assertions.assertEquals(full.toString(), incremental.getTran().toString());
+    }
+
+    @Test
+    public void ast_cache_round_trip(@TempDir java.nio.file.Path dir) throws Exception {
+        String program = """
+                class SimpleAdd
+                    number x
+                    number y
+
+                    construct()
+                        x = 6
+                        y = 6
+
+                    add()
+                        number z
+                        z = x + y
+                        console.write(z)
+
+                    shared start()
+                        SimpleAdd t
+                        t = new SimpleAdd()
+                        t.add()
+
+                """;
+        var source = java.nio.file.Files.writeString(dir.resolve("a.tran"), program);
+        TranNode parsed = new TranNode();
+        new Parser(parsed, new Lexer(source)).Tran();
+
+        var cache = new AstCache(dir.resolve("cache"));
+        var cold = cache.parse(source);
+        var warm = cache.parse(source);
+        Assertions.assertEquals(parsed.toString(), cold.toString());
+        Assertions.assertEquals(parsed.toString(), warm.toString());
+        Assertions.assertNotSame(cold, warm);
+        try (var entries = java.nio.file.Files.list(dir.resolve("cache"))) {
+            Assertions.assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    public void recovering_parse_reports_every_error() throws Exception {
+        String program = """
+                class SimpleAdd
+                    number x
+                    number y
+
+                    construct()
+                        x = 6
+                        y = 6 +
+
+                    add()
+                        number z
+                        z = x + ) y
+                        console.write(z)
+
+                    shared start()
+                        SimpleAdd t
+                        t = new SimpleAdd()
+                        t.add()
+
+                """;
+        Assertions.assertThrows(Exception.class, () -> new Parser(new TranNode(), new Lexer(program)).Tran());
+
+        TranNode TN = new TranNode();
+        Parser p = new Parser(TN, new Lexer(program));
+        var diagnostics = p.TranRecovering();
+        Assertions.assertEquals(2, diagnostics.size());
+        Assertions.assertEquals(8, diagnostics.get(0).getLineNumber());
+        Assertions.assertEquals(11, diagnostics.get(1).getLineNumber());
+        Assertions.assertSame(diagnostics, p.getDiagnostics());
+
+        var simpleAdd = TN.Classes.getFirst();
+        Assertions.assertEquals("SimpleAdd", simpleAdd.name);
+        Assertions.assertEquals(1, simpleAdd.constructors.getFirst().statements.size());
+        Assertions.assertEquals(2, simpleAdd.methods.size());
+        Assertions.assertInstanceOf(MethodCallStatementNode.class, simpleAdd.methods.get(0).statements.getLast());
+        Assertions.assertEquals(2, simpleAdd.methods.get(1).statements.size());
+    }
+
+    @Test
+    public void precedence_and_associativity() throws Exception {
+        Lexer l = new Lexer("class Tran\n" +
+                "\thelloWorld()\n" +
+                "\t\ta = 10 - 4 - 3 + 2 * x % 5 / y\n" +
+                "\t\tb = not x < 3 or c and d\n" +
+                "\t\tc = obj.size(a + 1, \"s\") * -2\n");
+        TranNode TN = new TranNode();
+        new Parser(TN, l.Lex()).Tran();
+        var statements = TN.Classes.get(0).methods.get(0).statements;
+        Assertions.assertEquals(3, statements.size());
+
+        var sum = (MathOpNode) ((AssignmentNode) statements.get(0)).expression;
+        Assertions.assertEquals(MathOpNode.MathOperations.add, sum.op);
+        var difference = (MathOpNode) sum.left;//(10 - 4) - 3
+        Assertions.assertEquals(3.0f, ((NumericLiteralNode) difference.right).value);
+        Assertions.assertEquals(4.0f, ((NumericLiteralNode) ((MathOpNode) difference.left).right).value);
+        var product = (MathOpNode) sum.right;//((2 * x) % 5) / y
+        Assertions.assertEquals(MathOpNode.MathOperations.divide, product.op);
+        Assertions.assertEquals(MathOpNode.MathOperations.modulo, ((MathOpNode) product.left).op);
+        Assertions.assertEquals(MathOpNode.MathOperations.multiply, ((MathOpNode) ((MathOpNode) product.left).left).op);
+
+        var or = (BooleanOpNode) ((AssignmentNode) statements.get(1)).expression;
+        Assertions.assertEquals(BooleanOpNode.BooleanOperations.or, or.op);
+        Assertions.assertInstanceOf(CompareNode.class, ((NotOpNode) or.left).left);
+        Assertions.assertEquals(BooleanOpNode.BooleanOperations.and, ((BooleanOpNode) or.right).op);
+
+        var call = (MathOpNode) ((AssignmentNode) statements.get(2)).expression;
+        var size = (MethodCallExpressionNode) call.left;
+        Assertions.assertEquals("obj", size.objectName.get());
+        Assertions.assertEquals(2, size.parameters.size());
+        Assertions.assertInstanceOf(MathOpNode.class, size.parameters.get(0));
+        Assertions.assertEquals("s", ((StringLiteralNode) size.parameters.get(1)).value);
+        Assertions.assertEquals(MathOpNode.MathOperations.subtract, ((MathOpNode) call.right).op);
+    }
+
+    @Test
+    public void comparisons_do_not_chain() throws Exception {
+        Lexer l = new Lexer("class Tran\n" +
+                "\thelloWorld()\n" +
+                "\t\ta = x < y < z\n");
+        var tokens = l.Lex();
+        Assertions.assertThrows(SyntaxErrorException.class, () -> new Parser(new TranNode(), tokens).Tran());
+    }
 }
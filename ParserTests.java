@@ -130,6 +130,19 @@ public class ParserTests {
         Assertions.assertInstanceOf(LoopNode.class, myMethod.statements.getFirst());
     }
 
+    @Test
+    public void testLoopBareCondition() throws Exception {
+        var t = LexAndParse("class Tran\n" +
+                        "\thelloWorld()\n" +
+                        "\t\tloop keepGoing\n" +
+                        "\t\t\tkeepGoing = false\n"
+                , 20);
+        var loop = (LoopNode) t.Classes.getFirst().methods.getFirst().statements.getFirst();
+        Assertions.assertTrue(loop.assignment.isEmpty());
+        Assertions.assertInstanceOf(VariableReferenceNode.class, loop.expression);
+        Assertions.assertEquals("keepGoing", ((VariableReferenceNode) loop.expression).name);
+    }
+
     @Test
     public void testLoopCondition() throws Exception {
         var t = LexAndParse("class Tran\n" +
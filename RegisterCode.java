@@ -0,0 +1,104 @@
+package Interpreter;
+
+/**
+ * A method or constructor body lowered by RegisterCompiler for the REGISTER_VM execution mode: a flat int[] of
+ * instructions with explicit jumps, and a constant pool for everything that isn't an int (literal values, call sites,
+ * classes, constructors).
+ * <p>
+ * Every instruction is an opcode followed by a fixed number of int operands. Operands named r are registers: the
+ * first getLayout().size() registers are the frame's variable slots, the rest are temporaries. Operands named k index
+ * the constant pool, and jump targets are offsets into the code. There are no and/or/not instructions - they are
+ * lowered to jumps, so the right side of an and/or is only run when the left side didn't decide it.
+ */
+public class RegisterCode {
+    //                                        operands
+    public static final int END = 0;          //
+    public static final int CONST = 1;        // r k          r = constants[k]
+    public static final int MOVE = 2;         // r r2         r = r2
+    public static final int LOAD_NAME = 3;    // r k          r = the local or member named by constants[k] (a node SlotResolver never saw)
+    public static final int STORE_LOCAL = 4;  // slot r k     slot = r, and the member named by constants[k] too if the object has one
+    public static final int STORE_NAME = 5;   // r k          the local or member named by constants[k] = r (a node SlotResolver never saw)
+    public static final int PUT = 6;          // r k          the variable constants[k] = r, declared or not (loop variables)
+    public static final int ADD = 7;          // r a b        r = a + b, and so on down to GE
+    public static final int SUBTRACT = 8;
+    public static final int MULTIPLY = 9;
+    public static final int DIVIDE = 10;
+    public static final int MODULO = 11;
+    public static final int EQUAL = 12;
+    public static final int NOT_EQUAL = 13;
+    public static final int LESS = 14;
+    public static final int LESS_EQUAL = 15;
+    public static final int GREATER = 16;
+    public static final int GREATER_EQUAL = 17;
+    public static final int CALL = 18;        // r k first n  r = first value returned by the call constants[k] on registers first..first+n-1
+    public static final int CALL_VOID = 19;   // k first n    the same, copying the returned values into the call's return variables
+    public static final int NEW = 20;         // r k          r = a new object of the class constants[k]
+    public static final int CONSTRUCT = 21;   // r k first n  run the constructor the "new" constants[k] picks for these arguments on the object in r
+    public static final int JUMP = 22;        // target
+    public static final int JUMP_IF_FALSE = 23;   // r target
+    public static final int JUMP_IF_TRUE = 24;    // r target
+    public static final int JUMP_IF_NOT_ITERATOR = 25; // r target
+    public static final int NEXT = 26;       // r k target   call getNext() on the iterator in r for the loop constants[k]; jump when it ran out
+    public static final int THROW = 27;       // k            throw the exception constants[k] makes
+    public static final int LOAD_MEMBER = 28; // r k          r = the member constants[k] of the object, through its FieldSite
+    public static final int STORE_MEMBER = 29;// r k          the member constants[k] of the object = r, through its FieldSite
+
+    private static final String[] NAMES = {"end", "const", "move", "load_name", "store_local", "store_name", "put",
+            "add", "subtract", "multiply", "divide", "modulo", "eq", "ne", "lt", "le", "gt", "ge",
+            "call", "call_void", "new", "construct", "jump", "jump_if_false", "jump_if_true", "jump_if_not_iterator", "next", "throw",
+            "load_member", "store_member"};
+    private static final int[] OPERANDS = {0, 2, 2, 2, 3, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 4, 3, 2, 4, 1, 2, 2, 2, 3, 1, 2, 2};
+
+    private final int[] code;
+    private final Object[] constants;
+    private final int registers;
+    private final FrameLayout layout;
+
+    RegisterCode(int[] code, Object[] constants, int registers, FrameLayout layout) {
+        this.code = code;
+        this.constants = constants;
+        this.registers = registers;
+        this.layout = layout;
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    Object[] constants() {
+        return constants;
+    }
+
+    //how many registers a frame running this code needs - variable slots and temporaries
+    public int registers() {
+        return registers;
+    }
+
+    public FrameLayout getLayout() {
+        return layout;
+    }
+
+    public int length() {
+        return code.length;
+    }
+
+    public static int operands(int opcode) {
+        return OPERANDS[opcode];
+    }
+
+    /**
+     * One instruction per line, "offset: name operands".
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+            text.append(pc).append(": ").append(NAMES[code[pc]]);
+            for (int i = 1; i <= OPERANDS[code[pc]]; i++) {
+                text.append(' ').append(code[pc + i]);
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,507 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Lowers a method or constructor body to RegisterCode for the REGISTER_VM execution mode, once, the first time the
+ * body runs.
+ * <p>
+ * Declared variables are used where they are - their frame slot is their register - and every intermediate value
+ * gets a temporary register above the slots. Temporaries are handed out like a stack: an expression's operands use
+ * the registers above its own and give them back when it is done, so a body needs as many temporaries as its deepest
+ * expression, not as many as it has nodes.
+ * <p>
+ * Conditions are lowered to chains of jumps rather than values: an and/or jumps past its right side as soon as its
+ * left side decides, and "not" just swaps where the jumps go. Only an and/or/not used as a value is turned back into
+ * a true or false in a register.
+ * <p>
+ * The code does exactly what ClosureCompiler's executors do - same order of evaluation, same errors, same quirks
+ * (an iterator loop runs its body once and, when the iterator has run out, skips the rest of its block). Anything
+ * that would only fail when reached becomes a THROW at that point in the code.
+ */
+public class RegisterCompiler {
+    private final Interpreter interpreter;
+
+    public RegisterCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    //              Constant pool entries the machine needs besides values
+
+    //a variable that isn't a declared local - a member, or (for a node SlotResolver never saw) something looked up by name
+    record Name(VariableReferenceNode reference, String name, FieldSite field) {
+    }
+
+    //a call site - returnValues is null for a call in an expression
+    record Call(Node site, Optional<String> objectName, String methodName, VariableReferenceNode[] returnValues) {
+    }
+
+    //the loop an iterator belongs to, and the variable each value goes in (null for none)
+    record Next(LoopNode loop, VariableReferenceNode variable) {
+    }
+
+    /**
+     * Lower a method or constructor body.
+     *
+     * @param statements - the body
+     * @param layout     - the body's frame layout (slot numbers are the variables' registers)
+     * @return the body, ready to run
+     */
+    public RegisterCode compileBody(List<StatementNode> statements, FrameLayout layout) {
+        Lowering lowering = new Lowering(layout);
+        lowering.block(statements);
+        lowering.emit(RegisterCode.END);
+        return lowering.finish();
+    }
+
+    //the state for lowering one body
+    private class Lowering {
+        private final FrameLayout layout;
+        private int[] code = new int[64];
+        private int length;
+        private final List<Object> constants = new ArrayList<>();
+        private final IdentityHashMap<Object, Integer> constantIndex = new IdentityHashMap<>();
+        private int next;//first free temporary
+        private int registers;
+        private List<Integer> blockExits = new ArrayList<>();//jump operands to patch to the end of the current block
+
+        private Lowering(FrameLayout layout) {
+            this.layout = layout;
+            this.next = layout.size();
+            this.registers = layout.size();
+        }
+
+        private RegisterCode finish() {
+            return new RegisterCode(Arrays.copyOf(code, length), constants.toArray(), registers, layout);
+        }
+
+        //              Statements
+
+        private void block(List<StatementNode> statements) {
+            List<Integer> outer = blockExits;
+            blockExits = new ArrayList<>();
+            for (StatementNode statement : statements) {
+                int mark = next;
+                statement(statement);
+                next = mark;
+            }
+            for (int operand : blockExits) {
+                code[operand] = length;
+            }
+            blockExits = outer;
+        }
+
+        //statements the tree walker skips are left out
+        private void statement(StatementNode statement) {
+            if (statement instanceof AssignmentNode assignmentNode) {
+                assignment(assignmentNode);
+            } else if (statement instanceof MethodCallStatementNode methodCall) {
+                methodCall(methodCall);
+            } else if (statement instanceof LoopNode loopNode) {
+                loop(loopNode);
+            } else if (statement instanceof IfNode ifNode) {
+                ifStatement(ifNode);
+            }
+        }
+
+        private void assignment(AssignmentNode assignmentNode) {
+            VariableReferenceNode target = assignmentNode.target;
+            String name = String.valueOf(target);
+            int value = expression(assignmentNode.expression, -1);
+            FrameLayout.Reference resolved = layout.reference(target);
+            if (resolved == null) {
+                emit(RegisterCode.STORE_NAME, value, constant(new Name(target, name, new FieldSite(name))));
+            } else if (resolved.slot() >= 0 && resolved.member() != null) {
+                //a local with a member's name - the tree walker sets both
+                emit(RegisterCode.STORE_LOCAL, resolved.slot(), value, constant(resolved.member()));
+            } else if (resolved.slot() >= 0) {
+                if (value != resolved.slot()) {
+                    emit(RegisterCode.MOVE, resolved.slot(), value);
+                }
+            } else if (resolved.member() != null) {
+                emit(RegisterCode.STORE_MEMBER, value, constant(new Name(target, name, resolved.member())));
+            } else {
+                fail(() -> new RuntimeException("Variable not found: " + name));
+            }
+        }
+
+        private void methodCall(MethodCallStatementNode methodCall) {
+            //same rule as getParameters() - stop at a missing or nameless parameter
+            List<ExpressionNode> parameters = new ArrayList<>();
+            for (ExpressionNode parameter : methodCall.parameters) {
+                if (parameter == null || (parameter instanceof VariableReferenceNode reference && reference.name == null)) {
+                    break;
+                }
+                parameters.add(parameter);
+            }
+            VariableReferenceNode[] returnValues = methodCall.returnValues == null ? null
+                    : methodCall.returnValues.toArray(new VariableReferenceNode[0]);
+            int first = arguments(parameters);
+            emit(RegisterCode.CALL_VOID, constant(new Call(methodCall, methodCall.objectName, methodCall.methodName, returnValues)),
+                    first, parameters.size());
+        }
+
+        /*
+         *      branch_if_false condition, else
+         *      ...
+         *      jump end
+         * else:
+         *      ...
+         * end:
+         */
+        private void ifStatement(IfNode ifNode) {
+            List<Integer> toElse = new ArrayList<>();
+            branch(ifNode.condition, false, toElse);
+            block(ifNode.statements);
+            if (ifNode.elseStatement.isPresent()) {
+                int toEnd = emitJump(RegisterCode.JUMP);
+                patch(toElse);
+                block(ifNode.elseStatement.get().statements);
+                code[toEnd] = length;
+            } else {
+                patch(toElse);
+            }
+        }
+
+        /*
+         * A condition is tested once before the first pass and once after each one:
+         *      branch_if_false condition, end
+         * set:
+         *      variable = true
+         *      ...
+         *      branch_if_true condition, set
+         * end:
+         * Anything else might be an iterator:
+         *      first = expression
+         *      jump_if_not_iterator first, test
+         *      next first, loop, <end of the enclosing block>
+         *      jump body
+         * test:
+         *      jump_if_false first, end
+         * set:
+         *      variable = true
+         * body:
+         *      ...
+         *      jump_if_not_iterator first, again
+         *      jump end                                an iterator loop runs its body once
+         * again:
+         *      branch_if_true condition, set
+         * end:
+         */
+        private void loop(LoopNode loopNode) {
+            if (loopNode.expression == null) {
+                fail(() -> new RuntimeException("Loop without a condition"));
+                return;
+            }
+            VariableReferenceNode variable = loopNode.assignment == null ? null : loopNode.assignment.orElse(null);
+            List<Integer> toEnd = new ArrayList<>();
+            int first = -1;
+            int toBody = -1;
+            if (Interpreter.isCondition(loopNode.expression)) {
+                branch(loopNode.expression, false, toEnd);
+            } else {
+                first = expression(loopNode.expression, temporary());//kept in a temporary - the body could change a variable
+                int toTest = emitJump(RegisterCode.JUMP_IF_NOT_ITERATOR, first);
+                emit(RegisterCode.NEXT, first, constant(new Next(loopNode, variable)), -1);
+                blockExits.add(length - 1);
+                toBody = emitJump(RegisterCode.JUMP);
+                code[toTest] = length;
+                toEnd.add(emitJump(RegisterCode.JUMP_IF_FALSE, first));
+            }
+
+            int set = length;
+            if (variable != null) {
+                int slot = layout.slotOf(variable);
+                int mark = next;
+                int running = load(ValueCache.bool(true), slot);
+                if (slot < 0) {
+                    emit(RegisterCode.PUT, running, constant(variable));
+                }
+                next = mark;
+            }
+            if (toBody >= 0) {
+                code[toBody] = length;
+            }
+            block(loopNode.statements);
+            if (first >= 0) {
+                int toAgain = emitJump(RegisterCode.JUMP_IF_NOT_ITERATOR, first);
+                toEnd.add(emitJump(RegisterCode.JUMP));//an iterator loop runs its body once
+                code[toAgain] = length;
+            }
+            List<Integer> again = new ArrayList<>();
+            branch(loopNode.expression, true, again);
+            for (int operand : again) {
+                code[operand] = set;
+            }
+            patch(toEnd);
+        }
+
+        //              Conditions
+
+        /**
+         * Lower a condition to jumps: jump when it comes out as "when", fall through when it doesn't. and/or only
+         * evaluate their right side when the left side didn't decide it.
+         *
+         * @param jumps - gets the operands of the jumps, to be patched with where they go
+         */
+        private void branch(ExpressionNode expression, boolean when, List<Integer> jumps) {
+            if (expression instanceof BooleanLiteralNode literal) {
+                if (literal.value == when) {
+                    jumps.add(emitJump(RegisterCode.JUMP));
+                }
+                return;
+            }
+            if (expression instanceof NotOpNode notOpNode) {
+                branch(notOpNode.left, !when, jumps);
+                return;
+            }
+            if (expression instanceof BooleanOpNode booleanOpNode && booleanOpNode.op != null) {
+                //"and" is decided by a false left side, "or" by a true one
+                boolean decidedBy = booleanOpNode.op == BooleanOpNode.BooleanOperations.or;
+                if (decidedBy == when) {
+                    branch(booleanOpNode.left, when, jumps);
+                    branch(booleanOpNode.right, when, jumps);
+                } else {
+                    List<Integer> decided = new ArrayList<>();
+                    branch(booleanOpNode.left, decidedBy, decided);
+                    branch(booleanOpNode.right, when, jumps);
+                    patch(decided);
+                }
+                return;
+            }
+            int mark = next;
+            int value = expression(expression, -1);
+            next = mark;
+            jumps.add(emitJump(when ? RegisterCode.JUMP_IF_TRUE : RegisterCode.JUMP_IF_FALSE, value));
+        }
+
+        //an and/or/not used as a value - true or false in a register
+        private int condition(ExpressionNode expression, int destination) {
+            int result = target(destination);
+            List<Integer> toFalse = new ArrayList<>();
+            branch(expression, false, toFalse);
+            load(ValueCache.bool(true), result);
+            int toEnd = emitJump(RegisterCode.JUMP);
+            patch(toFalse);
+            load(ValueCache.bool(false), result);
+            code[toEnd] = length;
+            return result;
+        }
+
+        //              Expressions
+
+        /**
+         * Lower an expression.
+         *
+         * @param destination - the register the value has to end up in, -1 for anywhere
+         * @return the register the value is in. Temporaries it used above that one are free again.
+         */
+        private int expression(ExpressionNode expression, int destination) {
+            if (expression == null) {
+                fail(() -> new NullPointerException("Missing expression"));
+                return target(destination);
+            }
+            //literals are shared values, put in the pool once right here
+            if (expression instanceof BooleanLiteralNode literal) {
+                return load(ValueCache.bool(literal.value), destination);
+            }
+            if (expression instanceof NumericLiteralNode literal) {
+                return load(interpreter.literal(literal), destination);
+            }
+            if (expression instanceof StringLiteralNode literal) {
+                return load(interpreter.literal(literal), destination);
+            }
+            if (expression instanceof BooleanOpNode booleanOpNode) {
+                if (booleanOpNode.op == null) {
+                    return binary(-1, booleanOpNode.left, booleanOpNode.right, destination);
+                }
+                return condition(booleanOpNode, destination);
+            }
+            if (expression instanceof NotOpNode) {
+                return condition(expression, destination);
+            }
+            if (expression instanceof CompareNode compareNode) {
+                return binary(compareOpcode(compareNode.op), compareNode.left, compareNode.right, destination);
+            }
+            if (expression instanceof MathOpNode mathOpNode) {
+                return binary(mathOpcode(mathOpNode.op), mathOpNode.left, mathOpNode.right, destination);
+            }
+            if (expression instanceof MethodCallExpressionNode methodCall) {
+                int mark = next;
+                int first = arguments(methodCall.parameters);
+                next = mark;
+                int result = target(destination);
+                emit(RegisterCode.CALL, result, constant(new Call(methodCall, methodCall.objectName, methodCall.methodName, null)),
+                        first, methodCall.parameters.size());
+                return result;
+            }
+            if (expression instanceof VariableReferenceNode reference) {
+                return variable(reference, destination);
+            }
+            if (expression instanceof NewNode newNode) {
+                return newObject(newNode, destination);
+            }
+            String type = expression.getClass().getSimpleName();
+            fail(() -> new IllegalArgumentException("Unsupported ExpressionNode type: " + type));
+            return target(destination);
+        }
+
+        private int variable(VariableReferenceNode reference, int destination) {
+            if (reference.name == null) {
+                return load(null, destination);
+            }
+            FrameLayout.Reference resolved = layout.reference(reference);
+            int slot = resolved == null ? layout.slotOf(reference) : resolved.slot();
+            if (slot >= 0) {
+                if (destination < 0 || destination == slot) {
+                    return slot;
+                }
+                emit(RegisterCode.MOVE, destination, slot);
+                return destination;
+            }
+            int result = target(destination);
+            if (resolved == null) {
+                emit(RegisterCode.LOAD_NAME, result, constant(new Name(reference, reference.name, new FieldSite(reference.name))));
+            } else if (resolved.member() != null) {
+                //decided here: a member is read from the object, never looked for in the frame
+                emit(RegisterCode.LOAD_MEMBER, result, constant(new Name(reference, reference.name, resolved.member())));
+            } else {
+                String name = reference.name;
+                fail(() -> new RuntimeException("Variable not found: " + name));
+            }
+            return result;
+        }
+
+        private int newObject(NewNode newNode, int destination) {
+            Optional<ClassNode> classNodeOpt = interpreter.getClassByName(newNode.className);
+            if (classNodeOpt.isEmpty()) {
+                fail(() -> new RuntimeException("Class not found: " + newNode.className));
+                return target(destination);
+            }
+            ClassNode classNode = classNodeOpt.get();
+            int result = target(destination);
+            emit(RegisterCode.NEW, result, constant(classNode));
+            if (interpreter.hasConstructor(classNode, newNode.parameters.size())) {
+                int mark = next;
+                int first = arguments(newNode.parameters);
+                next = mark;
+                emit(RegisterCode.CONSTRUCT, result, constant(newNode), first, newNode.parameters.size());
+            }
+            return result;
+        }
+
+        //both sides, left first, then the operator - the result can reuse the left side's temporary
+        private int binary(int opcode, ExpressionNode left, ExpressionNode right, int destination) {
+            int mark = next;
+            int l = expression(left, -1);
+            int r = expression(right, -1);
+            next = mark;
+            int result = target(destination);
+            if (opcode < 0) {//an operator the other engines don't know either
+                fail(() -> new RuntimeException("Unsupported operator"));
+            } else {
+                emit(opcode, result, l, r);
+            }
+            return result;
+        }
+
+        //lower the arguments into consecutive registers and return the first
+        private int arguments(List<ExpressionNode> arguments) {
+            int first = next;
+            next += arguments.size();
+            registers = Math.max(registers, next);
+            for (int i = 0; i < arguments.size(); i++) {
+                expression(arguments.get(i), first + i);
+            }
+            return first;
+        }
+
+        private int load(Object value, int destination) {
+            int result = target(destination);
+            emit(RegisterCode.CONST, result, constant(value));
+            return result;
+        }
+
+        private int target(int destination) {
+            return destination >= 0 ? destination : temporary();
+        }
+
+        private int temporary() {
+            int register = next++;
+            registers = Math.max(registers, next);
+            return register;
+        }
+
+        private void fail(Supplier<RuntimeException> exception) {
+            emit(RegisterCode.THROW, constant(exception));
+        }
+
+        private int constant(Object value) {
+            Integer index = constantIndex.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndex.put(value, index);
+            }
+            return index;
+        }
+
+        private void emit(int... instruction) {
+            if (length + instruction.length > code.length) {
+                code = Arrays.copyOf(code, Math.max(code.length * 2, length + instruction.length));
+            }
+            System.arraycopy(instruction, 0, code, length, instruction.length);
+            length += instruction.length;
+        }
+
+        //point the jumps at what comes next
+        private void patch(List<Integer> jumps) {
+            for (int operand : jumps) {
+                code[operand] = length;
+            }
+        }
+
+        //emit a jump with its target still to come, and return where to patch it in
+        private int emitJump(int opcode, int... operands) {
+            int[] instruction = Arrays.copyOf(new int[]{opcode}, operands.length + 2);
+            System.arraycopy(operands, 0, instruction, 1, operands.length);
+            instruction[instruction.length - 1] = -1;
+            emit(instruction);
+            return length - 1;
+        }
+    }
+
+    private static int mathOpcode(MathOpNode.MathOperations op) {
+        if (op == null) {
+            return -1;
+        }
+        return switch (op) {
+            case add -> RegisterCode.ADD;
+            case subtract -> RegisterCode.SUBTRACT;
+            case multiply -> RegisterCode.MULTIPLY;
+            case divide -> RegisterCode.DIVIDE;
+            case modulo -> RegisterCode.MODULO;
+        };
+    }
+
+    private static int compareOpcode(CompareNode.CompareOperations op) {
+        if (op == null) {
+            return -1;
+        }
+        return switch (op) {
+            case eq -> RegisterCode.EQUAL;
+            case ne -> RegisterCode.NOT_EQUAL;
+            case lt -> RegisterCode.LESS;
+            case le -> RegisterCode.LESS_EQUAL;
+            case gt -> RegisterCode.GREATER;
+            case ge -> RegisterCode.GREATER_EQUAL;
+        };
+    }
+}
@@ -0,0 +1,239 @@
+package Interpreter;
+
+import AST.ClassNode;
+import AST.ConstructorNode;
+import AST.NewNode;
+import AST.VariableReferenceNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs RegisterCode for the REGISTER_VM execution mode: one loop, one switch on the opcode, registers in a plain
+ * array (the frame's slots, with the temporaries after them). Calls, "new" and getNext() go back through the
+ * Interpreter, so inline caches and constructors work the same as in every other mode.
+ */
+public class RegisterMachine {
+    private final Interpreter interpreter;
+
+    public RegisterMachine(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * @param code   - the body to run
+     * @param object - the object we are inside (might be empty for shared)
+     * @param locals - a frame with at least code.registers() registers
+     */
+    @SuppressWarnings("unchecked")
+    public void run(RegisterCode code, Optional<ObjectIDT> object, Frame locals) {
+        int[] c = code.code();
+        Object[] k = code.constants();
+        InterpreterDataType[] r = locals.registers();
+        int pc = 0;
+        while (true) {
+            switch (c[pc]) {
+                case RegisterCode.END:
+                    return;
+                case RegisterCode.CONST:
+                    r[c[pc + 1]] = (InterpreterDataType) k[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case RegisterCode.MOVE:
+                    r[c[pc + 1]] = r[c[pc + 2]];
+                    pc += 3;
+                    break;
+                case RegisterCode.LOAD_NAME:
+                    r[c[pc + 1]] = load((RegisterCompiler.Name) k[c[pc + 2]], object, locals);
+                    pc += 3;
+                    break;
+                case RegisterCode.STORE_LOCAL: {
+                    InterpreterDataType v = r[c[pc + 2]];
+                    if (object.isPresent()) {
+                        ObjectIDT self = object.get();
+                        int member = ((FieldSite) k[c[pc + 3]]).slotIn(self);
+                        if (member >= 0) {
+                            self.set(member, v);
+                        }
+                    }
+                    r[c[pc + 1]] = v;
+                    pc += 4;
+                    break;
+                }
+                case RegisterCode.STORE_NAME:
+                    store((RegisterCompiler.Name) k[c[pc + 2]], r[c[pc + 1]], object, locals);
+                    pc += 3;
+                    break;
+                case RegisterCode.PUT:
+                    locals.put((VariableReferenceNode) k[c[pc + 2]], r[c[pc + 1]]);
+                    pc += 3;
+                    break;
+                case RegisterCode.ADD:
+                case RegisterCode.SUBTRACT:
+                case RegisterCode.MULTIPLY:
+                case RegisterCode.DIVIDE:
+                case RegisterCode.MODULO:
+                    r[c[pc + 1]] = math(c[pc], r[c[pc + 2]], r[c[pc + 3]]);
+                    pc += 4;
+                    break;
+                case RegisterCode.EQUAL:
+                case RegisterCode.NOT_EQUAL:
+                case RegisterCode.LESS:
+                case RegisterCode.LESS_EQUAL:
+                case RegisterCode.GREATER:
+                case RegisterCode.GREATER_EQUAL:
+                    r[c[pc + 1]] = compare(c[pc], r[c[pc + 2]], r[c[pc + 3]]);
+                    pc += 4;
+                    break;
+                case RegisterCode.CALL: {
+                    RegisterCompiler.Call call = (RegisterCompiler.Call) k[c[pc + 2]];
+                    List<InterpreterDataType> results = interpreter.dispatch(call.site(), call.objectName(), call.methodName(),
+                            arguments(r, c[pc + 3], c[pc + 4]), object, locals);
+                    r[c[pc + 1]] = results.isEmpty() ? null : results.get(0);
+                    pc += 5;
+                    break;
+                }
+                case RegisterCode.CALL_VOID: {
+                    RegisterCompiler.Call call = (RegisterCompiler.Call) k[c[pc + 1]];
+                    List<InterpreterDataType> results = interpreter.dispatch(call.site(), call.objectName(), call.methodName(),
+                            arguments(r, c[pc + 2], c[pc + 3]), object, locals);
+                    VariableReferenceNode[] returnValues = call.returnValues();
+                    if (returnValues != null) {
+                        if (returnValues.length > results.size()) {
+                            throw new RuntimeException("Method " + call.methodName() + " returns " + results.size()
+                                    + " values but " + returnValues.length + " were expected");
+                        }
+                        for (int i = 0; i < returnValues.length; i++) {
+                            interpreter.assignVariable(returnValues[i], results.get(i), locals, object);
+                        }
+                    }
+                    pc += 4;
+                    break;
+                }
+                case RegisterCode.NEW:
+                    r[c[pc + 1]] = interpreter.newObject((ClassNode) k[c[pc + 2]], locals, object);
+                    pc += 3;
+                    break;
+                case RegisterCode.CONSTRUCT: {
+                    ObjectIDT newObject = (ObjectIDT) r[c[pc + 1]];
+                    List<InterpreterDataType> values = arguments(r, c[pc + 3], c[pc + 4]);
+                    ConstructorNode constructor = interpreter.constructorFor((NewNode) k[c[pc + 2]], newObject.astNode, values)
+                            .orElseThrow(() -> new RuntimeException("No matching constructor found for class: " + newObject.astNode.name));
+                    interpreter.interpretConstructorCall(newObject, constructor, values);
+                    pc += 5;
+                    break;
+                }
+                case RegisterCode.JUMP:
+                    pc = c[pc + 1];
+                    break;
+                case RegisterCode.JUMP_IF_FALSE:
+                    pc = Interpreter.truth(r[c[pc + 1]]) ? pc + 3 : c[pc + 2];
+                    break;
+                case RegisterCode.JUMP_IF_TRUE:
+                    pc = Interpreter.truth(r[c[pc + 1]]) ? c[pc + 2] : pc + 3;
+                    break;
+                case RegisterCode.JUMP_IF_NOT_ITERATOR:
+                    pc = r[c[pc + 1]] instanceof ObjectIDT iterator && interpreter.isIterator(iterator) ? pc + 3 : c[pc + 2];
+                    break;
+                case RegisterCode.NEXT: {
+                    RegisterCompiler.Next next = (RegisterCompiler.Next) k[c[pc + 2]];
+                    List<InterpreterDataType> result = interpreter.callGetNext(next.loop(), (ObjectIDT) r[c[pc + 1]]);
+                    if (!((BooleanIDT) result.get(0)).Value) {
+                        pc = c[pc + 3];
+                    } else {
+                        if (next.variable() != null) {
+                            locals.put(next.variable(), result.get(1));
+                        }
+                        pc += 4;
+                    }
+                    break;
+                }
+                case RegisterCode.LOAD_MEMBER: {
+                    RegisterCompiler.Name name = (RegisterCompiler.Name) k[c[pc + 2]];
+                    r[c[pc + 1]] = object.get().get(member(name, object));
+                    pc += 3;
+                    break;
+                }
+                case RegisterCode.STORE_MEMBER: {
+                    RegisterCompiler.Name name = (RegisterCompiler.Name) k[c[pc + 2]];
+                    object.get().set(member(name, object), r[c[pc + 1]]);
+                    pc += 3;
+                    break;
+                }
+                case RegisterCode.THROW:
+                    throw ((Supplier<RuntimeException>) k[c[pc + 1]]).get();
+                default:
+                    throw new IllegalStateException("Bad opcode " + c[pc] + " at " + pc);
+            }
+        }
+    }
+
+    private static List<InterpreterDataType> arguments(InterpreterDataType[] r, int first, int count) {
+        List<InterpreterDataType> values = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++) {
+            values.add(r[i]);
+        }
+        return values;
+    }
+
+    //the member's slot in the object - a shape check in the FieldSite
+    private static int member(RegisterCompiler.Name name, Optional<ObjectIDT> object) {
+        int member = object.isPresent() ? name.field().slotIn(object.get()) : -1;
+        if (member < 0) {
+            throw new RuntimeException("Variable not found: " + name.name());
+        }
+        return member;
+    }
+
+    //by name, like the tree walker does for a node SlotResolver never saw
+    private static InterpreterDataType load(RegisterCompiler.Name name, Optional<ObjectIDT> object, Frame locals) {
+        if (locals.containsKey(name.reference())) {
+            return locals.get(name.reference());
+        }
+        int member = object.isPresent() ? name.field().slotIn(object.get()) : -1;
+        if (member >= 0) {
+            return object.get().get(member);
+        }
+        throw new RuntimeException("Variable not found: " + name.name());
+    }
+
+    private static void store(RegisterCompiler.Name name, InterpreterDataType value, Optional<ObjectIDT> object, Frame locals) {
+        int member = object.isPresent() ? name.field().slotIn(object.get()) : -1;
+        if (member >= 0) {
+            object.get().set(member, value);
+        } else if (locals.containsKey(name.reference())) {
+            locals.put(name.reference(), value);
+        } else {
+            throw new RuntimeException("Variable not found: " + name.name());
+        }
+    }
+
+    private static InterpreterDataType math(int opcode, InterpreterDataType l, InterpreterDataType r) {
+        if (!(l instanceof NumberIDT ln && r instanceof NumberIDT rn)) {
+            throw new RuntimeException("Math operation on non-number types");
+        }
+        return switch (opcode) {
+            case RegisterCode.ADD -> ValueCache.number(ln.Value + rn.Value);
+            case RegisterCode.SUBTRACT -> ValueCache.number(ln.Value - rn.Value);
+            case RegisterCode.MULTIPLY -> ValueCache.number(ln.Value * rn.Value);
+            case RegisterCode.DIVIDE -> ValueCache.number(ln.Value / rn.Value);
+            default -> ValueCache.number(ln.Value % rn.Value);
+        };
+    }
+
+    private static InterpreterDataType compare(int opcode, InterpreterDataType l, InterpreterDataType r) {
+        if (!(l instanceof NumberIDT ln && r instanceof NumberIDT rn)) {
+            throw new RuntimeException("Comparison on non-comparable types");
+        }
+        return ValueCache.bool(switch (opcode) {
+            case RegisterCode.EQUAL -> ln.Value == rn.Value;
+            case RegisterCode.NOT_EQUAL -> ln.Value != rn.Value;
+            case RegisterCode.LESS -> ln.Value < rn.Value;
+            case RegisterCode.LESS_EQUAL -> ln.Value <= rn.Value;
+            case RegisterCode.GREATER -> ln.Value > rn.Value;
+            default -> ln.Value >= rn.Value;
+        });
+    }
+}
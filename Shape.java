@@ -0,0 +1,44 @@
+package Interpreter;
+
+import AST.ClassNode;
+import AST.MemberNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The layout shared by every object of one class (a "hidden class"): which slot each member lives in.
+ * Built once per class from ClassNode.members (the ClassTable keeps them), so an object is just a pointer to its
+ * shape plus an array of values - no map per object.
+ */
+public class Shape {
+    private final String[] names;
+    private final HashMap<String, Integer> slotByName = new HashMap<>();
+
+    public Shape(ClassNode classNode) {
+        List<String> names = new ArrayList<>();
+        for (MemberNode member : classNode.members) {
+            String name = member.declaration.name;
+            if (!slotByName.containsKey(name)) {//a repeated name shares the first slot
+                slotByName.put(name, names.size());
+                names.add(name);
+            }
+        }
+        this.names = names.toArray(new String[0]);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public String nameOf(int slot) {
+        return names[slot];
+    }
+
+    //-1 if objects of this shape have no such member
+    public int slotOf(String name) {
+        Integer slot = slotByName.get(name);
+        return slot == null ? -1 : slot;
+    }
+}
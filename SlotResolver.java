@@ -0,0 +1,159 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolution pass - runs once per method/constructor before anything executes.
+ * Assigns every parameter, return value and local a fixed slot, then walks the body and records the slot (and a
+ * member FieldSite) for every VariableReferenceNode so the interpreter never has to look a variable up by name.
+ * Whether a name is a member of the class is settled here too, once, instead of on every access.
+ */
+public class SlotResolver {
+    private final Set<String> members;
+    private final HashMap<String, Integer> slotByName = new HashMap<>();
+    private final IdentityHashMap<VariableReferenceNode, FrameLayout.Reference> slotByReference = new IdentityHashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    private SlotResolver(ClassNode classNode) {
+        members = new HashSet<>();
+        for (MemberNode member : classNode.members) {
+            members.add(member.declaration.name);
+        }
+    }
+
+    /*
+     * Same scoping as NAMED_LOCALS, where Interpreter.newFrame() puts every declaration into one map: each parameter
+     * and local gets its own slot and a name means its last declaration, so a local that shadows a parameter starts out
+     * empty. A return value is only a fresh slot if nothing before it has its name - one named like a parameter is
+     * that parameter.
+     */
+    public static FrameLayout resolve(MethodDeclarationNode m, ClassNode classNode) {
+        SlotResolver resolver = new SlotResolver(classNode);
+        int[] parameterSlots = resolver.declare(m.parameters);
+        for (VariableDeclarationNode returnValue : m.returns) {
+            resolver.slotByName.computeIfAbsent(returnValue.name, resolver::newSlot);
+        }
+        resolver.declare(m.locals);
+        //the caller gets whatever the name means at the end - the local, if one shadows it
+        int[] returnSlots = new int[m.returns.size()];
+        for (int i = 0; i < returnSlots.length; i++) {
+            returnSlots[i] = resolver.slotByName.get(m.returns.get(i).name);
+        }
+        resolver.resolveStatements(m.statements);
+        return resolver.build(parameterSlots, returnSlots);
+    }
+
+    public static FrameLayout resolve(ConstructorNode c, ClassNode classNode) {
+        SlotResolver resolver = new SlotResolver(classNode);
+        int[] parameterSlots = resolver.declare(c.parameters);
+        resolver.declare(c.locals);
+        resolver.resolveStatements(c.statements);
+        return resolver.build(parameterSlots, new int[0]);
+    }
+
+    private FrameLayout build(int[] parameterSlots, int[] returnSlots) {
+        return new FrameLayout(names.toArray(new String[0]), parameterSlots, returnSlots, slotByName, slotByReference);
+    }
+
+    //give each declaration its own slot; a repeated name now means the later one
+    private int[] declare(List<VariableDeclarationNode> declarations) {
+        int[] slots = new int[declarations.size()];
+        for (int i = 0; i < declarations.size(); i++) {
+            String name = declarations.get(i).name;
+            slots[i] = newSlot(name);
+            slotByName.put(name, slots[i]);
+        }
+        return slots;
+    }
+
+    private int newSlot(String name) {
+        names.add(name);
+        return names.size() - 1;
+    }
+
+    //a variable the body stores into without declaring it (a loop variable, a call's return target) is still a local
+    private void declareImplicitly(VariableReferenceNode reference) {
+        if (reference != null && reference.name != null && !slotByName.containsKey(reference.name)) {
+            slotByName.put(reference.name, newSlot(reference.name));
+        }
+    }
+
+    private void resolveStatements(List<StatementNode> statements) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode statement : statements) {
+            if (statement instanceof AssignmentNode assignmentNode) {
+                resolveReference(assignmentNode.target);
+                resolveExpression(assignmentNode.expression);
+            } else if (statement instanceof MethodCallStatementNode methodCall) {
+                for (VariableReferenceNode returnValue : methodCall.returnValues) {
+                    //assignVariable() writes a member of that name instead, so only a non-member needs a slot
+                    if (returnValue != null && !members.contains(returnValue.name)) {
+                        declareImplicitly(returnValue);
+                    }
+                    resolveReference(returnValue);
+                }
+                resolveExpressions(methodCall.parameters);
+            } else if (statement instanceof LoopNode loopNode) {
+                if (loopNode.assignment != null && loopNode.assignment.isPresent()) {
+                    declareImplicitly(loopNode.assignment.get());
+                    resolveReference(loopNode.assignment.get());
+                }
+                resolveExpression(loopNode.expression);
+                resolveStatements(loopNode.statements);
+            } else if (statement instanceof IfNode ifNode) {
+                resolveExpression(ifNode.condition);
+                resolveStatements(ifNode.statements);
+                if (ifNode.elseStatement != null && ifNode.elseStatement.isPresent()) {
+                    resolveStatements(ifNode.elseStatement.get().statements);
+                }
+            }
+        }
+    }
+
+    private void resolveExpressions(List<ExpressionNode> expressions) {
+        for (ExpressionNode expression : expressions) {
+            resolveExpression(expression);
+        }
+    }
+
+    private void resolveExpression(ExpressionNode expression) {
+        if (expression instanceof VariableReferenceNode reference) {
+            resolveReference(reference);
+        } else if (expression instanceof MathOpNode mathOpNode) {
+            resolveExpression(mathOpNode.left);
+            resolveExpression(mathOpNode.right);
+        } else if (expression instanceof CompareNode compareNode) {
+            resolveExpression(compareNode.left);
+            resolveExpression(compareNode.right);
+        } else if (expression instanceof BooleanOpNode booleanOpNode) {
+            resolveExpression(booleanOpNode.left);
+            resolveExpression(booleanOpNode.right);
+        } else if (expression instanceof NotOpNode notOpNode) {
+            resolveExpression(notOpNode.left);
+        } else if (expression instanceof MethodCallExpressionNode methodCall) {
+            resolveExpressions(methodCall.parameters);
+        } else if (expression instanceof NewNode newNode) {
+            resolveExpressions(newNode.parameters);
+        }
+        //literals have nothing to resolve
+    }
+
+    private void resolveReference(VariableReferenceNode reference) {
+        if (reference == null || reference.name == null) {
+            return;
+        }
+        Integer slot = slotByName.get(reference.name);
+        //-1 means member (or undeclared); a member reference gets its own cache, like the compiled engines' sites
+        FieldSite member = members.contains(reference.name) ? new FieldSite(reference.name) : null;
+        slotByReference.put(reference, new FrameLayout.Reference(slot == null ? -1 : slot, member));
+    }
+}
@@ -1,16 +1,86 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
 public class TextManager {
-    private final String text;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;//null when the whole text was handed in up front, or for a mapped file
+    private final ByteBuffer bytes;//a mapped file, decoded into buffer a piece at a time
+    private final CharsetDecoder decoder;
+    private char[] buffer;
+    private int limit;//how much of buffer holds text
     private  int position;
+    private boolean exhausted;//the reader has hit the end
+    private int mark = -1;//start of the token being lexed - fill() keeps everything from here on in the buffer
     private int line;
     private int column;
 
     public TextManager(String text) {
-        this.text = text;
+        this.reader = null;
+        this.bytes = null;
+        this.decoder = null;
+        this.buffer = text.toCharArray();
+        this.limit = buffer.length;
+        position = 0;
+        this.line = 1;
+        this.column = 0;
+    }
+
+    /**
+     * Reads the text a buffer at a time, so only BUFFER_SIZE characters of the source are ever held at once.
+     */
+    public TextManager(Reader reader) {
+        this.reader = reader;
+        this.bytes = null;
+        this.decoder = null;
+        this.buffer = new char[BUFFER_SIZE];
+        this.limit = 0;
+        position = 0;
+        this.line = 1;
+        this.column = 0;
+    }
+
+    private TextManager(ByteBuffer bytes) {
+        this.reader = null;
+        this.bytes = bytes;
+        this.decoder = StandardCharsets.UTF_8.newDecoder();
+        this.buffer = new char[BUFFER_SIZE];
+        this.limit = 0;
         position = 0;
         this.line = 1;
         this.column = 0;
     }
 
+    /**
+     * Memory-map a UTF-8 source file. The file stays in the page cache rather than on the heap; it is decoded into
+     * the buffer a piece at a time as the lexer gets to it.
+     */
+    public static TextManager mapFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too big to map");
+            }
+            return new TextManager(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * UTF-8 text already in memory, decoded into the buffer a piece at a time like a mapped file.
+     */
+    public static TextManager decode(ByteBuffer utf8) {
+        return new TextManager(utf8);
+    }
+
 
     public int getColumnNumber() {
         return column;
@@ -20,7 +90,7 @@ public class TextManager {
     }
 
     public  boolean isAtEnd() {
-        return position >= text.length();
+        return position >= limit && !fill();
     }
 
     public char peekCharacter() {
@@ -28,11 +98,17 @@ public class TextManager {
         if(isAtEnd()) {
             return '\0';
         };
-        return text.charAt(position);
+        return buffer[position];
     }
 
+    //look past the next character - peekCharacter(0) is peekCharacter(). '\0' past the end
     public char peekCharacter(int distance) {
-        return '~';
+        while (position + distance >= limit) {
+            if (!fill()) {
+                return '\0';
+            }
+        }
+        return buffer[position + distance];
     }
 
     public  char getCharacter() throws Exception {
@@ -41,7 +117,7 @@ public class TextManager {
            return '\0';
 
         }
-        char C=text.charAt(position);
+        char C=buffer[position];
         position++;
         if(C== '\n'){
             line++;
@@ -52,4 +128,91 @@ public class TextManager {
             return C;
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Step past the character peekCharacter() returned, when the caller already knows it isn't a newline.
+     * Cheaper than getCharacter() for runs of letters and digits.
+     */
+    public void advance() {
+        position++;
+        column++;
+    }
+
+    //              Token text
+    //
+    // The lexer marks where a token starts and asks for its text by offset at the end, instead of copying it
+    // a character at a time. Offsets are into source(), and stay good until the next mark.
+
+    public void mark() {
+        mark = position;
+    }
+
+    public int markOffset() {
+        return mark;
+    }
+
+    public int offset() {
+        return position;
+    }
+
+    //true when source() is the whole text and never changes, so offsets into it can be kept past the next mark
+    public boolean holdsWholeSource() {
+        return reader == null && bytes == null;
+    }
+
+    public char[] source() {
+        return buffer;
+    }
+
+    public String text(int start, int end) {
+        return new String(buffer, start, end - start);
+    }
+
+    //read the next piece of the text onto the end of the buffer, false when there is none
+    private boolean fill() {
+        if (reader == null && bytes == null || exhausted) {
+            return false;
+        }
+        try {
+            //drop what has been used - but not the token being lexed, or characters that were peeked at
+            int from = mark >= 0 ? mark : position;
+            int keep = limit - from;
+            if (keep > buffer.length - 2) {//leave room for at least a surrogate pair
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            System.arraycopy(buffer, from, buffer, 0, keep);
+            position -= from;
+            if (mark >= 0) {
+                mark -= from;
+            }
+            limit = keep;
+            int read;
+            do {
+                read = read(keep, buffer.length - keep);
+            } while (read == 0);
+            if (read < 0) {
+                exhausted = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int read(int offset, int length) throws IOException {
+        if (reader != null) {
+            return reader.read(buffer, offset, length);
+        }
+        if (!bytes.hasRemaining()) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(buffer, offset, length);
+        CoderResult result = decoder.decode(bytes, out, true);
+        if (result.isError()) {
+            result.throwException();
+        }
+        return out.position() - offset;
+    }
+}
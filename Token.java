@@ -1,4 +1,4 @@
-import java.util.Optional;
+import java.util.Objects;
 
 public class Token {
     public enum TokenTypes {
@@ -14,7 +14,9 @@ public class Token {
         AND, OR, NOT
     }
 
-    private Optional<String> value;
+    private String value;//null for tokens without one, and for lazy tokens until someone asks for it
+    private final char[] source;//lazy tokens: the value is source[start, end), made into a String on first use
+    private final int start, end;
 
     private final TokenTypes type;
 
@@ -34,21 +36,78 @@ public class Token {
         this.lineNumber = lineNumber;
         this.columnNumber = columnNumber;
         this.type = type;
-        this.value = Optional.empty();
+        this.value = null;
+        this.source = null;
+        this.start = -1;
+        this.end = -1;
     }
     public Token(TokenTypes type, int lineNumber, int columnNumber, String value ){
-        this(type, lineNumber,columnNumber);
-        this.value = Optional.of(value);
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+        this.type = type;
+        this.value = value;
+        this.source = null;
+        this.start = -1;
+        this.end = -1;
+    }
+    //the value is the text of source between the offsets - source must not change afterwards
+    public Token(TokenTypes type, int lineNumber, int columnNumber, char[] source, int start, int end){
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+        this.type = type;
+        this.value = null;
+        this.source = source;
+        this.start = start;
+        this.end = end;
     }
 
     public TokenTypes getType() { return type; }
 
     public String getValue() {
-           return value.orElse("");
+        if (value == null && source != null) {
+            value = new String(source, start, end - start);
+        }
+        return value == null ? "" : value;
+    }
+
+    public boolean hasValue() {
+        return value != null || source != null;
+    }
+
+    //where the value sits in the source text, -1 if the token doesn't know
+    public int getStartOffset() {
+        return start;
+    }
+
+    public int getEndOffset() {
+        return end;
+    }
+
+    //the text the offsets point into, null if the token doesn't have one
+    public char[] getSource() {
+        return source;
+    }
+
+    //has a lazy value been made into a String yet? (always true for a token built with its value)
+    public boolean isValueMade() {
+        return value != null || source == null;
+    }
+
+    //tokens are values - TokenBuffer hands out a new Token for a position each time it is asked
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Token other && type == other.type && lineNumber == other.lineNumber
+                && columnNumber == other.columnNumber && hasValue() == other.hasValue()
+                && getValue().equals(other.getValue());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, lineNumber, columnNumber, getValue());
     }
 
     @Override
     public String toString() {
-       return type + " " + (value.orElse("")) + "@" + lineNumber + "," + columnNumber;
+       return type + " " + getValue() + "@" + lineNumber + "," + columnNumber;
     }
 }
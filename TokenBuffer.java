@@ -0,0 +1,109 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The tokens of a whole file packed into parallel int arrays - type ordinal, line, column and an index into a table
+ * of values - instead of one Token object each. A value that shows up many times (the same variable name, say) is
+ * only stored once. A lazy token (one whose value is still just offsets into the lexer's source) keeps its offsets
+ * instead, so no String is made for it until value() or the Token asks.
+ */
+public final class TokenBuffer {
+    private static final Token.TokenTypes[] TYPES = Token.TokenTypes.values();
+    private static final int NO_VALUE = -1;
+    private static final int IN_SOURCE = -2;//the value is source[starts[i], ends[i])
+
+    private int[] types = new int[256];
+    private int[] lines = new int[256];
+    private int[] columns = new int[256];
+    private int[] values = new int[256];
+    private int[] starts = new int[256];
+    private int[] ends = new int[256];
+    private char[] source;//what the lazy tokens point into - one lexer's whole source
+    private int size;
+    private final List<String> valueTable = new ArrayList<>();
+    private final HashMap<String, Integer> valueIndex = new HashMap<>();
+
+    public TokenBuffer() {
+    }
+
+    public TokenBuffer(List<Token> tokens) {
+        for (Token token : tokens) {//iterate, a LinkedList is O(n) per get
+            add(token);
+        }
+    }
+
+    public void add(Token token) {
+        if (!token.isValueMade() && (source == null || source == token.getSource())) {
+            source = token.getSource();
+            grow();
+            types[size] = token.getType().ordinal();
+            lines[size] = token.getLineNumber();
+            columns[size] = token.getColumnNumber();
+            values[size] = IN_SOURCE;
+            starts[size] = token.getStartOffset();
+            ends[size] = token.getEndOffset();
+            size++;
+            return;
+        }
+        add(token.getType(), token.getLineNumber(), token.getColumnNumber(), token.hasValue() ? token.getValue() : null);
+    }
+
+    public void add(Token.TokenTypes type, int line, int column, String value) {
+        grow();
+        types[size] = type.ordinal();
+        lines[size] = line;
+        columns[size] = column;
+        values[size] = value == null ? NO_VALUE : valueIndex.computeIfAbsent(value, v -> {
+            valueTable.add(v);
+            return valueTable.size() - 1;
+        });
+        size++;
+    }
+
+    private void grow() {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.TokenTypes type(int i) {
+        return TYPES[types[i]];
+    }
+
+    public int line(int i) {
+        return lines[i];
+    }
+
+    public int column(int i) {
+        return columns[i];
+    }
+
+    //null for tokens that don't carry a value
+    public String value(int i) {
+        if (values[i] == IN_SOURCE) {
+            return new String(source, starts[i], ends[i] - starts[i]);
+        }
+        return values[i] == NO_VALUE ? null : valueTable.get(values[i]);
+    }
+
+    //a Token object for callers that want one - still lazy if the token it came from was
+    public Token token(int i) {
+        if (values[i] == IN_SOURCE) {
+            return new Token(type(i), lines[i], columns[i], source, starts[i], ends[i]);
+        }
+        String value = value(i);
+        return value == null ? new Token(type(i), lines[i], columns[i]) : new Token(type(i), lines[i], columns[i], value);
+    }
+}
@@ -1,56 +1,144 @@
 import java.util.List;
 import java.util.Optional;
 
+/**
+ * Hands the parser its tokens. Built from a list (or a TokenBuffer) it walks a TokenBuffer; built from a Lexer it
+ * pulls tokens as the parser asks for them and only keeps the few the parser has peeked at but not taken yet.
+ */
 public class TokenManager {
-    private final List<Token> tokens;
+    private final TokenBuffer tokens;//null when streaming from a lexer
+    private final Lexer lexer;
     private int currentTokenIndex;
+    private int cachedIndex = -1;//the parser peeks at the current token over and over - only make one Token for it
+    private Optional<Token> cachedToken;
+    private Token[] window = new Token[4];//streaming: tokens pulled from the lexer but not taken yet
+    private int windowStart;
+    private int windowCount;
+    private boolean lexerDone;
 
     public TokenManager(List<Token> tokens) {
+        this(new TokenBuffer(tokens));
+    }
+
+    public TokenManager(TokenBuffer tokens) {
         this.tokens = tokens;
+        this.lexer = null;
+        this.currentTokenIndex = 0;
+    }
+
+    public TokenManager(Lexer lexer) {
+        this.tokens = null;
+        this.lexer = lexer;
         this.currentTokenIndex = 0;
     }
 
     public boolean done() {
+        if (tokens == null) {
+            return !fill(0);
+        }
         return currentTokenIndex >= tokens.size();
     }
 
     public Optional<Token> matchAndRemove(Token.TokenTypes t) {
-        if (currentTokenIndex < tokens.size()) {
-            Token currentToken = tokens.get(currentTokenIndex);
-            if (currentToken.getType() == t) {
-                currentTokenIndex++;
-                return Optional.of(currentToken);
-            }
+        if (tokens != null && (currentTokenIndex >= tokens.size() || tokens.type(currentTokenIndex) != t)) {
+            return Optional.empty();//don't build a Token just to find it doesn't match
+        }
+        Optional<Token> current = peek(0);
+        if (current.isPresent() && current.get().getType() == t) {
+            advance();
+            return current;
         }
         return Optional.empty(); // No match found
     }
 
     public Optional<Token> peek(int i){
+        if (tokens == null) {
+            return i >= 0 && fill(i) ? Optional.of(window[(windowStart + i) % window.length]) : Optional.empty();
+        }
         int peekindex = currentTokenIndex + i;
+        if (peekindex == cachedIndex) {
+            return cachedToken;
+        }
         if(peekindex < tokens.size() && peekindex >= 0) {
-            return Optional.of(tokens.get(peekindex));
+            cachedIndex = peekindex;
+            cachedToken = Optional.of(tokens.token(peekindex));
+            return cachedToken;
         }
         return Optional.empty();
     }
 
     public boolean nextTwoTokensMatch(Token.TokenTypes first, Token.TokenTypes second){
-        if(currentTokenIndex +1 < tokens.size()){
-            return tokens.get(currentTokenIndex).getType()== first&&
-                    tokens.get(currentTokenIndex+1).getType()== second;
+        if (tokens != null) {
+            return currentTokenIndex + 1 < tokens.size() && tokens.type(currentTokenIndex) == first
+                    && tokens.type(currentTokenIndex + 1) == second;
         }
-        return false;
+        Optional<Token> one = peek(0);
+        Optional<Token> two = peek(1);
+        return one.isPresent() && two.isPresent() && one.get().getType() == first && two.get().getType() == second;
     }
     public int getCurrentLine(){
-        if(currentTokenIndex < tokens.size()){
-            return tokens.get(currentTokenIndex).getLineNumber();
+        if (tokens != null) {
+            return currentTokenIndex < tokens.size() ? tokens.line(currentTokenIndex) : -1;
         }
-        return -1;
+        return peek(0).map(Token::getLineNumber).orElse(-1);
     }
 
     public int getCurrentColumnNumber(){
-        if(currentTokenIndex < tokens.size()){
-            return tokens.get(currentTokenIndex).getColumnNumber();
+        if (tokens != null) {
+            return currentTokenIndex < tokens.size() ? tokens.column(currentTokenIndex) : -1;
+        }
+        return peek(0).map(Token::getColumnNumber).orElse(-1);
+    }
+
+    private void advance() {
+        currentTokenIndex++;
+        if (tokens == null) {
+            window[windowStart] = null;
+            windowStart = (windowStart + 1) % window.length;
+            windowCount--;
+        }
+    }
+
+    //pull from the lexer until the window holds token i, false if the input runs out first
+    private boolean fill(int i) {
+        while (windowCount <= i) {
+            if (lexerDone) {
+                return false;
+            }
+            Token next;
+            try {
+                next = lexer.next();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new LexingException(e);
+            }
+            if (next == null) {
+                lexerDone = true;
+                return false;
+            }
+            if (windowCount == window.length) {
+                Token[] bigger = new Token[window.length * 2];
+                for (int k = 0; k < windowCount; k++) {
+                    bigger[k] = window[(windowStart + k) % window.length];
+                }
+                window = bigger;
+                windowStart = 0;
+            }
+            window[(windowStart + windowCount) % window.length] = next;
+            windowCount++;
+        }
+        return true;
+    }
+
+    /**
+     * The lexer failed while the parser was pulling tokens. Parser.Tran() unwraps it again.
+     */
+    public static class LexingException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LexingException(Exception cause) {
+            super(cause);
         }
-        return -1;
     }
 }
@@ -0,0 +1,36 @@
+import java.io.PrintStream;
+
+/**
+ * Gets told what the lexer and parser are doing, for debugging. Every method does nothing by default, so with
+ * tracing off (NONE) an event costs an empty call. Run with -Dtran.trace=true to have every Lexer and Parser print
+ * their events to stderr, or call setTraceListener on one of them.
+ */
+public interface TraceListener {
+    TraceListener NONE = new TraceListener() {};
+
+    //the lexer handed out a token
+    default void tokenLexed(Token.TokenTypes type, int line, int column, String value) {}
+
+    //the parser started on a rule (Class, Interface, ...) at this position
+    default void ruleEntered(String rule, int line, int column) {}
+
+    //what a new Lexer or Parser starts with
+    static TraceListener fromSystemProperty() {
+        return Boolean.getBoolean("tran.trace") ? printingTo(System.err) : NONE;
+    }
+
+    //prints one line per event
+    static TraceListener printingTo(PrintStream out) {
+        return new TraceListener() {
+            @Override
+            public void tokenLexed(Token.TokenTypes type, int line, int column, String value) {
+                out.println("token " + type + " at " + line + ":" + column + (value.isEmpty() ? "" : " " + value));
+            }
+
+            @Override
+            public void ruleEntered(String rule, int line, int column) {
+                out.println("parsing " + rule + " at " + line + ":" + column);
+            }
+        };
+    }
+}
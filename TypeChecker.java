@@ -0,0 +1,494 @@
+package Interpreter;
+
+import AST.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Type checking pass - runs once over the whole program, after the ClassTable is built and before anything executes.
+ * Resolves the declared type of every parameter, return, local and member, works out the type of every expression,
+ * and checks assignments, conditions, operators, "new" and calls against the declarations. Every problem is reported
+ * at once, the way ClassTable reports duplicates.
+ * <p>
+ * The results are kept on the side, like SlotResolver's slots: typeOf() for every expression, and for every call site
+ * the parameter types of the method it was checked against. With those the interpreter can pick the method for a call
+ * without matching the values against the declarations every time (see Interpreter.linkMethod()).
+ */
+public class TypeChecker {
+    public static final String NUMBER = "number";
+    public static final String STRING = "string";
+    public static final String BOOLEAN = "boolean";
+    public static final String CHARACTER = "character";
+
+    private final ClassTable classTable;
+    private final HashMap<String, InterfaceNode> interfaces = new HashMap<>();
+    private final IdentityHashMap<ExpressionNode, String> types = new IdentityHashMap<>();
+    private final IdentityHashMap<Node, List<String>> signatures = new IdentityHashMap<>();//call site -> declared parameter types
+    private final List<String> diagnostics = new ArrayList<>();
+
+    //the body being checked
+    private ClassNode currentClass;
+    private boolean shared;
+    private String where;
+    private HashMap<String, String> scope;
+
+    private TypeChecker(TranNode top, ClassTable classTable) {
+        this.classTable = classTable;
+        for (InterfaceNode interfaceNode : top.Interfaces) {
+            interfaces.put(interfaceNode.name, interfaceNode);
+        }
+    }
+
+    /**
+     * Check a whole program. Throws, listing every type error, if there are any.
+     *
+     * @param top        - the head of the AST
+     * @param classTable - the program's classes, including the built-ins
+     * @return the types that were worked out
+     */
+    public static TypeChecker check(TranNode top, ClassTable classTable) {
+        TypeChecker checker = new TypeChecker(top, classTable);
+        for (ClassNode classNode : top.Classes) {
+            checker.checkClass(classNode);
+        }
+        if (!checker.diagnostics.isEmpty()) {
+            throw new RuntimeException("Type errors:\n    " + String.join("\n    ", checker.diagnostics));
+        }
+        return checker;
+    }
+
+    /**
+     * @return the type of an expression ("number", a class name, ...), or null if it was never checked
+     */
+    public String typeOf(ExpressionNode expression) {
+        return types.get(expression);
+    }
+
+    /**
+     * The declared parameter types of the method a call site was checked against, or null when the site calls a
+     * variadic built-in (or was never checked).
+     */
+    List<String> signature(Node site) {
+        return signatures.get(site);
+    }
+
+    /**
+     * Does this method declare exactly these parameter types? Used to find a checked call's method in the receiver's
+     * class - with no inheritance, that is the method the site was checked against (or one implementing its interface).
+     */
+    static boolean declares(MethodDeclarationNode m, List<String> parameterTypes) {
+        if (m.parameters.size() != parameterTypes.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (!canonical(m.parameters.get(i).type).equals(parameterTypes.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //              Declarations
+
+    private void checkClass(ClassNode classNode) {
+        currentClass = classNode;
+        for (String interfaceName : classNode.interfaces) {
+            if (!interfaces.containsKey(interfaceName)) {
+                diagnostics.add("Class " + classNode.name + " implements unknown interface " + interfaceName);
+            }
+        }
+        where = classNode.name;
+        for (MemberNode member : classNode.members) {
+            if (member.declaration != null) {
+                checkDeclaredType(member.declaration);
+            }
+        }
+        for (ConstructorNode c : classNode.constructors) {
+            begin(classNode.name + ".construct()", false);
+            declare(c.parameters);
+            declare(c.locals);
+            checkStatements(c.statements);
+        }
+        for (MethodDeclarationNode m : classNode.methods) {
+            if (m instanceof BuiltInMethodDeclarationNode) {
+                continue;
+            }
+            begin(classNode.name + "." + m.name + "()", m.isShared);
+            declare(m.parameters);
+            declare(m.returns);
+            declare(m.locals);
+            checkStatements(m.statements);
+        }
+    }
+
+    private void begin(String where, boolean shared) {
+        this.where = where;
+        this.shared = shared;
+        this.scope = new HashMap<>();
+    }
+
+    private void declare(List<VariableDeclarationNode> declarations) {
+        for (VariableDeclarationNode declaration : declarations) {
+            if (checkDeclaredType(declaration)) {
+                scope.put(declaration.name, canonical(declaration.type));
+            }
+        }
+    }
+
+    private boolean checkDeclaredType(VariableDeclarationNode declaration) {
+        if (isPrimitive(declaration.type) || classTable.getClass(declaration.type).isPresent()
+                || interfaces.containsKey(declaration.type)) {
+            return true;
+        }
+        error("unknown type " + declaration.type + " for " + declaration.name);
+        return false;
+    }
+
+    //              Statements
+
+    private void checkStatements(List<StatementNode> statements) {
+        if (statements == null) {
+            return;
+        }
+        for (StatementNode statement : statements) {
+            if (statement instanceof AssignmentNode assignmentNode) {
+                String target = variable(assignmentNode.target);
+                String value = expression(assignmentNode.expression);
+                if (target != null && !isAssignable(target, value)) {
+                    error("can't assign " + value + " to " + target + " " + assignmentNode.target.name);
+                }
+            } else if (statement instanceof MethodCallStatementNode methodCall) {
+                List<String> returns = call(methodCall, methodCall.objectName, methodCall.methodName, methodCall.parameters);
+                List<VariableReferenceNode> returnValues = methodCall.returnValues == null ? List.of() : methodCall.returnValues;
+                if (returns != null && returnValues.size() > returns.size()) {
+                    error(methodCall.methodName + "() returns " + returns.size() + " values but "
+                            + returnValues.size() + " were expected");
+                }
+                for (int i = 0; i < returnValues.size(); i++) {
+                    String target = variable(returnValues.get(i));
+                    if (returns != null && i < returns.size() && target != null && !isAssignable(target, returns.get(i))) {
+                        error("can't assign " + returns.get(i) + " from " + methodCall.methodName + "() to "
+                                + target + " " + returnValues.get(i).name);
+                    }
+                }
+            } else if (statement instanceof LoopNode loopNode) {
+                checkLoop(loopNode);
+            } else if (statement instanceof IfNode ifNode) {
+                condition(ifNode.condition, "if");
+                checkStatements(ifNode.statements);
+                if (ifNode.elseStatement != null && ifNode.elseStatement.isPresent()) {
+                    checkStatements(ifNode.elseStatement.get().statements);
+                }
+            }
+        }
+    }
+
+    //a loop runs on a boolean condition, or over an iterator (an object with getNext() : boolean, something)
+    private void checkLoop(LoopNode loopNode) {
+        if (loopNode.expression == null) {
+            error("loop without a condition");
+            checkStatements(loopNode.statements);
+            return;
+        }
+        String type = expression(loopNode.expression);
+        String variableType = null;
+        if (type != null && type.equals(BOOLEAN)) {
+            variableType = BOOLEAN;
+        } else if (type != null) {
+            variableType = iteratorValue(type);
+            if (variableType == null) {
+                error("a loop needs a boolean condition or an iterator, not " + type);
+            }
+        }
+        if (loopNode.assignment != null && loopNode.assignment.isPresent()) {
+            VariableReferenceNode variable = loopNode.assignment.get();
+            if (lookup(variable.name) == null && variableType != null) {
+                scope.put(variable.name, variableType);//a loop variable doesn't have to be declared
+            }
+            String target = variable(variable);
+            if (target != null && !isAssignable(target, variableType)) {
+                error("loop variable " + variable.name + " is " + target + " but the loop gives " + variableType);
+            }
+        }
+        checkStatements(loopNode.statements);
+    }
+
+    //the type of the second value getNext() returns, or null if the type isn't an iterator
+    private String iteratorValue(String type) {
+        List<VariableDeclarationNode> returns = null;
+        Optional<ClassNode> classNode = classTable.getClass(type);
+        if (classNode.isPresent()) {
+            List<MethodDeclarationNode> getNext = classTable.methods(classNode.get(), "getNext", 0);
+            returns = getNext.isEmpty() ? null : getNext.get(0).returns;
+        } else if (interfaces.containsKey(type)) {
+            for (MethodHeaderNode header : interfaces.get(type).methods) {
+                if (header.name.equals("getNext") && header.parameters.isEmpty()) {
+                    returns = header.returns;
+                }
+            }
+        }
+        if (returns == null || returns.size() < 2 || !canonical(returns.get(0).type).equals(BOOLEAN)) {
+            return null;
+        }
+        return canonical(returns.get(1).type);
+    }
+
+    private void condition(ExpressionNode expression, String what) {
+        String type = expression(expression);
+        if (type != null && !type.equals(BOOLEAN)) {
+            error("the " + what + " condition is " + type + ", not boolean");
+        }
+    }
+
+    //              Expressions
+
+    /**
+     * Work out (and remember) the type of an expression.
+     *
+     * @return the type, or null if it can't be known - the reason has already been reported
+     */
+    private String expression(ExpressionNode expression) {
+        String type = typeOfUnchecked(expression);
+        if (type != null) {
+            types.put(expression, type);
+        }
+        return type;
+    }
+
+    private String typeOfUnchecked(ExpressionNode expression) {
+        if (expression == null) {
+            return null;
+        }
+        if (expression instanceof NumericLiteralNode) {
+            return NUMBER;
+        }
+        if (expression instanceof StringLiteralNode) {
+            return STRING;
+        }
+        if (expression instanceof CharLiteralNode) {
+            return CHARACTER;
+        }
+        if (expression instanceof BooleanLiteralNode) {
+            return BOOLEAN;
+        }
+        if (expression instanceof VariableReferenceNode reference) {
+            return variable(reference);
+        }
+        if (expression instanceof MathOpNode mathOpNode) {
+            return operands(mathOpNode.left, mathOpNode.right, NUMBER, "math", NUMBER);
+        }
+        if (expression instanceof CompareNode compareNode) {
+            return operands(compareNode.left, compareNode.right, NUMBER, "comparison", BOOLEAN);
+        }
+        if (expression instanceof BooleanOpNode booleanOpNode) {
+            return operands(booleanOpNode.left, booleanOpNode.right, BOOLEAN, String.valueOf(booleanOpNode.op), BOOLEAN);
+        }
+        if (expression instanceof NotOpNode notOpNode) {
+            String operand = expression(notOpNode.left);
+            if (operand != null && !operand.equals(BOOLEAN)) {
+                error("not on " + operand);
+            }
+            return BOOLEAN;
+        }
+        if (expression instanceof MethodCallExpressionNode methodCall) {
+            List<String> returns = call(methodCall, methodCall.objectName, methodCall.methodName, methodCall.parameters);
+            if (returns == null) {
+                return null;
+            }
+            if (returns.isEmpty()) {
+                error(methodCall.methodName + "() doesn't return a value");
+                return null;
+            }
+            return returns.get(0);
+        }
+        if (expression instanceof NewNode newNode) {
+            return newObject(newNode);
+        }
+        error("unsupported expression " + expression.getClass().getSimpleName());
+        return null;
+    }
+
+    //both sides have to be the operand type; the result is always the result type, so one error doesn't cascade
+    private String operands(ExpressionNode left, ExpressionNode right, String operandType, String what, String result) {
+        String l = expression(left);
+        String r = expression(right);
+        if ((l != null && !l.equals(operandType)) || (r != null && !r.equals(operandType))) {
+            error(what + " on " + l + " and " + r);
+        }
+        return result;
+    }
+
+    //"new" runs a constructor with the right parameter count, if there is one - the overload the arguments fit best
+    private String newObject(NewNode newNode) {
+        List<String> arguments = arguments(newNode.parameters);
+        Optional<ClassNode> classNode = classTable.getClass(newNode.className);
+        if (classNode.isEmpty()) {
+            error("new of unknown class " + newNode.className);
+            return null;
+        }
+        List<ConstructorNode> constructors = classTable.constructors(classNode.get(), arguments.size());
+        if (constructors.isEmpty()) {
+            if (!arguments.isEmpty()) {
+                error("no constructor for " + newNode.className + " takes " + arguments.size() + " parameters");
+            }
+        } else if (constructors.stream().noneMatch(c -> accepts(c.parameters, arguments))) {
+            error("new " + newNode.className + "(" + String.join(", ", arguments) + ") doesn't match any constructor");
+        }
+        return newNode.className;
+    }
+
+    private String variable(VariableReferenceNode reference) {
+        if (reference == null || reference.name == null) {
+            return null;
+        }
+        String type = lookup(reference.name);
+        if (type == null) {
+            error("unknown variable " + reference.name);
+        }
+        return type;
+    }
+
+    //a local (parameter, return, local) first, then a member of the class we are in
+    private String lookup(String name) {
+        String type = scope.get(name);
+        if (type != null) {
+            return type;
+        }
+        if (!shared) {
+            for (MemberNode member : currentClass.members) {
+                if (member.declaration != null && name.equals(member.declaration.name)) {
+                    return canonical(member.declaration.type);
+                }
+            }
+        }
+        return null;
+    }
+
+    //              Calls
+
+    /**
+     * Check a call the same way Interpreter.dispatch() finds its receiver: a variable's object, the class of that name
+     * (shared), or - with no object name - the class we are in (every class, from a shared method).
+     *
+     * @return the types the method returns, or null if they can't be known (a variadic built-in or an error)
+     */
+    private List<String> call(Node site, Optional<String> objectName, String methodName, List<ExpressionNode> parameters) {
+        List<String> arguments = arguments(parameters);
+        if (objectName == null || objectName.isEmpty()) {
+            return method(site, shared ? null : currentClass, methodName, arguments, false);
+        }
+        String name = objectName.get();
+        String type = lookup(name);
+        if (type == null) {
+            Optional<ClassNode> classNode = classTable.getClass(name);
+            if (classNode.isEmpty()) {
+                error("unknown object or class " + name);
+                return null;
+            }
+            return method(site, classNode.get(), methodName, arguments, true);
+        }
+        if (isPrimitive(type)) {
+            error("can't call " + methodName + "() on " + type + " " + name);
+            return null;
+        }
+        InterfaceNode interfaceNode = interfaces.get(type);
+        if (interfaceNode != null) {
+            for (MethodHeaderNode header : interfaceNode.methods) {
+                if (header.name.equals(methodName) && accepts(header.parameters, arguments)) {
+                    signatures.put(site, canonicalTypes(header.parameters));
+                    return canonicalTypes(header.returns);
+                }
+            }
+            error("no method " + methodName + "(" + String.join(", ", arguments) + ") in interface " + type);
+            return null;
+        }
+        return method(site, classTable.getClass(type).orElseThrow(), methodName, arguments, false);
+    }
+
+    private List<String> method(Node site, ClassNode receiver, String methodName, List<String> arguments, boolean mustBeShared) {
+        for (MethodDeclarationNode m : classTable.methods(receiver, methodName, arguments.size())) {
+            if (m instanceof BuiltInMethodDeclarationNode builtIn && builtIn.isVariadic) {
+                return null;
+            }
+            if (accepts(m.parameters, arguments)) {
+                if (mustBeShared && !m.isShared) {
+                    error(receiver.name + "." + methodName + "() isn't shared");
+                }
+                signatures.put(site, canonicalTypes(m.parameters));
+                return canonicalTypes(m.returns);
+            }
+        }
+        if (classTable.builtIn(methodName).isPresent()) {
+            return null;
+        }
+        error("no method " + methodName + "(" + String.join(", ", arguments) + ")"
+                + (receiver == null ? "" : " in class " + receiver.name));
+        return null;
+    }
+
+    //the argument types - an empty "()" can leave a nameless reference behind, which isn't an argument (see getParameters())
+    private List<String> arguments(List<ExpressionNode> parameters) {
+        List<String> arguments = new ArrayList<>();
+        if (parameters == null) {
+            return arguments;
+        }
+        for (ExpressionNode parameter : parameters) {
+            if (parameter == null || (parameter instanceof VariableReferenceNode reference && reference.name == null)) {
+                break;
+            }
+            arguments.add(expression(parameter));
+        }
+        return arguments;
+    }
+
+    //              Types
+
+    private boolean accepts(List<VariableDeclarationNode> parameters, List<String> arguments) {
+        if (parameters.size() != arguments.size()) {
+            return false;
+        }
+        for (int i = 0; i < arguments.size(); i++) {
+            if (!isAssignable(canonical(parameters.get(i).type), arguments.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //the same type, or a class that implements the target interface. Unknown (null) goes anywhere - it was already reported
+    private boolean isAssignable(String target, String value) {
+        if (value == null || target.equals(value)) {
+            return true;
+        }
+        Optional<ClassNode> classNode = classTable.getClass(value);
+        return interfaces.containsKey(target) && classNode.isPresent() && classNode.get().interfaces.contains(target);
+    }
+
+    private static boolean isPrimitive(String type) {
+        return switch (canonical(type)) {
+            case NUMBER, STRING, BOOLEAN, CHARACTER -> true;
+            default -> false;
+        };
+    }
+
+    //"char" is what instantiate() knows characters by
+    private static String canonical(String type) {
+        return "char".equals(type) ? CHARACTER : String.valueOf(type);
+    }
+
+    private static List<String> canonicalTypes(List<VariableDeclarationNode> declarations) {
+        List<String> types = new ArrayList<>(declarations.size());
+        for (VariableDeclarationNode declaration : declarations) {
+            types.add(canonical(declaration.type));
+        }
+        return types;
+    }
+
+    private void error(String message) {
+        diagnostics.add(where + ": " + message);
+    }
+}
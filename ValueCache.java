@@ -0,0 +1,122 @@
+package Interpreter;
+
+import AST.ExpressionNode;
+import AST.NumericLiteralNode;
+import AST.StringLiteralNode;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Shared values for the things a program makes over and over: true and false, small whole numbers, ASCII characters,
+ * and the value of every number and string literal in the program (made once per literal node).
+ * <p>
+ * Sharing is safe because values are immutable as far as the interpreter is concerned - an assignment rebinds the
+ * variable (or member) to a different IDT, it never changes the IDT that is there. The shared values are also their own
+ * final subclasses, whose Assign() throws, so nothing can change one by accident; an ordinary NumberIDT (or any other)
+ * still can be.
+ */
+public class ValueCache {
+    public static final BooleanIDT TRUE = new SharedBoolean(true);
+    public static final BooleanIDT FALSE = new SharedBoolean(false);
+
+    private static final int SMALLEST_NUMBER = -128;
+    private static final int LARGEST_NUMBER = 1023;
+    private static final NumberIDT[] NUMBERS = new NumberIDT[LARGEST_NUMBER - SMALLEST_NUMBER + 1];
+    private static final CharIDT[] CHARACTERS = new CharIDT[128];
+
+    static {
+        for (int i = 0; i < NUMBERS.length; i++) {
+            NUMBERS[i] = new SharedNumber(i + SMALLEST_NUMBER);
+        }
+        for (int i = 0; i < CHARACTERS.length; i++) {
+            CHARACTERS[i] = new SharedCharacter((char) i);
+        }
+    }
+
+    private final IdentityHashMap<ExpressionNode, InterpreterDataType> literals = new IdentityHashMap<>();
+
+    public static BooleanIDT bool(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public static NumberIDT number(float value) {
+        int whole = (int) value;
+        if (whole == value && whole >= SMALLEST_NUMBER && whole <= LARGEST_NUMBER
+                && (whole != 0 || Float.floatToRawIntBits(value) == 0)) {//-0.0 prints differently - not shared
+            return NUMBERS[whole - SMALLEST_NUMBER];
+        }
+        return new NumberIDT(value);
+    }
+
+    public static CharIDT character(char value) {
+        return value < CHARACTERS.length ? CHARACTERS[value] : new CharIDT(value);
+    }
+
+    //the one value for this literal
+    public NumberIDT constant(NumericLiteralNode literal) {
+        InterpreterDataType value = literals.get(literal);
+        if (value == null) {
+            value = number(literal.value);
+            if (!(value instanceof SharedNumber)) {//a small number is already shared - any other one gets its own
+                value = new SharedNumber(literal.value);
+            }
+            literals.put(literal, value);
+        }
+        return (NumberIDT) value;
+    }
+
+    public StringIDT constant(StringLiteralNode literal) {
+        InterpreterDataType value = literals.get(literal);
+        if (value == null) {
+            value = new SharedString(literal.value);
+            literals.put(literal, value);
+        }
+        return (StringIDT) value;
+    }
+
+    //              The shared values - Assign() would change every use of them at once
+
+    private static final class SharedBoolean extends BooleanIDT {
+        SharedBoolean(boolean value) {
+            super(value);
+        }
+
+        @Override
+        public void Assign(InterpreterDataType in) {
+            throw new RuntimeException("Trying to assign to a shared boolean value");
+        }
+    }
+
+    private static final class SharedNumber extends NumberIDT {
+        SharedNumber(float value) {
+            super(value);
+        }
+
+        @Override
+        public void Assign(InterpreterDataType in) {
+            throw new RuntimeException("Trying to assign to a shared number value");
+        }
+    }
+
+    private static final class SharedCharacter extends CharIDT {
+        SharedCharacter(char value) {
+            super(value);
+        }
+
+        @Override
+        public void Assign(InterpreterDataType in) {
+            throw new RuntimeException("Trying to assign to a shared character value");
+        }
+    }
+
+    private static final class SharedString extends StringIDT {
+        SharedString(String value) {
+            super(value);
+        }
+
+        @Override
+        public void Assign(InterpreterDataType in) {
+            throw new RuntimeException("Trying to assign to a shared string value");
+        }
+    }
+}